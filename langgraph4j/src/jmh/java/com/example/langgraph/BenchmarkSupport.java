@@ -0,0 +1,67 @@
+package com.example.langgraph;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shared setup for the JMH benchmarks: a zero-latency stub model, so measurements cover
+ * graph-framework and node overhead only, and a silenced console so node log lines
+ * do not dominate the numbers.
+ */
+final class BenchmarkSupport {
+
+    static final String QUESTION = "Why did the sentient shadow always carry a rubber duck into the haunted attic?";
+    static final String ANSWER = "Because it was the only thing in the attic that never got scared of the dark.";
+    static final String STORY = "The attic creaked as the shadow slid across the floorboards, clutching its rubber duck. " +
+            "Every night it climbed the stairs, and every night the duck squeaked once in the dark.\n\n" +
+            "When the family finally asked why, the shadow shrugged: the duck was the only one up there " +
+            "that never got scared of the dark, and somebody had to hold the flashlight.";
+
+    private static PrintStream console;
+
+    private BenchmarkSupport() {
+    }
+
+    static void useStubModel(double passRate, String executorMode) {
+        Configuration configuration = Configuration.builder()
+                .modelProvider(StubChatModel.PROVIDER)
+                .stubProfile(StubModelProfile.builder().scaryRate(passRate).funnyRate(passRate).build())
+                .executorMode(executorMode)
+                .build();
+        ChatModelRegistry.configure(configuration);
+        NodeExecutor.configure(configuration);
+    }
+
+    static synchronized void silenceConsole() {
+        if (console == null) {
+            console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    static synchronized void restoreConsole() {
+        if (console != null) {
+            System.setOut(console);
+            console = null;
+        }
+    }
+
+    /**
+     * State values as they look midway through a retry loop.
+     */
+    static Map<String, Object> midLoopState() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("question", QUESTION);
+        data.put("answer", ANSWER);
+        data.put("story", STORY);
+        data.put("scaryCheckFeedback", "SCARY");
+        data.put("funninessCheckFeedback", "NOT_FUNNY");
+        data.put("storyGenerationInstructions", "Make the punchline land harder.");
+        data.put("retryCount", 2);
+        data.put("maxRetries", 5);
+        data.put("terminateFlag", false);
+        return data;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.langgraph;
+
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end run of the compiled story graph against a zero-latency stub model.
+ * With {@code passRate=1.0} every story passes both checks (3 node steps per run);
+ * with {@code passRate=0.0} every run exhausts the retry loop, which exercises routing
+ * and state merging on every step. Any time measured here is graph-framework and node overhead,
+ * never LLM latency, so a regression after bumping {@code langgraph4j.version} shows up directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+
+    @Param({"1.0", "0.0"})
+    public double passRate;
+
+    @Param({NodeExecutor.VIRTUAL, NodeExecutor.PLATFORM})
+    public String executorMode;
+
+    private CompiledGraph<com.example.langgraph.State> graph;
+    private Map<String, Object> inputs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkSupport.silenceConsole();
+        BenchmarkSupport.useStubModel(passRate, executorMode);
+        graph = StoryGraph.compile();
+        inputs = com.example.langgraph.State.inputs(BenchmarkSupport.QUESTION);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.restoreConsole();
+    }
+
+    @Benchmark
+    public Optional<com.example.langgraph.State> invoke() {
+        return graph.invoke(inputs, RunnableConfig.builder().build());
+    }
+}
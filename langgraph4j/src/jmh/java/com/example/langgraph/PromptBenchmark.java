@@ -0,0 +1,47 @@
+package com.example.langgraph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt construction cost for the story and evaluator nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptBenchmark {
+
+    private final String instructions = Prompts.revisionInstructions("SCARY", "", "NOT_FUNNY", "", "");
+
+    @Benchmark
+    public String initialStoryPrompt() {
+        return Prompts.storyPrompt(BenchmarkSupport.QUESTION, BenchmarkSupport.ANSWER, "", "");
+    }
+
+    @Benchmark
+    public String revisionStoryPrompt() {
+        return Prompts.storyPrompt(BenchmarkSupport.QUESTION, BenchmarkSupport.ANSWER, BenchmarkSupport.STORY, instructions);
+    }
+
+    @Benchmark
+    public String scaryCheckPrompt() {
+        return Prompts.scaryCheckPrompt(BenchmarkSupport.QUESTION, BenchmarkSupport.ANSWER, BenchmarkSupport.STORY);
+    }
+
+    @Benchmark
+    public String funnyCheckPrompt() {
+        return Prompts.funnyCheckPrompt(BenchmarkSupport.QUESTION, BenchmarkSupport.ANSWER, BenchmarkSupport.STORY);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.langgraph;
+
+import org.bsc.langgraph4j.action.AsyncEdgeAction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Evaluation cost of each conditional edge in the story graph. With {@code dispatch=hop} every step is first handed
+ * to {@link NodeExecutor} and joined, which is what each router and the terminal branch of createStoryInstructions
+ * paid before they ran inline; {@code retryLoopIteration} shows the difference across one pass of the retry loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    private final AsyncEdgeAction<com.example.langgraph.State> afterScary = Routers.routeAfterScaryCheck();
+    private final AsyncEdgeAction<com.example.langgraph.State> afterInstructions = Routers.routeAfterCreateInstructions();
+    private final AsyncEdgeAction<com.example.langgraph.State> afterFunniness = Routers.routeAfterFunninessCheck();
+
+    @Param({"inline", "hop"})
+    public String dispatch;
+
+    private com.example.langgraph.State midLoop;
+    private com.example.langgraph.State exhausted;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.silenceConsole();
+        midLoop = new com.example.langgraph.State(BenchmarkSupport.midLoopState());
+        // Out of retries, so createStoryInstructions takes its terminal branch without a model call
+        exhausted = new com.example.langgraph.State(Map.of("retryCount", 5, "maxRetries", 5));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSupport.restoreConsole();
+    }
+
+    private <T> T step(Supplier<T> work) {
+        return "hop".equals(dispatch) ? NodeExecutor.supplyAsync(work).join() : work.get();
+    }
+
+    @Benchmark
+    public String routeAfterScaryCheck() {
+        return step(() -> afterScary.apply(midLoop).join());
+    }
+
+    @Benchmark
+    public String routeAfterCreateInstructions() {
+        return step(() -> afterInstructions.apply(midLoop).join());
+    }
+
+    @Benchmark
+    public String routeAfterFunninessCheck() {
+        return step(() -> afterFunniness.apply(midLoop).join());
+    }
+
+    @Benchmark
+    public Map<String, Object> retryLoopIteration(Blackhole routes) {
+        routes.consume(step(() -> afterScary.apply(midLoop).join()));
+        routes.consume(step(() -> afterInstructions.apply(midLoop).join()));
+        routes.consume(step(() -> afterFunniness.apply(midLoop).join()));
+        return step(() -> Nodes.createStoryInstructions(exhausted).join());
+    }
+}
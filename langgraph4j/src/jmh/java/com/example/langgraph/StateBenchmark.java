@@ -0,0 +1,61 @@
+package com.example.langgraph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building {@link com.example.langgraph.State} instances and reading their fields.
+ * The graph constructs a new State for every step, so these numbers multiply by the step count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+
+    private Map<String, Object> midLoop;
+    private com.example.langgraph.State state;
+
+    @Setup
+    public void setUp() {
+        midLoop = BenchmarkSupport.midLoopState();
+        state = new com.example.langgraph.State(midLoop);
+    }
+
+    @Benchmark
+    public com.example.langgraph.State fromQuestion() {
+        return com.example.langgraph.State.of(BenchmarkSupport.QUESTION);
+    }
+
+    @Benchmark
+    public com.example.langgraph.State fromStepMap() {
+        return new com.example.langgraph.State(midLoop);
+    }
+
+    @Benchmark
+    public void allGetters(Blackhole blackhole) {
+        blackhole.consume(state.getQuestion());
+        blackhole.consume(state.getAnswer());
+        blackhole.consume(state.getStory());
+        blackhole.consume(state.getScaryCheckFeedback());
+        blackhole.consume(state.getFunninessCheckFeedback());
+        blackhole.consume(state.getStoryGenerationInstructions());
+        blackhole.consume(state.getRetryCount());
+        blackhole.consume(state.getMaxRetries());
+        blackhole.consume(state.isTerminateFlag());
+    }
+}
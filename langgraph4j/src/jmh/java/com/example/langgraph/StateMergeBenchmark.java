@@ -0,0 +1,95 @@
+package com.example.langgraph;
+
+import org.bsc.langgraph4j.state.AgentState;
+import org.bsc.langgraph4j.state.Channel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-step state merge: applying a node's partial update to the current state and
+ * wrapping the result in a new {@link com.example.langgraph.State}, as the graph runner does after every node.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateMergeBenchmark {
+
+    private final Map<String, Channel<?>> channels = Map.of();
+
+    private Map<String, Object> current;
+    private Map<String, Object> storyUpdate;
+    private Map<String, Object> instructionsUpdate;
+
+    @Setup
+    public void setUp() {
+        current = BenchmarkSupport.midLoopState();
+        storyUpdate = new HashMap<>();
+        storyUpdate.put("story", BenchmarkSupport.STORY);
+        storyUpdate.put("storyGenerationInstructions", "");
+        instructionsUpdate = new HashMap<>();
+        instructionsUpdate.put("retryCount", 3);
+        instructionsUpdate.put("story", BenchmarkSupport.STORY);
+        instructionsUpdate.put("scaryCheckFeedback", "");
+        instructionsUpdate.put("funninessCheckFeedback", "");
+        instructionsUpdate.put("storyGenerationInstructions", "Make it scarier.");
+        instructionsUpdate.put("terminateFlag", false);
+    }
+
+    @Benchmark
+    public com.example.langgraph.State singleFieldUpdate() {
+        return new com.example.langgraph.State(AgentState.updateState(current, Map.of("scaryCheckFeedback", "SCARY"), channels));
+    }
+
+    @Benchmark
+    public com.example.langgraph.State storyNodeUpdate() {
+        return new com.example.langgraph.State(AgentState.updateState(current, storyUpdate, channels));
+    }
+
+    @Benchmark
+    public com.example.langgraph.State instructionsNodeUpdate() {
+        return new com.example.langgraph.State(AgentState.updateState(current, instructionsUpdate, channels));
+    }
+
+    // The same updates built per call, as HashMaps (how the nodes used to build them) and as StateDeltas
+
+    @Benchmark
+    public com.example.langgraph.State storyNodeHashMap() {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("story", BenchmarkSupport.STORY);
+        updates.put("storyGenerationInstructions", "");
+        return new com.example.langgraph.State(AgentState.updateState(current, updates, channels));
+    }
+
+    @Benchmark
+    public com.example.langgraph.State storyNodeDelta() {
+        return new com.example.langgraph.State(AgentState.updateState(current, StateDelta.create()
+                .story(BenchmarkSupport.STORY)
+                .storyGenerationInstructions(""), channels));
+    }
+
+    @Benchmark
+    public com.example.langgraph.State instructionsNodeDelta() {
+        return new com.example.langgraph.State(AgentState.updateState(current, StateDelta.create()
+                .retryCount(3)
+                .story(BenchmarkSupport.STORY)
+                .scaryCheckFeedback("")
+                .funninessCheckFeedback("")
+                .storyGenerationInstructions("Make it scarier.")
+                .terminateFlag(false), channels));
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.langgraph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Item throughput of {@link WorkQueue} as workers are added. Each JMH thread is one worker with its own queue handle
+ * and worker id, as separate JVMs would be, sharing only the directory. An operation enqueues one item, then claims
+ * and completes one from a standing backlog, so it covers the listing, the claim renames and the result write.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkQueueBenchmark {
+
+    private static final int BACKLOG = 1000;
+    private static final String RESULT = "{\"status\":\"ok\"}";
+
+    @State(Scope.Benchmark)
+    public static class QueueDirectory {
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void create() throws IOException {
+            directory = Files.createTempDirectory("work-queue-bench");
+            WorkQueue queue = WorkQueue.open(directory, "backlog");
+            for (int i = 0; i < BACKLOG; i++) {
+                queue.enqueue(BenchmarkSupport.QUESTION);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+        WorkQueue queue;
+
+        @Setup(Level.Trial)
+        public void open(QueueDirectory shared) throws IOException {
+            queue = WorkQueue.open(shared.directory, "bench-" + Thread.currentThread().getId());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public WorkQueue.Lease oneWorker(Worker worker) throws IOException {
+        return cycle(worker.queue);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public WorkQueue.Lease twoWorkers(Worker worker) throws IOException {
+        return cycle(worker.queue);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public WorkQueue.Lease fourWorkers(Worker worker) throws IOException {
+        return cycle(worker.queue);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public WorkQueue.Lease eightWorkers(Worker worker) throws IOException {
+        return cycle(worker.queue);
+    }
+
+    private static WorkQueue.Lease cycle(WorkQueue queue) throws IOException {
+        queue.enqueue(BenchmarkSupport.QUESTION);
+        WorkQueue.Lease lease = queue.claim();
+        if (lease != null) {
+            queue.complete(lease, RESULT);
+        }
+        return lease;
+    }
+}
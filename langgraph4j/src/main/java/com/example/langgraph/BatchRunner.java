@@ -0,0 +1,424 @@
+package com.example.langgraph;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.eclipse.jetty.server.Server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes a file of questions through one shared {@code CompiledGraph<State>} concurrently.
+ * Input is NDJSON ({@code {"question": "..."}} per line) or plain text with one question per line.
+ * Results are written as NDJSON, followed by a throughput and latency-percentile summary on stderr.
+ *
+ * Usage: BatchRunner <questions-file> [--concurrency N] [--ordered] [--output results.ndjson] [--max-retries N]
+ *                    [--stub profile-spec] [--cache-dir dir] [--evaluation sequential|parallel|combined] [--candidates N]
+ *                    [--checkpoint-dir dir] [--rpm N] [--tpm N] [--hedge role=percentile,...]
+ *                    [--route route=model|model ...] [--fastest route,...] [--coalesce role,...] [--metrics-port N]
+ *                    [--token-budget N] [--prescreen [scary-threshold,funny-threshold]] [--record-verdicts file]
+ *                    [--deadline-ms N]
+ *
+ * With {@code --checkpoint-dir} each run is checkpointed as thread {@code batch-<index>}; rerunning the same file
+ * after a crash resumes unfinished runs from their last completed node instead of starting them over.
+ * With {@code --metrics-port} the batch's {@link Metrics} can be scraped at {@code /metrics} while it runs.
+ * With {@code --deadline-ms} a run still going after that long is stopped, its model calls in flight cancelled,
+ * and reported with status {@code stopped}.
+ */
+public class BatchRunner {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final CompiledGraph<State> graph;
+    private final int concurrency;
+    private final boolean ordered;
+    private final int maxRetries;
+    private final int tokenBudget; // 0 for unlimited
+    private final long deadlineMillis; // 0 for no per-run deadline
+    private final LogCheckpointSaver checkpoints; // null when checkpointing is off
+
+    private final Semaphore inFlight;
+    private final ExecutorService runDriver;
+    private final Object outputLock = new Object();
+    private final Map<Long, String> pending = new HashMap<>(); // ordered mode: finished but not yet written
+    private long nextToWrite;
+
+    private final ConcurrentLinkedQueue<Long> latenciesMs = new ConcurrentLinkedQueue<>();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong stopped = new AtomicLong();
+
+    public BatchRunner(CompiledGraph<State> graph, int concurrency, boolean ordered, int maxRetries) {
+        this(graph, concurrency, ordered, maxRetries, null);
+    }
+
+    public BatchRunner(CompiledGraph<State> graph, int concurrency, boolean ordered, int maxRetries,
+                       LogCheckpointSaver checkpoints) {
+        this(graph, concurrency, ordered, maxRetries, 0, checkpoints);
+    }
+
+    public BatchRunner(CompiledGraph<State> graph, int concurrency, boolean ordered, int maxRetries, int tokenBudget,
+                       LogCheckpointSaver checkpoints) {
+        this(graph, concurrency, ordered, maxRetries, tokenBudget, 0, checkpoints);
+    }
+
+    public BatchRunner(CompiledGraph<State> graph, int concurrency, boolean ordered, int maxRetries, int tokenBudget,
+                       long deadlineMillis, LogCheckpointSaver checkpoints) {
+        this.graph = graph;
+        this.tokenBudget = tokenBudget;
+        this.deadlineMillis = deadlineMillis;
+        this.checkpoints = checkpoints;
+        this.concurrency = concurrency;
+        this.ordered = ordered;
+        this.maxRetries = maxRetries;
+        this.inFlight = new Semaphore(concurrency);
+        // Runs are driven from a pool of their own, never the node pool; see StoryGraph.configureRuntime
+        this.runDriver = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "batch-run");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: BatchRunner <questions-file> [--concurrency N] [--ordered] [--output file] [--max-retries N] [--stub spec] [--cache-dir dir] [--evaluation sequential|parallel|combined] [--candidates N] [--checkpoint-dir dir] [--rpm N] [--tpm N] [--hedge role=percentile,...] [--route route=model|model] [--fastest route,...] [--coalesce role,...] [--metrics-port N] [--token-budget N] [--prescreen [scary,funny]] [--record-verdicts file] [--deadline-ms N]");
+            System.exit(2);
+        }
+
+        Path input = Path.of(args[0]);
+        int concurrency = 16;
+        boolean ordered = false;
+        Path output = null;
+        int maxRetries = 5;
+        StubModelProfile stubProfile = null;
+        String cacheDirectory = null;
+        String evaluationMode = StoryGraph.SEQUENTIAL_EVALUATION;
+        int storyCandidates = 1;
+        String checkpointDirectory = null;
+        int requestsPerMinute = 0;
+        int tokensPerMinute = 0;
+        Map<String, Double> hedgePercentiles = null;
+        Map<String, List<String>> modelRoutes = new HashMap<>();
+        Set<String> fastestRoutes = Set.of();
+        Set<String> coalescedRoles = null;
+        int metricsPort = 0;
+        int tokenBudget = 0;
+        boolean preScreen = false;
+        double[] preScreenThresholds = {0, 0};
+        String verdictRecordFile = null;
+        long deadlineMillis = 0;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                case "--ordered" -> ordered = true;
+                case "--output" -> output = Path.of(args[++i]);
+                case "--max-retries" -> maxRetries = Integer.parseInt(args[++i]);
+                case "--stub" -> stubProfile = StubModelProfile.parse(args[++i]);
+                case "--cache-dir" -> cacheDirectory = args[++i];
+                case "--evaluation" -> evaluationMode = args[++i];
+                case "--candidates" -> storyCandidates = Integer.parseInt(args[++i]);
+                case "--checkpoint-dir" -> checkpointDirectory = args[++i];
+                case "--rpm" -> requestsPerMinute = Integer.parseInt(args[++i]);
+                case "--tpm" -> tokensPerMinute = Integer.parseInt(args[++i]);
+                case "--hedge" -> hedgePercentiles = LlmCalls.parseHedgePercentiles(args[++i]);
+                case "--route" -> {
+                    String[] route = args[++i].split("=", 2);
+                    modelRoutes.put(route[0], List.of(route[1].split("\\|")));
+                }
+                case "--fastest" -> fastestRoutes = Set.of(args[++i].split(","));
+                case "--coalesce" -> coalescedRoles = Set.of(args[++i].split(","));
+                case "--metrics-port" -> metricsPort = Integer.parseInt(args[++i]);
+                case "--token-budget" -> tokenBudget = Integer.parseInt(args[++i]);
+                case "--record-verdicts" -> verdictRecordFile = args[++i];
+                case "--deadline-ms" -> deadlineMillis = Long.parseLong(args[++i]);
+                case "--prescreen" -> {
+                    preScreen = true;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        preScreenThresholds = Arrays.stream(args[++i].split(",")).mapToDouble(Double::parseDouble).toArray();
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        try {
+            Configuration configForRun = StoryGraph.runtimeDefaults()
+                    .maxRetries(maxRetries)
+                    .modelProvider(stubProfile != null ? StubChatModel.PROVIDER : ChatModelRegistry.ANTHROPIC)
+                    .stubProfile(stubProfile)
+                    .responseCacheDirectory(cacheDirectory)
+                    .evaluationMode(evaluationMode)
+                    .storyCandidates(storyCandidates)
+                    .checkpointDirectory(checkpointDirectory)
+                    .llmRequestsPerMinute(requestsPerMinute)
+                    .llmTokensPerMinute(tokensPerMinute)
+                    .hedgePercentiles(hedgePercentiles)
+                    .modelRoutes(modelRoutes)
+                    .fastestRoutes(fastestRoutes)
+                    .coalescedRoles(coalescedRoles)
+                    .runTokenBudget(tokenBudget)
+                    .preScreen(preScreen)
+                    .preScreenScaryThreshold(preScreenThresholds[0])
+                    .preScreenFunnyThreshold(preScreenThresholds[preScreenThresholds.length - 1])
+                    .preScreenRecordFile(verdictRecordFile)
+                    .runDeadlineMillis(deadlineMillis)
+                    .build();
+            StoryGraph.configureRuntime(configForRun);
+
+            Server metricsServer = metricsPort > 0 ? MetricsHandler.serve(metricsPort) : null;
+
+            LogCheckpointSaver checkpoints = LogCheckpointSaver.open(configForRun);
+            BatchRunner runner = new BatchRunner(StoryGraph.compile(configForRun, checkpoints), concurrency, ordered,
+                    maxRetries, tokenBudget, deadlineMillis, checkpoints);
+            try {
+                if (output != null) {
+                    try (PrintStream out = new PrintStream(Files.newOutputStream(output), false, StandardCharsets.UTF_8)) {
+                        runner.run(input, out);
+                    }
+                } else {
+                    runner.run(input, System.out);
+                }
+            } finally {
+                if (checkpoints != null) {
+                    checkpoints.close();
+                }
+                if (metricsServer != null) {
+                    metricsServer.stop();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Batch run failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Streams questions from the input file, keeping at most {@code concurrency} runs in flight.
+     * The reader blocks when the limit is reached, so memory stays bounded regardless of file size.
+     */
+    public void run(Path input, PrintStream out) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        long submitted = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String question;
+                try {
+                    question = parseQuestion(line);
+                } catch (IOException e) {
+                    // A malformed line fails on its own row; the rest of the batch still runs
+                    long index = submitted++;
+                    inFlight.acquire();
+                    emit(index, malformedLine(index, e), out);
+                    continue;
+                }
+                if (question == null) {
+                    continue;
+                }
+                long index = submitted++;
+                inFlight.acquire();
+                CompletableFuture.supplyAsync(() -> runOne(index, question), runDriver)
+                        .thenAccept(result -> emit(index, result, out));
+            }
+
+            // Wait for every permit to come back, i.e. for all runs to be written
+            inFlight.acquire(concurrency);
+            inFlight.release(concurrency);
+        } finally {
+            runDriver.shutdown();
+        }
+        out.flush();
+
+        printSummary(submitted, System.nanoTime() - started);
+    }
+
+    private String malformedLine(long index, IOException error) {
+        failed.incrementAndGet();
+        ObjectNode result = JSON.createObjectNode();
+        result.put("index", index);
+        result.put("status", "error");
+        result.put("error", "Malformed input line: " + error.getMessage());
+        return result.toString();
+    }
+
+    private String runOne(long index, String question) {
+        long start = System.nanoTime();
+        ObjectNode result = JSON.createObjectNode();
+        result.put("index", index);
+        result.put("question", question);
+        String threadId = "batch-" + index;
+        // Checkpointed runs use their thread id, which a resumed run reads back from its state
+        RunControl run = RunControl.open(checkpoints != null ? threadId : RunControl.newRunId(), deadlineMillis);
+        try {
+            Optional<State> finalState;
+            if (StoryGraph.canResume(checkpoints, threadId, question)) {
+                result.put("resumed", true);
+                finalState = StoryGraph.resume(graph, threadId);
+            } else {
+                RunnableConfig.Builder runnableConfig = RunnableConfig.builder();
+                if (checkpoints != null) {
+                    runnableConfig.threadId(threadId);
+                }
+                finalState = graph.invoke(State.inputs(question, maxRetries, tokenBudget, run.runId()), runnableConfig.build());
+            }
+            if (finalState.isPresent()) {
+                result.put("status", "ok");
+                putState(result, finalState.get());
+                succeeded.incrementAndGet();
+            } else {
+                result.put("status", "error");
+                result.put("error", "Graph execution completed but returned no final state.");
+                failed.incrementAndGet();
+            }
+        } catch (Exception e) {
+            if (run.isStopped()) {
+                result.put("status", "stopped");
+                result.put("stopReason", run.stopReason());
+                stopped.incrementAndGet();
+            } else {
+                result.put("status", "error");
+                result.put("error", String.valueOf(e.getMessage()));
+                failed.incrementAndGet();
+            }
+        } finally {
+            run.close();
+        }
+        long latencyMs = (System.nanoTime() - start) / 1_000_000;
+        latenciesMs.add(latencyMs);
+        result.put("latencyMs", latencyMs);
+        return result.toString();
+    }
+
+    private void emit(long index, String result, PrintStream out) {
+        synchronized (outputLock) {
+            if (!ordered) {
+                out.println(result);
+                inFlight.release();
+                return;
+            }
+            // Ordered mode holds the permit until the line is written, so a slow head run
+            // stalls intake instead of letting the reorder buffer grow without bound
+            pending.put(index, result);
+            String next;
+            while ((next = pending.remove(nextToWrite)) != null) {
+                out.println(next);
+                nextToWrite++;
+                inFlight.release();
+            }
+        }
+    }
+
+    private void printSummary(long total, long elapsedNanos) {
+        long[] sorted = latenciesMs.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        double seconds = elapsedNanos / 1e9;
+
+        System.err.println("\n--- Batch Summary ---");
+        System.err.printf("Runs: %d (%d ok, %d failed, %d stopped), concurrency %d, %s output\n",
+                total, succeeded.get(), failed.get(), stopped.get(), concurrency, ordered ? "ordered" : "unordered");
+        System.err.printf("Wall time: %.2fs, throughput: %.2f runs/s\n", seconds, seconds > 0 ? total / seconds : 0.0);
+        System.err.printf("Latency ms: p50=%d p90=%d p95=%d p99=%d max=%d\n",
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 95), percentile(sorted, 99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+        ResponseCache.Stats cacheStats = ResponseCache.shared().stats();
+        System.err.printf("Evaluator cache: %d memory hits, %d disk hits, %d misses (hit rate %.2f)\n",
+                cacheStats.memoryHits(), cacheStats.diskHits(), cacheStats.misses(), cacheStats.hitRate());
+        LlmLimiter.Stats limiterStats = LlmLimiter.shared().stats();
+        LlmCalls.Stats callStats = LlmCalls.stats();
+        System.err.printf("Model calls: %d (%d retries, %d failed; %d rate limited, %d overloaded, %d timeouts)\n",
+                callStats.calls(), callStats.retries(), callStats.failures(), limiterStats.rateLimited(),
+                limiterStats.overloaded(), limiterStats.timeouts());
+        System.err.printf("Model time: throttled %d ms (%d calls waited), backoff %d ms, service %d ms; concurrency limit %.1f\n",
+                limiterStats.throttledMillis(), limiterStats.throttled(), callStats.backoffMillis(),
+                limiterStats.serviceMillis(), limiterStats.concurrencyLimit());
+        if (callStats.hedges() + callStats.hedgesCapped() > 0) {
+            System.err.printf("Hedging: %d hedges sent, %d won, %d skipped by the rate cap or a saturated limiter\n",
+                    callStats.hedges(), callStats.hedgeWins(), callStats.hedgesCapped());
+        }
+        SingleFlight.Stats coalescing = LlmCalls.coalescingStats();
+        System.err.printf("Coalescing: %d shared calls, %d callers joined one in flight, %d abandoned\n",
+                coalescing.flights(), coalescing.coalesced(), coalescing.abandoned());
+        StoryPreScreen.Stats screenStats = StoryPreScreen.shared().stats();
+        if (screenStats.avoided() + screenStats.deferred() > 0) {
+            System.err.printf("Pre-screen: %d evaluator calls avoided (%d scary, %d funny), %d deferred to the model\n",
+                    screenStats.avoided(), screenStats.avoidedScary(), screenStats.avoidedFunny(), screenStats.deferred());
+        }
+        if (deadlineMillis > 0) {
+            RunControl.Stats runStats = RunControl.stats();
+            System.err.printf("Deadline: %d ms per run, %d runs stopped, %d node tasks cancelled in flight, %d not started\n",
+                    deadlineMillis, runStats.deadlineExceeded(), runStats.tasksCancelled(), runStats.tasksSkipped());
+        }
+        if (tokenBudget > 0) {
+            System.err.printf("Token budget: %d tokens per run, %d runs ended early on it\n",
+                    tokenBudget, RunBudget.exhaustedRuns());
+        }
+        ModelRouter.shared().stats().forEach((model, stats) -> System.err.printf(
+                "Model %s: %d calls, %d failed, circuit %s (opened %d times), latency ~%d ms\n",
+                model, stats.calls(), stats.failures(), stats.circuit(), stats.opened(), stats.latencyMillis()));
+        if (checkpoints != null) {
+            LogCheckpointSaver.Stats checkpointStats = checkpoints.stats();
+            System.err.printf("Checkpoints: %d appends, %d compactions, log %d bytes (%d live), %d unfinished runs\n",
+                    checkpointStats.appends(), checkpointStats.compactions(), checkpointStats.fileBytes(),
+                    checkpointStats.liveBytes(), checkpointStats.pendingThreads());
+        }
+    }
+
+    /**
+     * Writes the fields of a finished run that clients see, shared with the HTTP endpoint.
+     */
+    static void putState(ObjectNode result, State state) {
+        result.put("answer", state.getAnswer());
+        result.put("story", state.getStory());
+        result.put("scaryCheckFeedback", state.getScaryCheckFeedback());
+        result.put("funninessCheckFeedback", state.getFunninessCheckFeedback());
+        result.put("retryCount", state.getRetryCount());
+        result.put("tokensUsed", state.getTokensUsed());
+        if (state.isBudgetExhausted()) {
+            result.put("budgetExhausted", true);
+        }
+    }
+
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    // Accepts {"question": "..."} NDJSON or a bare question; blank lines and # comments are skipped
+    static String parseQuestion(String line) throws IOException {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        if (trimmed.startsWith("{")) {
+            JsonNode node = JSON.readTree(trimmed);
+            JsonNode question = node.get("question");
+            return question != null && !question.asText().isBlank() ? question.asText() : null;
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.langgraph;
+
+import dev.langchain4j.model.anthropic.AnthropicChatModel;
+import dev.langchain4j.model.anthropic.AnthropicStreamingChatModel;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Shared, thread-safe registry of chat model clients.
+ * Each distinct (model name, temperature, options) combination is built once and reused
+ * by every node, so the underlying HTTP client and its connection pool survive across calls.
+ * The pool is bounded by {@link Configuration#getMaxModelClients()}; past it the least recently used client is
+ * dropped, so a config with more combinations than the bound still reuses its busiest clients.
+ * The provider ({@code anthropic} or {@code stub}) comes from {@link Configuration#getModelProvider()}.
+ */
+public final class ChatModelRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChatModelRegistry.class);
+
+    public static final String ANTHROPIC = "anthropic";
+
+    private static final int DEFAULT_MAX_CLIENTS = 32;
+    private static final long DEFAULT_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Identity of a pooled client. Two requests with equal keys share one client.
+     */
+    public record ModelKey(String provider, String modelName, double temperature, int maxTokens, long timeoutSeconds) {
+    }
+
+    // Blocking and streaming clients for the same key are pooled separately
+    private record PoolKey(ModelKey key, boolean streaming) {
+    }
+
+    /**
+     * Point-in-time view of the registry counters. {@code evictions} counts clients dropped to stay within the bound.
+     */
+    public record Stats(long hits, long misses, long evictions, int pooledClients, Map<ModelKey, Long> usesPerClient) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    // Least recently used first; guarded by the class lock, so the bound and the insert are one step
+    private static final LinkedHashMap<PoolKey, Object> CLIENTS = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Map<ModelKey, LongAdder> USES = new ConcurrentHashMap<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    private static volatile Configuration settings = Configuration.builder().build();
+    private static boolean warnedFull;
+
+    private ChatModelRegistry() {
+    }
+
+    /**
+     * Applies client options from the given configuration and drops clients built with the previous ones.
+     */
+    public static synchronized void configure(Configuration configuration) {
+        settings = configuration;
+        CLIENTS.clear();
+        USES.clear();
+        warnedFull = false;
+    }
+
+    /**
+     * Returns the shared client for the given model and temperature, building it on first use.
+     */
+    public static ChatLanguageModel get(String modelName, double temperature) {
+        Configuration current = settings;
+        return lookup(key(current, modelName, temperature, current.getMaxTokens()), false, current,
+                ChatModelRegistry::build);
+    }
+
+    /**
+     * Returns the shared streaming client for the given model and temperature.
+     * A positive {@code maxTokens} overrides the configured limit, e.g. to bound a length-capped story.
+     */
+    public static StreamingChatLanguageModel getStreaming(String modelName, double temperature, int maxTokens) {
+        Configuration current = settings;
+        return lookup(key(current, modelName, temperature, maxTokens > 0 ? maxTokens : current.getMaxTokens()), true,
+                current, ChatModelRegistry::buildStreaming);
+    }
+
+    private static ModelKey key(Configuration current, String modelName, double temperature, int maxTokens) {
+        return new ModelKey(
+                current.getModelProvider() != null ? current.getModelProvider() : ANTHROPIC,
+                modelName,
+                temperature,
+                maxTokens,
+                current.getRequestTimeoutSeconds() > 0 ? current.getRequestTimeoutSeconds() : DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static synchronized <M> M lookup(ModelKey key, boolean streaming, Configuration current,
+                                             Function<ModelKey, M> builder) {
+        USES.computeIfAbsent(key, k -> new LongAdder()).increment();
+        PoolKey poolKey = new PoolKey(key, streaming);
+        M model = (M) CLIENTS.get(poolKey);
+        if (model != null) {
+            HITS.increment();
+            return model;
+        }
+        MISSES.increment();
+
+        int maxClients = current.getMaxModelClients() > 0 ? current.getMaxModelClients() : DEFAULT_MAX_CLIENTS;
+        if (CLIENTS.size() >= maxClients) {
+            // Dropping a client only drops the pool's reference; calls already holding it finish on it
+            Iterator<PoolKey> eldest = CLIENTS.keySet().iterator();
+            PoolKey evicted = eldest.next();
+            eldest.remove();
+            EVICTIONS.increment();
+            if (!warnedFull) {
+                warnedFull = true;
+                LOG.warn("Model client pool is full at {} clients; evicting least recently used ({}). "
+                        + "Raise maxModelClients if this repeats.", maxClients, evicted.key());
+            }
+        }
+        model = builder.apply(key);
+        CLIENTS.put(poolKey, model);
+        return model;
+    }
+
+    public static Stats stats() {
+        Map<ModelKey, Long> uses = new HashMap<>();
+        USES.forEach((key, count) -> uses.put(key, count.sum()));
+        int pooled;
+        synchronized (ChatModelRegistry.class) {
+            pooled = CLIENTS.size();
+        }
+        return new Stats(HITS.sum(), MISSES.sum(), EVICTIONS.sum(), pooled, uses);
+    }
+
+    private static ChatLanguageModel build(ModelKey key) {
+        if (StubChatModel.PROVIDER.equals(key.provider())) {
+            return new StubChatModel(key.modelName(), key.temperature(), settings.getStubProfile());
+        }
+        AnthropicChatModel.AnthropicChatModelBuilder builder = AnthropicChatModel.builder()
+                .apiKey(System.getenv("ANTHROPIC_API_KEY"))
+                .modelName(key.modelName())
+                .temperature(key.temperature())
+                .timeout(Duration.ofSeconds(key.timeoutSeconds()))
+                .maxRetries(1) // A single attempt; LlmCalls retries with backoff under the shared limiter
+                .cacheSystemMessages(settings.isCacheSystemPrompts());
+        if (key.maxTokens() > 0) {
+            builder.maxTokens(key.maxTokens());
+        }
+        return builder.build();
+    }
+
+    private static StreamingChatLanguageModel buildStreaming(ModelKey key) {
+        if (StubChatModel.PROVIDER.equals(key.provider())) {
+            return new StubStreamingChatModel(new StubChatModel(key.modelName(), key.temperature(), settings.getStubProfile()));
+        }
+        AnthropicStreamingChatModel.AnthropicStreamingChatModelBuilder builder = AnthropicStreamingChatModel.builder()
+                .apiKey(System.getenv("ANTHROPIC_API_KEY"))
+                .modelName(key.modelName())
+                .temperature(key.temperature())
+                .timeout(Duration.ofSeconds(key.timeoutSeconds()))
+                .cacheSystemMessages(settings.isCacheSystemPrompts());
+        if (key.maxTokens() > 0) {
+            builder.maxTokens(key.maxTokens());
+        }
+        return builder.build();
+    }
+}
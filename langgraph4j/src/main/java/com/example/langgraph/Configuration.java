@@ -5,14 +5,58 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Configuration {
-    private double temperature;
-    private String modelName;
-    private double storyTemperature;
-    private int maxRetries; // Overall max retries for any loop
+    private Double temperature; // Revision-instructions temperature, null for 0.5
+    private String modelName; // Model for any route without candidates in modelRoutes
+    private Double storyTemperature; // Story temperature, null for 0.9
+    private Double answerTemperature; // Answer temperature, null for 0.7
+    private int maxRetries; // Overall max retries for any loop, including retries of a failed model call
+    private int maxTokens; // Per-call output token cap, 0 for the provider default
+    private boolean cacheSystemPrompts; // Mark system prompts for the provider's prompt cache; they are kept byte-identical across calls
+    private int runTokenBudget; // Model tokens one run may spend before it ends with its best story, 0 for unlimited
+    private long runDeadlineMillis; // Wall-clock limit per run; in-flight calls are cancelled when it passes, 0 for none
+    private long requestTimeoutSeconds; // Per-call HTTP timeout, 0 for the registry default
+    private int maxModelClients; // Upper bound on pooled model clients, 0 for the registry default
+    private String executorMode; // "virtual" (default) or "platform" for blocking node work
+    private int executorThreads; // Platform pool size, 0 for 4x available processors
+    private int executorQueueCapacity; // Platform pool queue bound, 0 for the executor default
+    private String modelProvider; // "anthropic" (default) or "stub" for the offline StubChatModel
+    private StubModelProfile stubProfile; // Latency/failure profile used when modelProvider is "stub"
+    private int responseCacheMaxEntries; // Evaluator cache size, 0 for the default, negative to disable
+    private long responseCacheTtlSeconds; // Evaluator cache entry lifetime, 0 for the default
+    private String responseCacheDirectory; // Optional on-disk cache tier that survives restarts
+    private String evaluationMode; // "sequential" (default) or "parallel" scary/funny checks
+    private boolean preScreen; // Reject obviously failing stories with StoryPreScreen before calling the scary/funny evaluators
+    private double preScreenScaryThreshold; // Scary cue words per 100 below which a story is NOT_SCARY without a model call, 0 for the default
+    private double preScreenFunnyThreshold; // Funny cue words per 100 below which a story is NOT_FUNNY without a model call, 0 for the default
+    private String preScreenRecordFile; // Optional NDJSON file collecting model-made scary/funny verdicts for PreScreenCalibration
+    private boolean storyStreaming; // Stream story tokens and allow early stop
+    private int storyMaxChars; // Streaming length cap; also bounds the story model's max tokens
+    private String storyBannedPattern; // Regex that rejects a story mid-stream
+    private int storyCandidates; // Above 1, write and evaluate this many stories in parallel per attempt
+    private String checkpointDirectory; // Directory for the durable checkpoint log, null to disable checkpointing
+    private boolean checkpointFsync; // Force each checkpoint to the device, not just the OS page cache
+    private long checkpointCompactBytes; // Log size that triggers compaction, 0 for the saver default
+    private int llmRequestsPerMinute; // Client-side request budget across all model calls, 0 for unlimited
+    private int llmTokensPerMinute; // Client-side token budget (prompt + reply), 0 for unlimited
+    private int llmMaxConcurrency; // Ceiling for the adaptive in-flight call limit, 0 for the limiter default
+    private long llmRetryBaseMillis; // First backoff ceiling for a retried model call, 0 for the default
+    private long llmRetryMaxMillis; // Backoff ceiling cap, 0 for the default
+    private Map<String, Double> hedgePercentiles; // Per call role ("story", "scary", ...): hedge after this latency percentile
+    private double hedgeMaxRate; // Cap on hedges as a fraction of hedge-enabled calls, 0 for the default (5%)
+    private int hedgeMinSamples; // Latency samples a role needs before it is hedged, 0 for the default
+    private Map<String, List<String>> modelRoutes; // Route ("answer", "story", "evaluator", "instructions") to candidate models, preferred first
+    private Set<String> fastestRoutes; // Routes that take the fastest healthy candidate instead of the first
+    private double circuitErrorRate; // Error rate over recent calls that opens a model's circuit, 0 for the default
+    private long circuitOpenSeconds; // How long an open circuit waits before a probe call, 0 for the default
+    private Set<String> coalescedRoles; // Call roles whose concurrent identical calls share one request; null for temperature-0 calls only
 }
 
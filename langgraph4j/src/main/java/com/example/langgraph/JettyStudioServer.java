@@ -1,117 +1,374 @@
 package com.example.langgraph;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.bsc.langgraph4j.CompiledGraph;
-import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.NodeOutput;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.streaming.StreamingOutput;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-// Try these imports - one of them should work
-// import org.bsc.langgraph4j.server.jetty.*;
-// import org.bsc.langgraph4j.jetty.*;
-//import org.bsc.langgraph4j.studio.jetty.*;
-
-import java.util.Map;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Serves the shared {@code CompiledGraph<State>} over HTTP on embedded Jetty.
+ * <ul>
+ *   <li>{@code POST /runs} takes {@code {"question": "..."}} (or a bare question) and replies with the final state as JSON.</li>
+ *   <li>{@code POST /runs/stream} replies with Server-Sent Events: a {@code node} event per finished node, {@code token}
+ *       events while the story streams (with {@code --story-streaming}), then {@code result} or {@code error}.</li>
+ *   <li>{@code GET /health} reports runs in flight and the admission counters.</li>
+ *   <li>{@code GET /metrics} exposes {@link Metrics} in the Prometheus text format.</li>
+ * </ul>
+ * Handlers never block a Jetty thread: the body is read asynchronously and the run is driven on its own pool, which
+ * completes the response when the run ends. At most {@code --max-runs} runs are in flight; further requests are turned
+ * away at once with 503 and {@code Retry-After} rather than queued, so an overloaded server stays responsive.
+ * <p>
+ * Each run is under a {@link RunControl}: a client that disconnects cancels its run, and with {@code --deadline-ms}
+ * a run that takes longer is stopped and answered with 504. Either way the run's model calls in flight are cancelled.
+ *
+ * Usage: JettyStudioServer [--port N] [--max-runs N] [--stub profile-spec] [--evaluation sequential|parallel|combined]
+ *                          [--story-streaming] [--token-budget N] [--prescreen] [--deadline-ms N]
+ */
 public class JettyStudioServer {
-    
+
+    private static final Logger LOG = LoggerFactory.getLogger(JettyStudioServer.class);
+
+    public static final String RUNS_PATH = "/runs";
+    public static final String STREAM_PATH = "/runs/stream";
+    public static final String HEALTH_PATH = "/health";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    // A non-streaming run sends nothing until it ends, which can take several model calls and retries
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final CompiledGraph<State> graph;
+    private final int maxRetries;
+    private final int tokenBudget;
+    private final long deadlineMillis;
+    private final int maxRuns;
+    private final Semaphore slots;
+    private final ExecutorService runDriver;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder stopped = new LongAdder();
+
+    public JettyStudioServer(CompiledGraph<State> graph, int maxRetries, int maxRuns) {
+        this(graph, maxRetries, 0, maxRuns);
+    }
+
+    /**
+     * @param tokenBudget model tokens each run may spend, 0 for unlimited; see {@link RunBudget}
+     */
+    public JettyStudioServer(CompiledGraph<State> graph, int maxRetries, int tokenBudget, int maxRuns) {
+        this(graph, maxRetries, tokenBudget, 0, maxRuns);
+    }
+
+    /**
+     * @param deadlineMillis wall-clock limit per run, 0 for none; see {@link RunControl}
+     */
+    public JettyStudioServer(CompiledGraph<State> graph, int maxRetries, int tokenBudget, long deadlineMillis, int maxRuns) {
+        this.graph = graph;
+        this.maxRetries = maxRetries;
+        this.tokenBudget = tokenBudget;
+        this.deadlineMillis = deadlineMillis;
+        this.maxRuns = maxRuns;
+        this.slots = new Semaphore(maxRuns);
+        // Runs get a driver pool of their own (see StoryGraph.configureRuntime); admission bounds it to maxRuns busy threads
+        AtomicInteger counter = new AtomicInteger();
+        this.runDriver = Executors.newFixedThreadPool(maxRuns, runnable -> {
+            Thread thread = new Thread(runnable, "http-run-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     public static void main(String[] args) throws Exception {
+        int port = 8080;
+        int maxRuns = 256;
+        StubModelProfile stubProfile = null;
+        boolean useStub = false;
+        String evaluationMode = StoryGraph.SEQUENTIAL_EVALUATION;
+        boolean storyStreaming = false;
+        int tokenBudget = 0;
+        boolean preScreen = false;
+        long deadlineMillis = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--max-runs" -> maxRuns = Integer.parseInt(args[++i]);
+                case "--stub" -> {
+                    useStub = true;
+                    boolean hasSpec = i + 1 < args.length && !args[i + 1].startsWith("--");
+                    stubProfile = StubModelProfile.parse(hasSpec ? args[++i] : null);
+                }
+                case "--evaluation" -> evaluationMode = args[++i];
+                case "--story-streaming" -> storyStreaming = true;
+                case "--token-budget" -> tokenBudget = Integer.parseInt(args[++i]);
+                case "--prescreen" -> preScreen = true;
+                case "--deadline-ms" -> deadlineMillis = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
         // Ensure ANTHROPIC_API_KEY environment variable is set
-        if (System.getenv("ANTHROPIC_API_KEY") == null || System.getenv("ANTHROPIC_API_KEY").isEmpty()) {
+        if (!useStub && (System.getenv("ANTHROPIC_API_KEY") == null || System.getenv("ANTHROPIC_API_KEY").isEmpty())) {
             throw new IllegalArgumentException("ANTHROPIC_API_KEY environment variable not set.");
         }
 
-        // Create the graph (same as in Main.java)
-        StateGraph<State> graph = new StateGraph<>(State::new);
-
-        // Add nodes
-        graph.addNode("claudeNode", Nodes::callClaude);
-        graph.addNode("storyNode", Nodes::generateStory);
-        graph.addNode("checkScaryNode", Nodes::checkStoryScary);
-        graph.addNode("checkStoryFunnyNode", Nodes::checkStoryFunny);
-        graph.addNode("createStoryInstructionsNode", Nodes::createStoryInstructions);
-
-        // Add edges
-        graph.addEdge(StateGraph.START, "storyNode");
-        graph.addEdge("claudeNode", "storyNode");
-        graph.addEdge("storyNode", "checkScaryNode");
-
-        // Conditional edges
-        graph.addConditionalEdges(
-                "checkScaryNode",
-                Routers.routeAfterScaryCheck(),
-                Map.of(
-                        "checkStoryFunnyNode", "checkStoryFunnyNode",
-                        "createStoryInstructionsNode", "createStoryInstructionsNode"
-                )
-        );
-
-        graph.addConditionalEdges(
-                "createStoryInstructionsNode",
-                Routers.routeAfterCreateInstructions(),
-                Map.of(
-                        "storyNode", "storyNode",
-                        StateGraph.END, StateGraph.END
-                )
-        );
-
-        graph.addConditionalEdges(
-                "checkStoryFunnyNode",
-                Routers.routeAfterFunninessCheck(),
-                Map.of(
-                        "createStoryInstructionsNode", "createStoryInstructionsNode",
-                        StateGraph.END, StateGraph.END
-                )
-        );
-
-        CompiledGraph<State> compiledGraph = graph.compile();
-        
-        System.out.println("Graph compiled successfully!");
-        
-        // Let's try to use reflection to find and instantiate the server
+        Configuration configForRun = StoryGraph.runtimeDefaults()
+                .modelProvider(useStub ? StubChatModel.PROVIDER : ChatModelRegistry.ANTHROPIC)
+                .stubProfile(stubProfile)
+                .evaluationMode(evaluationMode)
+                .storyStreaming(storyStreaming)
+                .runTokenBudget(tokenBudget)
+                .preScreen(preScreen)
+                .runDeadlineMillis(deadlineMillis)
+                .build();
+        StoryGraph.configureRuntime(configForRun);
+
+        // One compiled graph serves every request
+        CompiledGraph<State> compiledGraph = StoryGraph.compile(configForRun);
+        Server server = new JettyStudioServer(compiledGraph, configForRun.getMaxRetries(),
+                configForRun.getRunTokenBudget(), configForRun.getRunDeadlineMillis(), maxRuns).start(port);
+        LOG.info("Story graph served on http://localhost:{}{} (at most {} runs in flight)", port, RUNS_PATH, maxRuns);
+        server.join();
+    }
+
+    /**
+     * Starts a Jetty server for this endpoint on {@code port}; it stops with the JVM.
+     */
+    public Server start(int port) throws Exception {
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(port);
+        connector.setIdleTimeout(IDLE_TIMEOUT_MILLIS);
+        server.addConnector(connector);
+        server.setHandler(new Handler.Sequence(new MetricsHandler(), new RunHandler()));
+        server.setStopAtShutdown(true);
+        server.start();
+        return server;
+    }
+
+    private final class RunHandler extends Handler.Abstract.NonBlocking {
+        @Override
+        public boolean handle(Request request, Response response, Callback callback) {
+            String path = Request.getPathInContext(request);
+            if (HEALTH_PATH.equals(path)) {
+                writeJson(response, callback, HttpStatus.OK_200, health());
+                return true;
+            }
+            if (!RUNS_PATH.equals(path) && !STREAM_PATH.equals(path)) {
+                return false; // Jetty answers 404
+            }
+            if (!HttpMethod.POST.is(request.getMethod())) {
+                writeError(response, callback, HttpStatus.METHOD_NOT_ALLOWED_405, "Use POST");
+                return true;
+            }
+            // Admit before reading the body, so shedding an overload costs as little as possible
+            if (!slots.tryAcquire()) {
+                rejected.increment();
+                response.getHeaders().put(HttpHeader.RETRY_AFTER, RETRY_AFTER_SECONDS);
+                writeError(response, callback, HttpStatus.SERVICE_UNAVAILABLE_503, "Too many runs in flight");
+                return true;
+            }
+            admitted.increment();
+            boolean streaming = STREAM_PATH.equals(path);
+            Content.Source.asStringAsync(request, StandardCharsets.UTF_8).whenComplete((body, failure) -> {
+                String question = null;
+                try {
+                    question = failure == null ? BatchRunner.parseQuestion(body) : null;
+                } catch (IOException e) {
+                    failure = e;
+                }
+                if (question == null) {
+                    slots.release();
+                    writeError(response, callback, HttpStatus.BAD_REQUEST_400,
+                            failure != null ? "Unreadable request body" : "Missing question");
+                    return;
+                }
+                String admittedQuestion = question;
+                runDriver.execute(() -> {
+                    inFlight.incrementAndGet();
+                    RunControl run = RunControl.open(RunControl.newRunId(), deadlineMillis);
+                    // A client that goes away cancels its run instead of leaving it to spend model calls
+                    request.addFailureListener(error -> run.cancel());
+                    try {
+                        if (streaming) {
+                            stream(admittedQuestion, run, response, callback);
+                        } else {
+                            invoke(admittedQuestion, run, response, callback);
+                        }
+                    } finally {
+                        run.close();
+                        inFlight.decrementAndGet();
+                        slots.release();
+                    }
+                });
+            });
+            return true;
+        }
+    }
+
+    private void invoke(String question, RunControl run, Response response, Callback callback) {
+        ObjectNode result = JSON.createObjectNode();
+        result.put("question", question);
+        int status;
         try {
-            System.out.println("Attempting to start Jetty Studio Server...");
-            
-            // Try Method 1: Look for main classes in the jetty artifact
-            tryStartServer1(compiledGraph);
-            
+            Optional<State> finalState = graph.invoke(State.inputs(question, maxRetries, tokenBudget, run.runId()),
+                    RunnableConfig.builder().build());
+            if (finalState.isPresent()) {
+                result.put("status", "ok");
+                BatchRunner.putState(result, finalState.get());
+                status = HttpStatus.OK_200;
+                succeeded.increment();
+            } else {
+                result.put("status", "error");
+                result.put("error", "Graph execution completed but returned no final state.");
+                status = HttpStatus.INTERNAL_SERVER_ERROR_500;
+                failed.increment();
+            }
         } catch (Exception e) {
-            System.err.println("Method 1 failed: " + e.getMessage());
-            
+            if (run.isStopped()) {
+                result.put("status", "stopped");
+                result.put("stopReason", run.stopReason());
+                status = HttpStatus.GATEWAY_TIMEOUT_504;
+                stopped.increment();
+            } else {
+                result.put("status", "error");
+                result.put("error", String.valueOf(e.getMessage()));
+                status = HttpStatus.INTERNAL_SERVER_ERROR_500;
+                failed.increment();
+            }
+        }
+        writeJson(response, callback, status, result);
+    }
+
+    /**
+     * Runs the graph through its streaming API and forwards each output as an event. Each write waits for the
+     * previous one, so a slow client backs up its own run rather than the server's memory; a client that has gone
+     * away fails the next write, and its run is cancelled there.
+     */
+    private void stream(String question, RunControl run, Response response, Callback callback) {
+        response.setStatus(HttpStatus.OK_200);
+        response.getHeaders().put(HttpHeader.CONTENT_TYPE, "text/event-stream;charset=utf-8");
+        response.getHeaders().put(HttpHeader.CACHE_CONTROL, "no-cache");
+        State lastState = null;
+        try {
             try {
-                // Try Method 2: Look for server classes
-                tryStartServer2(compiledGraph);
-                
-            } catch (Exception e2) {
-                System.err.println("Method 2 failed: " + e2.getMessage());
-                
-               
+                for (NodeOutput<State> output : graph.stream(State.inputs(question, maxRetries, tokenBudget, run.runId()),
+                        RunnableConfig.builder().build())) {
+                    ObjectNode event = JSON.createObjectNode();
+                    event.put("node", output.node());
+                    if (output instanceof StreamingOutput<State> streamingOutput) {
+                        event.put("chunk", streamingOutput.chunk());
+                        send(response, "token", event);
+                        continue;
+                    }
+                    send(response, "node", event);
+                    lastState = output.state();
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                ObjectNode error = JSON.createObjectNode();
+                if (run.isStopped()) {
+                    stopped.increment();
+                    error.put("status", "stopped");
+                    error.put("stopReason", run.stopReason());
+                } else {
+                    failed.increment();
+                    error.put("status", "error");
+                    error.put("error", String.valueOf(e.getMessage()));
+                }
+                send(response, "error", error);
+                Content.Sink.write(response, true, "", callback);
+                return;
+            }
+            ObjectNode result = JSON.createObjectNode();
+            result.put("question", question);
+            if (lastState != null) {
+                result.put("status", "ok");
+                BatchRunner.putState(result, lastState);
+                succeeded.increment();
+            } else {
+                result.put("status", "error");
+                result.put("error", "Graph execution completed but returned no final state.");
+                failed.increment();
             }
+            send(response, "result", result);
+            Content.Sink.write(response, true, "", callback);
+        } catch (IOException e) {
+            run.cancel();
+            failed.increment();
+            callback.failed(e);
+        }
+    }
+
+    private static void send(Response response, String event, ObjectNode data) throws IOException {
+        Callback.Completable written = new Callback.Completable();
+        // Jackson writes JSON on one line, so each event needs a single data field
+        Content.Sink.write(response, false, "event: " + event + "\ndata: " + data + "\n\n", written);
+        try {
+            written.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Client went away", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while streaming", e);
         }
     }
-    
-    private static void tryStartServer1(CompiledGraph<State> graph) throws Exception {
-        // Look for a main class in the jetty server artifact
-        Class<?> mainClass = Class.forName("org.bsc.langgraph4j.server.jetty.Main");
-        var main = mainClass.getMethod("main", String[].class);
-        main.invoke(null, (Object) new String[]{"--port", "8080"});
+
+    private static void writeJson(Response response, Callback callback, int status, ObjectNode body) {
+        response.setStatus(status);
+        response.getHeaders().put(HttpHeader.CONTENT_TYPE, "application/json;charset=utf-8");
+        Content.Sink.write(response, true, body.toString(), callback);
     }
-    
-    private static void tryStartServer2(CompiledGraph<State> graph) throws Exception {
-        // Look for a server class
-        Class<?> serverClass = Class.forName("org.bsc.langgraph4j.server.jetty.LangGraphServer");
-        var constructor = serverClass.getConstructor(int.class);
-        Object server = constructor.newInstance(8080);
-        
-        // Try to register the graph
-        var registerMethod = serverClass.getMethod("registerGraph", String.class, CompiledGraph.class);
-        registerMethod.invoke(server, "story-generator", graph);
-        
-        // Start the server
-        var startMethod = serverClass.getMethod("start");
-        startMethod.invoke(server);
-        
-        System.out.println("Jetty Studio Server started on http://localhost:8080");
-        
-        // Keep it running
-        Thread.currentThread().join();
+
+    private static void writeError(Response response, Callback callback, int status, String message) {
+        ObjectNode error = JSON.createObjectNode();
+        error.put("status", "error");
+        error.put("error", message);
+        writeJson(response, callback, status, error);
+    }
+
+    private ObjectNode health() {
+        ObjectNode health = JSON.createObjectNode();
+        health.put("status", "ok");
+        health.put("runsInFlight", inFlight.get());
+        health.put("maxRuns", maxRuns);
+        health.put("admitted", admitted.sum());
+        health.put("rejected", rejected.sum());
+        health.put("succeeded", succeeded.sum());
+        health.put("failed", failed.sum());
+        health.put("stopped", stopped.sum());
+        health.put("budgetExhausted", RunBudget.exhaustedRuns());
+        health.put("preScreenAvoided", StoryPreScreen.shared().stats().avoided());
+        health.put("modelCallsInFlight", LlmLimiter.shared().stats().inFlight());
+        return health;
     }
-    
-}
\ No newline at end of file
+}
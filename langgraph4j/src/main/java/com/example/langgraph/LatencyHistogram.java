@@ -0,0 +1,96 @@
+package com.example.langgraph;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear millisecond buckets: exact below 32 ms, then 16 buckets per power
+ * of two (about 6% resolution). It keeps the current and the previous window of {@code windowSize} samples,
+ * so percentiles follow recent behaviour instead of averaging over the whole process lifetime.
+ */
+public final class LatencyHistogram {
+
+    private static final int EXACT = 32;
+    private static final int SUB_BUCKETS = 16;
+    private static final int BUCKETS = EXACT + (64 - 5) * SUB_BUCKETS;
+
+    private final int windowSize;
+    private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+    private volatile AtomicLongArray previous = new AtomicLongArray(BUCKETS);
+    private final LongAdder inCurrent = new LongAdder();
+    private final LongAdder total = new LongAdder();
+
+    public LatencyHistogram(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public void record(long millis) {
+        current.incrementAndGet(index(Math.max(0, millis)));
+        total.increment();
+        inCurrent.increment();
+        if (inCurrent.sum() >= windowSize) {
+            rotate();
+        }
+    }
+
+    private synchronized void rotate() {
+        // Re-check under the lock: only one recorder rotates a full window
+        if (inCurrent.sum() >= windowSize) {
+            previous = current;
+            current = new AtomicLongArray(BUCKETS);
+            inCurrent.reset();
+        }
+    }
+
+    /**
+     * Samples recorded since creation.
+     */
+    public long count() {
+        return total.sum();
+    }
+
+    /**
+     * The upper bound of the bucket holding the {@code p}-th percentile of the last one to two windows, or -1 if empty.
+     */
+    public long percentile(double p) {
+        AtomicLongArray now = current;
+        AtomicLongArray before = previous;
+        long[] counts = new long[BUCKETS];
+        long samples = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = now.get(i) + before.get(i);
+            samples += counts[i];
+        }
+        if (samples == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * samples));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // >= 5
+        int sub = (int) (value >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+        return EXACT + (exponent - 5) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int exponent = (index - EXACT) / SUB_BUCKETS + 5;
+        int sub = (index - EXACT) % SUB_BUCKETS;
+        long width = 1L << (exponent - 4);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
@@ -0,0 +1,560 @@
+package com.example.langgraph;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.anthropic.internal.client.AnthropicHttpException;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.net.http.HttpTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The one path every node takes to a model: admission through the shared {@link LlmLimiter}, then the call,
+ * retried with full-jitter exponential backoff when it fails with a rate limit, overload, server error or timeout.
+ * Retries per call are bounded by {@link Configuration#getMaxRetries()}; anything else fails the call at once.
+ * Clients are built without langchain4j's own fixed-delay retries, so this is the only retry layer.
+ * <p>
+ * Calls are tagged with a role (the node's purpose: answer, story, scary, funny, combined), and each role keeps a
+ * live {@link LatencyHistogram} of its successful calls. Roles listed in {@link Configuration#getHedgePercentiles()}
+ * are hedged: once a call has been outstanding longer than that percentile, a duplicate is sent, the first reply
+ * wins and the other is cancelled; what the loser spent is charged to the winner's reply. Hedges are capped at
+ * {@code hedgeMaxRate} of hedge-enabled calls and are not sent while the limiter is saturated, when the extra load
+ * would only slow every call down.
+ * <p>
+ * Concurrent identical calls (same route models, temperature and prompt) share one in-flight call through
+ * {@link SingleFlight}. By default only temperature-0 calls are shared, since sampled calls are expected to differ;
+ * {@link Configuration#getCoalescedRoles()} names the roles to share explicitly.
+ */
+public final class LlmCalls {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LlmCalls.class);
+
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long DEFAULT_RETRY_BASE_MILLIS = 500;
+    private static final long DEFAULT_RETRY_MAX_MILLIS = 20_000;
+    private static final int DEFAULT_OUTPUT_TOKENS = 256; // Estimate when no max-tokens cap is configured
+    private static final double DEFAULT_HEDGE_MAX_RATE = 0.05;
+    private static final int DEFAULT_HEDGE_MIN_SAMPLES = 20;
+    private static final int HISTOGRAM_WINDOW = 1000;
+
+    public static final String ROLE_ANSWER = "answer";
+    public static final String ROLE_STORY = "story";
+    public static final String ROLE_SCARY = "scary";
+    public static final String ROLE_FUNNY = "funny";
+    public static final String ROLE_COMBINED = "combined";
+    public static final String ROLE_INSTRUCTIONS = "instructions";
+
+    /**
+     * A model reply and what it cost.
+     */
+    public record Reply(String text, TokenUsage tokenUsage) {
+    }
+
+    // Identical calls: the same candidate models at the same temperature with the same prompt
+    private record FlightKey(String routeKey, double temperature, String prompt) {
+    }
+
+    /**
+     * Point-in-time view of the retry counters; admission and service times are in {@link LlmLimiter.Stats}.
+     */
+    public record Stats(long calls, long retries, long failures, long backoffMillis,
+                        long hedges, long hedgeWins, long hedgesCapped) {
+    }
+
+    private static volatile Configuration settings = Configuration.builder().build();
+
+    private static final LongAdder CALLS = new LongAdder();
+    private static final LongAdder RETRIES = new LongAdder();
+    private static final LongAdder FAILURES = new LongAdder();
+    private static final LongAdder BACKOFF_MILLIS = new LongAdder();
+    private static final Map<String, LatencyHistogram> LATENCIES = new ConcurrentHashMap<>();
+    private static final SingleFlight<FlightKey, Reply> IN_FLIGHT = new SingleFlight<>();
+    private static final AtomicLong HEDGE_ELIGIBLE = new AtomicLong();
+    private static final AtomicLong HEDGES = new AtomicLong();
+    private static final LongAdder HEDGE_WINS = new LongAdder();
+    private static final LongAdder HEDGES_CAPPED = new LongAdder();
+    private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hedge-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private LlmCalls() {
+    }
+
+    /**
+     * Applies retry settings and rebuilds the shared limiter from the given configuration.
+     */
+    public static synchronized void configure(Configuration configuration) {
+        settings = configuration;
+        LlmLimiter.configure(configuration);
+    }
+
+    /**
+     * Sends a single user message on behalf of {@code role} and returns the reply text with its token usage.
+     * The model and temperature come from the role's route in {@link ModelRouter}; a failed attempt is retried
+     * on another candidate when one is healthy.
+     */
+    public static Reply generate(String role, String prompt) {
+        return generate(role, null, prompt);
+    }
+
+    /**
+     * Like {@link #generate(String, String)}, with the fixed part of the prompt sent as a system message. Keeping it
+     * byte-identical across calls lets the provider's prompt cache serve it (see {@code cacheSystemPrompts}).
+     */
+    public static Reply generate(String role, String system, String user) {
+        CALLS.increment();
+        List<ChatMessage> messages = messages(system, user);
+        String prompt = promptText(system, user);
+        ModelRouter router = ModelRouter.shared();
+        String route = ModelRouter.routeFor(role);
+        double temperature = router.temperature(route);
+        Set<String> coalescedRoles = settings.getCoalescedRoles();
+        if (coalescedRoles != null ? coalescedRoles.contains(role) : temperature == 0) {
+            return IN_FLIGHT.execute(new FlightKey(router.routeKey(route), temperature, prompt), () -> call(role, messages, prompt));
+        }
+        return call(role, messages, prompt);
+    }
+
+    private static List<ChatMessage> messages(String system, String user) {
+        return system == null ? List.of(UserMessage.from(user)) : List.of(SystemMessage.from(system), UserMessage.from(user));
+    }
+
+    private static String promptText(String system, String user) {
+        return system == null ? user : system + "\n\n" + user;
+    }
+
+    private static Reply call(String role, List<ChatMessage> messages, String prompt) {
+        Double percentile = hedgePercentile(role);
+        return percentile != null ? hedged(role, messages, prompt, percentile) : callWithRetries(role, messages, prompt);
+    }
+
+    private static Reply hedged(String role, List<ChatMessage> messages, String prompt, double percentile) {
+        LatencyHistogram latency = latency(role);
+        HEDGE_ELIGIBLE.incrementAndGet();
+        Configuration current = settings;
+        int minSamples = current.getHedgeMinSamples() > 0 ? current.getHedgeMinSamples() : DEFAULT_HEDGE_MIN_SAMPLES;
+        if (latency.count() < minSamples) {
+            // Not enough history to know what "slow" means yet
+            return callWithRetries(role, messages, prompt);
+        }
+        long hedgeAfterMillis = latency.percentile(percentile);
+
+        // The primary runs on this thread, so a bounded node executor is never waiting on itself; only the hedge
+        // goes to the executor, and a winning hedge interrupts the primary
+        HedgeRace race = new HedgeRace(Thread.currentThread());
+        RunControl run = RunControl.current();
+        ScheduledFuture<?> timer = HEDGE_TIMER.schedule(
+                () -> race.startHedge(run, role, percentile, hedgeAfterMillis, () -> callWithRetries(role, messages, prompt)),
+                hedgeAfterMillis, TimeUnit.MILLISECONDS);
+        Reply reply = null;
+        RuntimeException error = null;
+        try {
+            reply = callWithRetries(role, messages, prompt);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        timer.cancel(false);
+        race.finishPrimary();
+
+        CompletableFuture<Reply> hedge = race.hedge;
+        if (hedge == null) {
+            if (error != null) {
+                throw error;
+            }
+            return reply;
+        }
+        if (race.hedgeReply != null) {
+            HEDGE_WINS.increment();
+            return charged(race.hedgeReply, reply != null ? reply.tokenUsage() : promptCharge(prompt));
+        }
+        if (error == null || !race.hedgeRunning || Thread.currentThread().isInterrupted()) {
+            // The primary answered first, or the run was stopped: the hedge is the loser
+            Reply late = hedge.isDone() && !hedge.isCompletedExceptionally() ? hedge.join() : null;
+            hedge.cancel(true);
+            if (error != null) {
+                throw error;
+            }
+            return charged(reply, late != null ? late.tokenUsage() : promptCharge(prompt));
+        }
+        // The primary failed while the hedge is still running on another thread; fail only if both do
+        try {
+            Reply won = hedge.get();
+            HEDGE_WINS.increment();
+            return won;
+        } catch (InterruptedException e) {
+            hedge.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Model call cancelled");
+        } catch (ExecutionException e) {
+            error.addSuppressed(e.getCause());
+            throw error;
+        }
+    }
+
+    /**
+     * The two attempts of one hedged call. The primary belongs to the calling thread; the hedge is started by the
+     * timer, and if it lands while the primary is still running it interrupts that thread.
+     */
+    private static final class HedgeRace {
+        private final Thread primaryThread;
+        private CompletableFuture<Reply> hedge;
+        private boolean hedgeRunning;
+        private boolean primaryFinished;
+        private Reply hedgeReply;
+
+        HedgeRace(Thread primaryThread) {
+            this.primaryThread = primaryThread;
+        }
+
+        synchronized void startHedge(RunControl run, String role, double percentile, long hedgeAfterMillis,
+                                     Supplier<Reply> call) {
+            if (primaryFinished) {
+                return;
+            }
+            if (LlmLimiter.shared().saturated() || !tryReserveHedge()) {
+                HEDGES_CAPPED.increment();
+                return;
+            }
+            LOG.debug("Hedging {} call after {} ms (p{})", role, hedgeAfterMillis, percentile);
+            // The hedge belongs to the same run as the primary, so stopping the run cancels both
+            RunControl previous = RunControl.bind(run);
+            CompletableFuture<Reply> submitted;
+            try {
+                submitted = NodeExecutor.supplyInterruptibly(() -> {
+                    hedgeStarted();
+                    return call.get();
+                });
+            } finally {
+                RunControl.bind(previous);
+            }
+            // The task cannot finish before this lock is released, so a failed future here means it never ran:
+            // the node pool rejected it or the run had stopped. It is not a hedge, and costs nothing
+            if (submitted.isCompletedExceptionally()) {
+                HEDGES.decrementAndGet();
+                HEDGES_CAPPED.increment();
+                LOG.debug("Hedge for {} call not started: node executor rejected it or the run stopped", role);
+                return;
+            }
+            hedge = submitted;
+            hedge.thenAccept(this::hedgeWon);
+        }
+
+        private synchronized void hedgeStarted() {
+            hedgeRunning = true;
+        }
+
+        private synchronized void hedgeWon(Reply reply) {
+            if (!primaryFinished) {
+                hedgeReply = reply;
+                primaryThread.interrupt();
+            }
+        }
+
+        // Called on the primary's thread once it has returned or thrown; clears the interrupt a winning hedge sent
+        synchronized void finishPrimary() {
+            primaryFinished = true;
+            if (hedgeReply != null) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    // The losing attempt was spent too: its tokens go onto the winner's reply, so the run's budget meters both
+    private static Reply charged(Reply winner, TokenUsage loser) {
+        TokenUsage usage = winner.tokenUsage() != null && winner.tokenUsage().totalTokenCount() != null
+                ? winner.tokenUsage() : new TokenUsage(0, winner.text().length() / 4);
+        return new Reply(winner.text(), loser != null ? usage.add(loser) : usage);
+    }
+
+    // A cancelled attempt reports no usage, but its prompt was already sent and is billed
+    private static TokenUsage promptCharge(String prompt) {
+        return new TokenUsage(prompt.length() / 4, 0);
+    }
+
+    // Hedges may not exceed the configured fraction of hedge-enabled calls
+    private static boolean tryReserveHedge() {
+        Configuration current = settings;
+        double maxRate = current.getHedgeMaxRate() > 0 ? current.getHedgeMaxRate() : DEFAULT_HEDGE_MAX_RATE;
+        while (true) {
+            long sent = HEDGES.get();
+            if (sent + 1 > maxRate * HEDGE_ELIGIBLE.get()) {
+                return false;
+            }
+            if (HEDGES.compareAndSet(sent, sent + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static Double hedgePercentile(String role) {
+        Map<String, Double> percentiles = settings.getHedgePercentiles();
+        return percentiles != null ? percentiles.get(role) : null;
+    }
+
+    /**
+     * Live latency of successful calls for the given role.
+     */
+    public static LatencyHistogram latency(String role) {
+        return LATENCIES.computeIfAbsent(role, r -> new LatencyHistogram(HISTOGRAM_WINDOW));
+    }
+
+    private static Reply callWithRetries(String role, List<ChatMessage> messages, String prompt) {
+        int estimate = estimateTokens(prompt);
+        ModelRouter router = ModelRouter.shared();
+        String route = ModelRouter.routeFor(role);
+        String failedModel = null;
+        for (int attempt = 0; ; attempt++) {
+            String model = router.select(route, failedModel);
+            ChatLanguageModel llm = ChatModelRegistry.get(model, router.temperature(route));
+            LlmLimiter limiter = LlmLimiter.shared();
+            LlmLimiter.Permit permit = admit(limiter, estimate);
+            long started = System.nanoTime();
+            Response<AiMessage> response;
+            try {
+                response = llm.generate(messages);
+            } catch (RuntimeException e) {
+                // Whatever a stopped attempt fails with, e.g. the loser of a hedge, it says nothing about the model
+                LlmLimiter.Outcome outcome = Thread.currentThread().isInterrupted()
+                        ? LlmLimiter.Outcome.CANCELLED : classify(e);
+                limiter.release(permit, outcome, estimate);
+                router.record(model, outcome, 0);
+                Metrics.recordModelCall(role, model, outcome, System.nanoTime() - started, null);
+                failedModel = model;
+                if (!retryable(outcome, router, route) || attempt >= maxRetries()) {
+                    if (outcome != LlmLimiter.Outcome.CANCELLED) {
+                        FAILURES.increment();
+                    }
+                    throw e;
+                }
+                backOff(attempt, outcome, e, router.hasHealthyAlternative(route, model));
+                continue;
+            }
+            long nanos = System.nanoTime() - started;
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            latency(role).record(millis);
+            router.record(model, LlmLimiter.Outcome.SUCCESS, millis);
+            TokenUsage usage = response.tokenUsage();
+            Metrics.recordModelCall(role, model, LlmLimiter.Outcome.SUCCESS, nanos, usage);
+            limiter.release(permit, LlmLimiter.Outcome.SUCCESS, usage != null && usage.totalTokenCount() != null ? usage.totalTokenCount() : estimate);
+            return new Reply(response.content().text(), usage);
+        }
+    }
+
+    /**
+     * Streams a reply to {@code handler} under the same admission control. A failure before the first token is
+     * retried like a blocking call; once tokens have been delivered the error goes to the handler, since a retry
+     * would replay text the consumer has already seen. Blocks only while waiting for admission.
+     */
+    public static void stream(String role, int maxTokens, String prompt, StreamingResponseHandler<AiMessage> handler) {
+        stream(role, maxTokens, null, prompt, handler);
+    }
+
+    /**
+     * Like {@link #stream(String, int, String, StreamingResponseHandler)}, with the fixed part of the prompt sent as a
+     * system message.
+     */
+    public static void stream(String role, int maxTokens, String system, String user, StreamingResponseHandler<AiMessage> handler) {
+        CALLS.increment();
+        streamAttempt(role, maxTokens, messages(system, user), handler, estimateTokens(promptText(system, user)), 0, null);
+    }
+
+    private static void streamAttempt(String role, int maxTokens, List<ChatMessage> messages,
+                                      StreamingResponseHandler<AiMessage> handler, int estimate, int attempt,
+                                      String failedModel) {
+        ModelRouter router = ModelRouter.shared();
+        String route = ModelRouter.routeFor(role);
+        String model = router.select(route, failedModel);
+        StreamingChatLanguageModel llm = ChatModelRegistry.getStreaming(model, router.temperature(route), maxTokens);
+        LlmLimiter limiter = LlmLimiter.shared();
+        LlmLimiter.Permit permit = admit(limiter, estimate);
+        long startedNanos = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        AtomicBoolean started = new AtomicBoolean();
+        StreamingResponseHandler<AiMessage> admitted = new StreamingResponseHandler<>() {
+            @Override
+            public void onNext(String token) {
+                started.set(true);
+                handler.onNext(token);
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                if (released.compareAndSet(false, true)) {
+                    long nanos = System.nanoTime() - startedNanos;
+                    TokenUsage usage = response.tokenUsage();
+                    limiter.release(permit, LlmLimiter.Outcome.SUCCESS,
+                            usage != null && usage.totalTokenCount() != null ? usage.totalTokenCount() : estimate);
+                    router.record(model, LlmLimiter.Outcome.SUCCESS, TimeUnit.NANOSECONDS.toMillis(nanos));
+                    Metrics.recordModelCall(role, model, LlmLimiter.Outcome.SUCCESS, nanos, usage);
+                }
+                handler.onComplete(response);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                // The consumer stopping the stream is not a failure of the call
+                LlmLimiter.Outcome outcome = error instanceof StoryStreamHandler.StopGeneration
+                        ? LlmLimiter.Outcome.CANCELLED : classify(error);
+                if (released.compareAndSet(false, true)) {
+                    limiter.release(permit, outcome, estimate);
+                    router.record(model, outcome, 0);
+                    Metrics.recordModelCall(role, model, outcome, System.nanoTime() - startedNanos, null);
+                }
+                if (!started.get() && retryable(outcome, router, route) && attempt < maxRetries()) {
+                    NodeExecutor.supplyAsync(() -> {
+                        try {
+                            backOff(attempt, outcome, error, router.hasHealthyAlternative(route, model));
+                            streamAttempt(role, maxTokens, messages, handler, estimate, attempt + 1, model);
+                        } catch (RuntimeException e) {
+                            handler.onError(e);
+                        }
+                        return null;
+                    });
+                    return;
+                }
+                if (outcome != LlmLimiter.Outcome.CANCELLED) {
+                    FAILURES.increment();
+                }
+                handler.onError(error);
+            }
+        };
+        try {
+            llm.generate(messages, admitted);
+        } catch (RuntimeException e) {
+            admitted.onError(e);
+        }
+    }
+
+    private static LlmLimiter.Permit admit(LlmLimiter limiter, int estimate) {
+        try {
+            return limiter.acquire(estimate);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Model call cancelled while waiting for admission");
+        }
+    }
+
+    // A retry that fails over to another healthy model goes at once; backing off only protects the model that failed
+    private static void backOff(int attempt, LlmLimiter.Outcome outcome, Throwable error, boolean failover) {
+        long delayMillis = failover ? 0 : backoffMillis(attempt);
+        RETRIES.increment();
+        BACKOFF_MILLIS.add(delayMillis);
+        LOG.warn("Model call failed ({}: {}), retry {}/{} {}", outcome, error.getMessage(),
+                attempt + 1, maxRetries(), failover ? "on another model" : "in " + delayMillis + " ms");
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Model call cancelled during retry backoff");
+        }
+    }
+
+    // Full jitter: uniform in [0, min(cap, base * 2^attempt)], which spreads out clients that failed together
+    static long backoffMillis(int attempt) {
+        Configuration current = settings;
+        long base = current.getLlmRetryBaseMillis() > 0 ? current.getLlmRetryBaseMillis() : DEFAULT_RETRY_BASE_MILLIS;
+        long cap = current.getLlmRetryMaxMillis() > 0 ? current.getLlmRetryMaxMillis() : DEFAULT_RETRY_MAX_MILLIS;
+        long ceiling = Math.min(cap, base << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static int maxRetries() {
+        int configured = settings.getMaxRetries();
+        return configured > 0 ? configured : DEFAULT_MAX_RETRIES;
+    }
+
+    // Prompt tokens at ~4 characters each, plus the reply at its cap
+    private static int estimateTokens(String prompt) {
+        int maxTokens = settings.getMaxTokens();
+        return prompt.length() / 4 + (maxTokens > 0 ? maxTokens : DEFAULT_OUTPUT_TOKENS);
+    }
+
+    /**
+     * Maps a failed call to an outcome by walking its cause chain; langchain4j wraps client errors in
+     * {@code RuntimeException}s.
+     */
+    static LlmLimiter.Outcome classify(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AnthropicHttpException http && http.statusCode() != null) {
+                int status = http.statusCode();
+                if (status == 429) {
+                    return LlmLimiter.Outcome.RATE_LIMITED;
+                }
+                // 529 is Anthropic's "overloaded"; other 5xx responses are treated the same way
+                return status >= 500 ? LlmLimiter.Outcome.OVERLOADED : LlmLimiter.Outcome.ERROR;
+            }
+            if (cause instanceof InterruptedException || cause instanceof CancellationException) {
+                return LlmLimiter.Outcome.CANCELLED;
+            }
+            // SocketTimeoutException is an InterruptedIOException too; one on an interrupted thread is a cancel
+            if (cause instanceof InterruptedIOException && Thread.currentThread().isInterrupted()) {
+                return LlmLimiter.Outcome.CANCELLED;
+            }
+            if (cause instanceof HttpTimeoutException || cause instanceof TimeoutException
+                    || cause instanceof InterruptedIOException) {
+                return LlmLimiter.Outcome.TIMEOUT;
+            }
+        }
+        return LlmLimiter.Outcome.ERROR;
+    }
+
+    /**
+     * Parses a hedging spec such as {@code story=95,scary=90} into role percentiles.
+     */
+    public static Map<String, Double> parseHedgePercentiles(String spec) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            String[] pair = entry.trim().split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Malformed hedge entry: " + entry);
+            }
+            percentiles.put(pair[0].trim(), Double.parseDouble(pair[1].trim()));
+        }
+        return percentiles;
+    }
+
+    // Congestion is retried on any model; other errors only when another candidate can take the retry
+    private static boolean retryable(LlmLimiter.Outcome outcome, ModelRouter router, String route) {
+        if (outcome == LlmLimiter.Outcome.CANCELLED || Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        return outcome.congested() || router.candidates(route).size() > 1;
+    }
+
+    public static SingleFlight.Stats coalescingStats() {
+        return IN_FLIGHT.stats();
+    }
+
+    public static Stats stats() {
+        return new Stats(CALLS.sum(), RETRIES.sum(), FAILURES.sum(), BACKOFF_MILLIS.sum(),
+                HEDGES.get(), HEDGE_WINS.sum(), HEDGES_CAPPED.sum());
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.langgraph;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client-side admission control shared by every model call.
+ * <p>
+ * A call needs a request token, enough token budget for its estimate, and a concurrency slot.
+ * Both budgets are token buckets refilled continuously from the per-minute rates (0 means unlimited).
+ * The concurrency limit adapts AIMD-style: each successful call raises it by {@code 1/limit}, roughly one slot
+ * per round of calls, and a rate-limit, overload or timeout halves it. Only calls that started after the last
+ * decrease can trigger another one, so a burst of 429s from one window halves the limit once, not once per call.
+ */
+public final class LlmLimiter {
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 64;
+    private static final double DECREASE_FACTOR = 0.5;
+
+    /**
+     * How a call ended, as far as admission control is concerned.
+     */
+    public enum Outcome {
+        SUCCESS, RATE_LIMITED, OVERLOADED, TIMEOUT, ERROR, CANCELLED;
+
+        boolean congested() {
+            return this == RATE_LIMITED || this == OVERLOADED || this == TIMEOUT;
+        }
+    }
+
+    /**
+     * An admitted call; hand it back to {@link #release} exactly once.
+     */
+    public static final class Permit {
+        private final int estimatedTokens;
+        private final long admittedNanos;
+
+        private Permit(int estimatedTokens, long admittedNanos) {
+            this.estimatedTokens = estimatedTokens;
+            this.admittedNanos = admittedNanos;
+        }
+    }
+
+    /**
+     * Point-in-time view of the limiter. Throttled time is time spent waiting for admission;
+     * service time is time spent inside admitted calls.
+     */
+    public record Stats(long admitted, long throttled, long rateLimited, long overloaded, long timeouts, long errors,
+                        long throttledMillis, long serviceMillis, double concurrencyLimit, int inFlight) {
+    }
+
+    private static volatile LlmLimiter shared = new LlmLimiter(0, 0, DEFAULT_MAX_CONCURRENCY);
+
+    private final double requestsPerNano;
+    private final double tokensPerNano;
+    private final double requestCapacity;
+    private final double tokenCapacity;
+    private final int maxConcurrency;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private double requestTokens;
+    private double tokenBudget;
+    private long refilledNanos = System.nanoTime();
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseNanos = Long.MIN_VALUE;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttledNanos = new LongAdder();
+    private final LongAdder serviceNanos = new LongAdder();
+
+    public LlmLimiter(int requestsPerMinute, int tokensPerMinute, int maxConcurrency) {
+        this.requestsPerNano = requestsPerMinute / 60e9;
+        this.tokensPerNano = tokensPerMinute / 60e9;
+        // A bucket holds one second of budget, so an idle client cannot burst a whole minute's worth at once
+        this.requestCapacity = Math.max(1, requestsPerMinute / 60.0);
+        this.tokenCapacity = Math.max(1, tokensPerMinute / 60.0);
+        this.requestTokens = requestCapacity;
+        this.tokenBudget = tokenCapacity;
+        this.maxConcurrency = maxConcurrency;
+        this.limit = maxConcurrency;
+    }
+
+    /**
+     * Replaces the shared limiter with one sized from the given configuration.
+     */
+    public static synchronized void configure(Configuration configuration) {
+        shared = new LlmLimiter(
+                configuration.getLlmRequestsPerMinute(),
+                configuration.getLlmTokensPerMinute(),
+                configuration.getLlmMaxConcurrency() > 0 ? configuration.getLlmMaxConcurrency() : DEFAULT_MAX_CONCURRENCY);
+    }
+
+    public static LlmLimiter shared() {
+        return shared;
+    }
+
+    /**
+     * Blocks until the call is admitted. A call estimated above the bucket size is admitted once the bucket is full,
+     * and the overdraft is repaid from later refills.
+     */
+    public Permit acquire(int estimatedTokens) throws InterruptedException {
+        long start = System.nanoTime();
+        boolean waited = false;
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                refill(now);
+                double tokensNeeded = tokensPerNano > 0 ? Math.min(estimatedTokens, tokenCapacity) : 0;
+                boolean slotFree = inFlight < Math.max(1, (int) limit);
+                boolean requestFree = requestsPerNano == 0 || requestTokens >= 1;
+                boolean tokensFree = tokensPerNano == 0 || tokenBudget >= tokensNeeded;
+                if (slotFree && requestFree && tokensFree) {
+                    if (requestsPerNano > 0) {
+                        requestTokens -= 1;
+                    }
+                    if (tokensPerNano > 0) {
+                        tokenBudget -= estimatedTokens;
+                    }
+                    inFlight++;
+                    break;
+                }
+                waited = true;
+                // Sleep until the emptier bucket has refilled, or until a slot is released
+                long waitNanos = TimeUnit.MILLISECONDS.toNanos(100);
+                if (!requestFree) {
+                    waitNanos = Math.min(waitNanos, (long) ((1 - requestTokens) / requestsPerNano));
+                }
+                if (!tokensFree) {
+                    waitNanos = Math.min(waitNanos, (long) ((tokensNeeded - tokenBudget) / tokensPerNano));
+                }
+                changed.awaitNanos(Math.max(waitNanos, 1));
+            }
+        } finally {
+            lock.unlock();
+        }
+        long admittedNanos = System.nanoTime();
+        admitted.increment();
+        if (waited) {
+            throttled.increment();
+            throttledNanos.add(admittedNanos - start);
+        }
+        return new Permit(estimatedTokens, admittedNanos);
+    }
+
+    /**
+     * Returns the slot, settles the token estimate against what the call actually used, and adapts the limit.
+     */
+    public void release(Permit permit, Outcome outcome, int actualTokens) {
+        long now = System.nanoTime();
+        serviceNanos.add(now - permit.admittedNanos);
+        switch (outcome) {
+            case RATE_LIMITED -> rateLimited.increment();
+            case OVERLOADED -> overloaded.increment();
+            case TIMEOUT -> timeouts.increment();
+            case ERROR -> errors.increment();
+            default -> {
+            }
+        }
+        lock.lock();
+        try {
+            inFlight--;
+            if (tokensPerNano > 0) {
+                tokenBudget += permit.estimatedTokens - actualTokens;
+            }
+            if (outcome == Outcome.SUCCESS) {
+                limit = Math.min(maxConcurrency, limit + 1 / limit);
+            } else if (outcome.congested() && permit.admittedNanos > lastDecreaseNanos) {
+                limit = Math.max(1, limit * DECREASE_FACTOR);
+                lastDecreaseNanos = now;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * True when every concurrency slot is taken, i.e. a new call would have to wait.
+     */
+    public boolean saturated() {
+        lock.lock();
+        try {
+            return inFlight >= Math.max(1, (int) limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        long elapsed = now - refilledNanos;
+        refilledNanos = now;
+        requestTokens = Math.min(requestCapacity, requestTokens + elapsed * requestsPerNano);
+        tokenBudget = Math.min(tokenCapacity, tokenBudget + elapsed * tokensPerNano);
+    }
+
+    public Stats stats() {
+        double currentLimit;
+        int currentInFlight;
+        lock.lock();
+        try {
+            currentLimit = limit;
+            currentInFlight = inFlight;
+        } finally {
+            lock.unlock();
+        }
+        return new Stats(admitted.sum(), throttled.sum(), rateLimited.sum(), overloaded.sum(), timeouts.sum(),
+                errors.sum(), TimeUnit.NANOSECONDS.toMillis(throttledNanos.sum()),
+                TimeUnit.NANOSECONDS.toMillis(serviceNanos.sum()), currentLimit, currentInFlight);
+    }
+}
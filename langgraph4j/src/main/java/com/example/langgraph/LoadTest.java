@@ -0,0 +1,510 @@
+package com.example.langgraph;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.NodeOutput;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.streaming.StreamingOutput;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Open-loop load generator for the story graph: replays a workload of questions at their recorded arrival times, or
+ * at a target rate, against the in-process {@code CompiledGraph<State>} or a running {@link JettyStudioServer}.
+ * Arrivals never wait for earlier runs to finish, so a saturated graph shows up as growing latency, not as a
+ * quietly lowered request rate.
+ * <p>
+ * The workload is NDJSON, {@code {"question": "...", "at": 1234}} per line, where {@code at} is an arrival time in
+ * milliseconds, either an offset or an epoch time; times are taken relative to the earliest. Plain-text lines and
+ * lines without {@code at} are accepted with {@code --rate}, which spaces arrivals evenly (or exponentially with
+ * {@code --poisson}) and cycles through the questions for {@code --count} runs or {@code --duration-s} seconds.
+ * {@code --speed 2} replays recorded times twice as fast.
+ * <p>
+ * Every run goes through the graph's streaming API, so a node's time is measured from the previous node's update to
+ * its own, as a caller sees it. Run latency is measured from the scheduled arrival, which counts any lag in the
+ * generator itself; the report shows that lag separately. An arrival that finds {@code --max-in-flight} runs busy is
+ * dropped and counted rather than queued.
+ * <p>
+ * The report (stdout) gives throughput, p50/p95/p99 per run and per node, and how many revision-loop iterations runs
+ * took. With {@code --output} every run is also written as an NDJSON line. Against {@code --target inprocess} the
+ * model, evaluation mode and run limits come from this command's options, and {@code --stub} plans capacity without
+ * a model; against {@code --target http://host:port} they are the server's.
+ *
+ * Usage: LoadTest <workload-file> [--target inprocess|http://host:port] [--rate R] [--poisson] [--seed N] [--count N]
+ *                 [--duration-s N] [--speed F] [--max-in-flight N] [--output runs.ndjson] [--max-retries N]
+ *                 [--stub [profile-spec]] [--cache-dir dir] [--evaluation sequential|parallel|combined] [--prescreen]
+ *                 [--rpm N] [--tpm N] [--token-budget N] [--deadline-ms N]
+ */
+public class LoadTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    public static final String IN_PROCESS = "inprocess";
+
+    /**
+     * One scheduled run: its arrival as an offset from the start of the test.
+     */
+    record Arrival(long offsetNanos, String question) {
+    }
+
+    /**
+     * How one run ended, as reported by either target. {@code retryCount} is -1 when the run produced no final state.
+     */
+    record Outcome(String status, int retryCount, String detail) {
+    }
+
+    /**
+     * Runs one question and reports each finished node, in order, to {@code onNode}.
+     */
+    interface Target {
+        Outcome run(String question, NodeListener onNode) throws Exception;
+    }
+
+    interface NodeListener {
+        void finished(String node);
+    }
+
+    private final Target target;
+    private final String targetName;
+    private final int maxInFlight;
+    private final PrintStream runLog; // null without --output
+
+    private final ExecutorService runDriver;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final Map<Integer, LongAdder> iterations = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Long> runMicros = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Long> lagMicros = new ConcurrentLinkedQueue<>();
+    private final Map<String, ConcurrentLinkedQueue<Long>> nodeMicros = new ConcurrentHashMap<>();
+    private final AtomicLong lastFinishedNanos = new AtomicLong();
+
+    public LoadTest(Target target, String targetName, int maxInFlight, PrintStream runLog) {
+        this.target = target;
+        this.targetName = targetName;
+        this.maxInFlight = maxInFlight;
+        this.runLog = runLog;
+        // Open loop: a run gets a thread the moment it arrives, up to maxInFlight; runs block in their target
+        AtomicInteger counter = new AtomicInteger();
+        this.runDriver = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "load-run-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: LoadTest <workload-file> [--target inprocess|http://host:port] [--rate R] [--poisson] [--seed N] [--count N] [--duration-s N] [--speed F] [--max-in-flight N] [--output file] [--max-retries N] [--stub [spec]] [--cache-dir dir] [--evaluation sequential|parallel|combined] [--prescreen] [--rpm N] [--tpm N] [--token-budget N] [--deadline-ms N]");
+            System.exit(2);
+        }
+
+        Path input = Path.of(args[0]);
+        String targetName = IN_PROCESS;
+        double rate = 0;
+        boolean poisson = false;
+        long seed = 1;
+        int count = 0;
+        double durationSeconds = 0;
+        double speed = 1;
+        int maxInFlight = 1024;
+        Path output = null;
+        int maxRetries = 5;
+        boolean useStub = false;
+        StubModelProfile stubProfile = null;
+        String cacheDirectory = null;
+        String evaluationMode = StoryGraph.SEQUENTIAL_EVALUATION;
+        boolean preScreen = false;
+        int requestsPerMinute = 0;
+        int tokensPerMinute = 0;
+        int tokenBudget = 0;
+        long deadlineMillis = 0;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--target" -> targetName = args[++i];
+                case "--rate" -> rate = Double.parseDouble(args[++i]);
+                case "--poisson" -> poisson = true;
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--count" -> count = Integer.parseInt(args[++i]);
+                case "--duration-s" -> durationSeconds = Double.parseDouble(args[++i]);
+                case "--speed" -> speed = Double.parseDouble(args[++i]);
+                case "--max-in-flight" -> maxInFlight = Integer.parseInt(args[++i]);
+                case "--output" -> output = Path.of(args[++i]);
+                case "--max-retries" -> maxRetries = Integer.parseInt(args[++i]);
+                case "--stub" -> {
+                    useStub = true;
+                    boolean hasSpec = i + 1 < args.length && !args[i + 1].startsWith("--");
+                    stubProfile = StubModelProfile.parse(hasSpec ? args[++i] : null);
+                }
+                case "--cache-dir" -> cacheDirectory = args[++i];
+                case "--evaluation" -> evaluationMode = args[++i];
+                case "--prescreen" -> preScreen = true;
+                case "--rpm" -> requestsPerMinute = Integer.parseInt(args[++i]);
+                case "--tpm" -> tokensPerMinute = Integer.parseInt(args[++i]);
+                case "--token-budget" -> tokenBudget = Integer.parseInt(args[++i]);
+                case "--deadline-ms" -> deadlineMillis = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        try {
+            List<Arrival> arrivals = schedule(readWorkload(input), rate, poisson, seed, count, durationSeconds, speed);
+
+            Target target;
+            if (IN_PROCESS.equals(targetName)) {
+                if (!useStub && (System.getenv("ANTHROPIC_API_KEY") == null || System.getenv("ANTHROPIC_API_KEY").isEmpty())) {
+                    throw new IllegalArgumentException("ANTHROPIC_API_KEY environment variable not set; use --stub to test offline.");
+                }
+                Configuration configForRun = StoryGraph.runtimeDefaults()
+                        .maxRetries(maxRetries)
+                        .modelProvider(useStub ? StubChatModel.PROVIDER : ChatModelRegistry.ANTHROPIC)
+                        .stubProfile(stubProfile)
+                        .responseCacheDirectory(cacheDirectory)
+                        .evaluationMode(evaluationMode)
+                        .preScreen(preScreen)
+                        .llmRequestsPerMinute(requestsPerMinute)
+                        .llmTokensPerMinute(tokensPerMinute)
+                        .runTokenBudget(tokenBudget)
+                        .runDeadlineMillis(deadlineMillis)
+                        .build();
+                StoryGraph.configureRuntime(configForRun);
+                target = inProcess(StoryGraph.compile(configForRun), maxRetries, tokenBudget, deadlineMillis);
+                if (useStub) {
+                    targetName = IN_PROCESS + " (stub model)";
+                }
+            } else {
+                target = http(URI.create(targetName));
+            }
+
+            if (output != null) {
+                try (PrintStream out = new PrintStream(Files.newOutputStream(output), false, StandardCharsets.UTF_8)) {
+                    new LoadTest(target, targetName, maxInFlight, out).run(arrivals, System.out);
+                }
+            } else {
+                new LoadTest(target, targetName, maxInFlight, null).run(arrivals, System.out);
+            }
+        } catch (Exception e) {
+            System.err.println("Load test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the workload as (arrival millis or -1, question) pairs, in file order.
+     */
+    static List<Map.Entry<Long, String>> readWorkload(Path input) throws IOException {
+        List<Map.Entry<Long, String>> workload = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String question;
+                long at = -1;
+                try {
+                    question = BatchRunner.parseQuestion(line);
+                    if (question != null && line.trim().startsWith("{")) {
+                        JsonNode time = JSON.readTree(line).path("at");
+                        at = time.isNumber() ? time.asLong() : -1;
+                    }
+                } catch (IOException e) {
+                    // One bad line should not end a replay of a large production workload
+                    System.err.printf("Skipping malformed workload line %d: %s\n", lineNumber, e.getMessage());
+                    continue;
+                }
+                if (question != null) {
+                    workload.add(Map.entry(at, question));
+                }
+            }
+        }
+        if (workload.isEmpty()) {
+            throw new IllegalArgumentException("No questions in " + input);
+        }
+        return workload;
+    }
+
+    /**
+     * Turns the workload into arrival offsets: recorded times scaled by {@code speed}, or a schedule at {@code rate}
+     * runs per second when one is given.
+     */
+    static List<Arrival> schedule(List<Map.Entry<Long, String>> workload, double rate, boolean poisson, long seed,
+                                  int count, double durationSeconds, double speed) {
+        List<Arrival> arrivals = new ArrayList<>();
+        if (rate > 0) {
+            int runs = count > 0 ? count : durationSeconds > 0 ? (int) Math.ceil(durationSeconds * rate) : workload.size();
+            Random random = new Random(seed);
+            double offsetSeconds = 0;
+            for (int i = 0; i < runs; i++) {
+                arrivals.add(new Arrival((long) (offsetSeconds * 1e9), workload.get(i % workload.size()).getValue()));
+                // Exponential gaps make a Poisson process, the usual model of independent users
+                offsetSeconds += poisson ? -Math.log(1 - random.nextDouble()) / rate : 1 / rate;
+            }
+            return arrivals;
+        }
+        if (workload.stream().anyMatch(entry -> entry.getKey() < 0)) {
+            throw new IllegalArgumentException("Workload lines need an \"at\" time, or give --rate");
+        }
+        long first = workload.stream().mapToLong(Map.Entry::getKey).min().orElse(0);
+        for (Map.Entry<Long, String> entry : workload) {
+            long offsetNanos = (long) (TimeUnit.MILLISECONDS.toNanos(entry.getKey() - first) / speed);
+            if (durationSeconds > 0 && offsetNanos > durationSeconds * 1e9) {
+                continue;
+            }
+            arrivals.add(new Arrival(offsetNanos, entry.getValue()));
+        }
+        arrivals.sort(Comparator.comparingLong(Arrival::offsetNanos));
+        return count > 0 && count < arrivals.size() ? arrivals.subList(0, count) : arrivals;
+    }
+
+    /**
+     * Runs the question through {@code graph} under a {@link RunControl}, as {@link BatchRunner} does.
+     */
+    static Target inProcess(CompiledGraph<State> graph, int maxRetries, int tokenBudget, long deadlineMillis) {
+        return (question, onNode) -> {
+            RunControl run = RunControl.open(RunControl.newRunId(), deadlineMillis);
+            State lastState = null;
+            try {
+                for (NodeOutput<State> output : graph.stream(State.inputs(question, maxRetries, tokenBudget, run.runId()),
+                        RunnableConfig.builder().build())) {
+                    if (output instanceof StreamingOutput<State>) {
+                        continue; // Story tokens, not a finished node
+                    }
+                    onNode.finished(output.node());
+                    lastState = output.state();
+                }
+            } catch (Exception e) {
+                if (run.isStopped()) {
+                    return new Outcome("stopped", -1, run.stopReason());
+                }
+                return new Outcome("error", -1, String.valueOf(e.getMessage()));
+            } finally {
+                run.close();
+            }
+            if (lastState == null) {
+                return new Outcome("error", -1, "Graph execution completed but returned no final state.");
+            }
+            return new Outcome("ok", lastState.getRetryCount(), null);
+        };
+    }
+
+    /**
+     * Posts the question to the server's {@link JettyStudioServer#STREAM_PATH} and follows its events; a 503 from
+     * the server's admission control is reported as {@code rejected}.
+     */
+    static Target http(URI server) {
+        // HTTP/1.1 keeps one connection per run in flight, as a fleet of independent clients would
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        URI endpoint = server.resolve(JettyStudioServer.STREAM_PATH);
+        return (question, onNode) -> {
+            ObjectNode body = JSON.createObjectNode();
+            body.put("question", question);
+            HttpRequest request = HttpRequest.newBuilder(endpoint)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8))
+                    .build();
+            HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() == 503) {
+                    return new Outcome("rejected", -1, "Server at its run limit");
+                }
+                if (response.statusCode() != 200) {
+                    return new Outcome("error", -1, "HTTP " + response.statusCode());
+                }
+                String event = null;
+                Iterator<String> events = lines.iterator();
+                while (events.hasNext()) {
+                    String line = events.next();
+                    if (line.startsWith("event: ")) {
+                        event = line.substring("event: ".length());
+                    } else if (line.startsWith("data: ") && event != null) {
+                        JsonNode data = JSON.readTree(line.substring("data: ".length()));
+                        switch (event) {
+                            case "node" -> onNode.finished(data.path("node").asText());
+                            case "result", "error" -> {
+                                String status = data.path("status").asText("error");
+                                String detail = data.has("stopReason") ? data.path("stopReason").asText()
+                                        : data.path("error").asText(null);
+                                return new Outcome(status, data.path("retryCount").asInt(-1), detail);
+                            }
+                            default -> {
+                                // Story tokens
+                            }
+                        }
+                    }
+                }
+            }
+            return new Outcome("error", -1, "Stream ended without a result");
+        };
+    }
+
+    /**
+     * Fires every arrival on schedule, waits for the runs to finish and writes the report to {@code report}.
+     */
+    public void run(List<Arrival> arrivals, PrintStream report) throws InterruptedException {
+        long started = System.nanoTime();
+        lastFinishedNanos.set(started);
+        for (int i = 0; i < arrivals.size(); i++) {
+            Arrival arrival = arrivals.get(i);
+            long due = started + arrival.offsetNanos();
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int running = inFlight.incrementAndGet();
+            if (running > maxInFlight) {
+                inFlight.decrementAndGet();
+                dropped.increment();
+                continue;
+            }
+            peakInFlight.accumulateAndGet(running, Math::max);
+            int index = i;
+            runDriver.execute(() -> runOne(index, arrival.question(), due));
+        }
+        long offeredNanos = System.nanoTime() - started;
+        runDriver.shutdown();
+        runDriver.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        if (runLog != null) {
+            runLog.flush();
+        }
+        printReport(report, arrivals.size(), offeredNanos, lastFinishedNanos.get() - started);
+    }
+
+    private void runOne(int index, String question, long dueNanos) {
+        long startedNanos = System.nanoTime();
+        Map<String, Long> nodes = new LinkedHashMap<>();
+        long[] previous = {startedNanos};
+        Outcome outcome;
+        try {
+            outcome = target.run(question, node -> {
+                long now = System.nanoTime();
+                long micros = (now - previous[0]) / 1_000;
+                previous[0] = now;
+                // START is graph setup and END only echoes the last state; neither is work a node did
+                if (!StateGraph.START.equals(node) && !StateGraph.END.equals(node)) {
+                    nodeMicros.computeIfAbsent(node, n -> new ConcurrentLinkedQueue<>()).add(micros);
+                    nodes.merge(node, micros / 1_000, Long::sum);
+                }
+            });
+        } catch (Exception e) {
+            outcome = new Outcome("error", -1, String.valueOf(e.getMessage()));
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        long finished = System.nanoTime();
+        lastFinishedNanos.accumulateAndGet(finished, Math::max);
+        long latencyMicros = (finished - dueNanos) / 1_000;
+        long lag = (startedNanos - dueNanos) / 1_000;
+        statuses.computeIfAbsent(outcome.status(), s -> new LongAdder()).increment();
+        lagMicros.add(lag);
+        if (!"rejected".equals(outcome.status())) {
+            runMicros.add(latencyMicros);
+        }
+        if (outcome.retryCount() >= 0) {
+            iterations.computeIfAbsent(outcome.retryCount(), n -> new LongAdder()).increment();
+        }
+        if (runLog != null) {
+            ObjectNode line = JSON.createObjectNode();
+            line.put("index", index);
+            line.put("question", question);
+            line.put("status", outcome.status());
+            if (outcome.detail() != null) {
+                line.put("detail", outcome.detail());
+            }
+            line.put("latencyMs", latencyMicros / 1_000);
+            line.put("lagMs", lag / 1_000);
+            if (outcome.retryCount() >= 0) {
+                line.put("retryCount", outcome.retryCount());
+            }
+            ObjectNode nodeMillis = line.putObject("nodeMs");
+            nodes.forEach(nodeMillis::put);
+            synchronized (runLog) {
+                runLog.println(line);
+            }
+        }
+    }
+
+    private void printReport(PrintStream out, int offered, long offeredNanos, long elapsedNanos) {
+        double offeredSeconds = offeredNanos / 1e9;
+        double seconds = elapsedNanos / 1e9;
+        long completed = statuses.values().stream().mapToLong(LongAdder::sum).sum();
+        long ok = statuses.getOrDefault("ok", new LongAdder()).sum();
+
+        out.println("\n--- Load Test Report ---");
+        out.printf("Target: %s\n", targetName);
+        out.printf("Offered: %d arrivals over %.2fs (%.2f runs/s); %d dropped at %d in flight, peak %d in flight\n",
+                offered, offeredSeconds, offeredSeconds > 0 ? offered / offeredSeconds : 0.0, dropped.sum(),
+                maxInFlight, peakInFlight.get());
+        StringBuilder byStatus = new StringBuilder();
+        new TreeMap<>(statuses).forEach((status, n) -> byStatus.append(byStatus.isEmpty() ? "" : ", ")
+                .append(n.sum()).append(' ').append(status));
+        out.printf("Completed: %d (%s) in %.2fs; throughput %.2f runs/s, %.2f ok runs/s\n", completed, byStatus,
+                seconds, seconds > 0 ? completed / seconds : 0.0, seconds > 0 ? ok / seconds : 0.0);
+        out.printf("%-28s %7s %9s %9s %9s %9s\n", "Latency ms", "count", "p50", "p95", "p99", "max");
+        printPercentiles(out, "run (from scheduled arrival)", runMicros);
+        printPercentiles(out, "generator lag", lagMicros);
+        new TreeMap<>(nodeMicros).forEach((node, samples) -> printPercentiles(out, "node " + node, samples));
+
+        long withState = iterations.values().stream().mapToLong(LongAdder::sum).sum();
+        if (withState > 0) {
+            out.println("Revision-loop iterations (retryCount at the end of the run):");
+            new TreeMap<>(iterations).forEach((n, runs) -> out.printf("  %3d  %7d  %5.1f%%\n",
+                    n, runs.sum(), 100.0 * runs.sum() / withState));
+        }
+        LlmCalls.Stats callStats = LlmCalls.stats();
+        if (callStats.calls() > 0) {
+            // Only the in-process target makes model calls from this JVM
+            LlmLimiter.Stats limiterStats = LlmLimiter.shared().stats();
+            out.printf("Model calls: %d (%d retries, %d failed; %d rate limited); throttled %d ms, service %d ms\n",
+                    callStats.calls(), callStats.retries(), callStats.failures(), limiterStats.rateLimited(),
+                    limiterStats.throttledMillis(), limiterStats.serviceMillis());
+        }
+    }
+
+    private static void printPercentiles(PrintStream out, String label, ConcurrentLinkedQueue<Long> micros) {
+        long[] sorted = micros.stream().mapToLong(Long::longValue).toArray();
+        if (sorted.length == 0) {
+            return;
+        }
+        Arrays.sort(sorted);
+        out.printf("%-28s %7d %9.1f %9.1f %9.1f %9.1f\n", label, sorted.length,
+                BatchRunner.percentile(sorted, 50) / 1e3, BatchRunner.percentile(sorted, 95) / 1e3,
+                BatchRunner.percentile(sorted, 99) / 1e3, sorted[sorted.length - 1] / 1e3);
+    }
+}
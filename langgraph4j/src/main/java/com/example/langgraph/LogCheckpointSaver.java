@@ -0,0 +1,414 @@
+package com.example.langgraph;
+
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.checkpoint.BaseCheckpointSaver;
+import org.bsc.langgraph4j.checkpoint.Checkpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Durable checkpoint saver backed by a single append-only binary log.
+ * <p>
+ * Every {@code put} appends one compact, CRC-checked record (thread id, checkpoint id, node ids and the typed state
+ * values) with a single gathering write, and every {@code release} appends a tombstone. On open the log is replayed
+ * through a memory-mapped buffer; a torn record at the tail, left by a crash mid-write, is cut off. Once the log
+ * passes {@code compactBytes} and is mostly dead records, it is rewritten with only the latest checkpoint of each
+ * unreleased thread. Older history of a thread is dropped at that point, in memory as well as on disk.
+ * <p>
+ * Records reach the OS page cache on every step, which is enough to survive the JVM dying; {@code fsync} also
+ * forces them to the device, for surviving the machine, at the cost of one sync per step.
+ */
+public final class LogCheckpointSaver implements BaseCheckpointSaver, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogCheckpointSaver.class);
+
+    static final String LOG_FILE = "checkpoints.log";
+    private static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+    private static final byte PUT = 1;
+    private static final byte RELEASE = 2;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+
+    private static final int HEADER_BYTES = 8; // body length + CRC32 of the body
+
+    /**
+     * Point-in-time view of the log.
+     */
+    public record Stats(long appends, long compactions, long fileBytes, long liveBytes, int pendingThreads) {
+    }
+
+    private final Path directory;
+    private final Path file;
+    private final boolean fsync;
+    private final long compactBytes;
+
+    // Newest checkpoint first, as MemorySaver keeps them
+    private final Map<String, LinkedList<Checkpoint>> checkpointsByThread = new HashMap<>();
+    // Size of each thread's latest record, i.e. what a compaction would keep
+    private final Map<String, Integer> liveRecordBytes = new HashMap<>();
+    private long liveBytes;
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+    private final DataOutputStream out = new DataOutputStream(body);
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+    private long fileBytes;
+    private long appends;
+    private long compactions;
+
+    private LogCheckpointSaver(Path directory, boolean fsync, long compactBytes) throws IOException {
+        this.directory = directory;
+        this.file = directory.resolve(LOG_FILE);
+        this.fsync = fsync;
+        this.compactBytes = compactBytes;
+        Files.createDirectories(directory);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+    }
+
+    public static LogCheckpointSaver open(Path directory, boolean fsync, long compactBytes) throws IOException {
+        return new LogCheckpointSaver(directory, fsync, compactBytes > 0 ? compactBytes : DEFAULT_COMPACT_BYTES);
+    }
+
+    /**
+     * Opens the log in {@code checkpointDirectory}, or returns null if checkpointing is not configured.
+     */
+    public static LogCheckpointSaver open(Configuration configuration) throws IOException {
+        if (configuration.getCheckpointDirectory() == null) {
+            return null;
+        }
+        return open(Path.of(configuration.getCheckpointDirectory()), configuration.isCheckpointFsync(),
+                configuration.getCheckpointCompactBytes());
+    }
+
+    private static String threadId(RunnableConfig config) {
+        return config.threadId().orElse(THREAD_ID_DEFAULT);
+    }
+
+    @Override
+    public synchronized Collection<Checkpoint> list(RunnableConfig config) {
+        LinkedList<Checkpoint> checkpoints = checkpointsByThread.get(threadId(config));
+        return checkpoints != null ? List.copyOf(checkpoints) : List.of();
+    }
+
+    @Override
+    public synchronized Optional<Checkpoint> get(RunnableConfig config) {
+        LinkedList<Checkpoint> checkpoints = checkpointsByThread.get(threadId(config));
+        if (checkpoints == null || checkpoints.isEmpty()) {
+            return Optional.empty();
+        }
+        if (config.checkPointId().isPresent()) {
+            String id = config.checkPointId().get();
+            return checkpoints.stream().filter(checkpoint -> checkpoint.getId().equals(id)).findFirst();
+        }
+        return Optional.of(checkpoints.getFirst());
+    }
+
+    @Override
+    public synchronized RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        String threadId = threadId(config);
+        LinkedList<Checkpoint> checkpoints = checkpointsByThread.computeIfAbsent(threadId, id -> new LinkedList<>());
+        if (config.checkPointId().isPresent()) {
+            // Replacing an existing checkpoint, e.g. after a state update on an interrupted run
+            String id = config.checkPointId().get();
+            int index = indexOf(checkpoints, id);
+            if (index < 0) {
+                throw new IllegalStateException(String.format("Checkpoint with id %s not found!", id));
+            }
+            checkpoints.set(index, checkpoint);
+        } else {
+            checkpoints.push(checkpoint);
+        }
+
+        int recordBytes = append(PUT, threadId, checkpoint);
+        setLive(threadId, recordBytes);
+        maybeCompact();
+        return config.withCheckPointId(checkpoint.getId());
+    }
+
+    @Override
+    public synchronized Tag release(RunnableConfig config) throws Exception {
+        String threadId = threadId(config);
+        LinkedList<Checkpoint> checkpoints = checkpointsByThread.remove(threadId);
+        append(RELEASE, threadId, null);
+        setLive(threadId, 0);
+        maybeCompact();
+        return new Tag(threadId, checkpoints != null ? checkpoints : List.of());
+    }
+
+    /**
+     * Threads with checkpoints that were never released, i.e. runs that can be resumed.
+     */
+    public synchronized Set<String> pendingThreads() {
+        return new TreeSet<>(checkpointsByThread.keySet());
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(appends, compactions, fileBytes, liveBytes, checkpointsByThread.size());
+    }
+
+    /**
+     * Rewrites the log with only the latest checkpoint of each unreleased thread.
+     */
+    public synchronized void compact() throws IOException {
+        Path tmp = directory.resolve(LOG_FILE + ".compact");
+        FileChannel previous = channel;
+        channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        fileBytes = 0;
+        liveRecordBytes.clear();
+        liveBytes = 0;
+        for (Map.Entry<String, LinkedList<Checkpoint>> thread : checkpointsByThread.entrySet()) {
+            LinkedList<Checkpoint> checkpoints = thread.getValue();
+            while (checkpoints.size() > 1) {
+                checkpoints.removeLast();
+            }
+            if (!checkpoints.isEmpty()) {
+                setLive(thread.getKey(), append(PUT, thread.getKey(), checkpoints.getFirst()));
+            }
+        }
+        // The compacted log must be on disk before it replaces the old one
+        channel.force(true);
+        channel.close();
+        previous.close();
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(fileBytes);
+        compactions++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+        }
+    }
+
+    private void maybeCompact() throws IOException {
+        if (fileBytes >= compactBytes && fileBytes > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    private void setLive(String threadId, int recordBytes) {
+        Integer previous = recordBytes > 0 ? liveRecordBytes.put(threadId, recordBytes) : liveRecordBytes.remove(threadId);
+        liveBytes += recordBytes - (previous != null ? previous : 0);
+    }
+
+    private static int indexOf(List<Checkpoint> checkpoints, String id) {
+        for (int i = 0; i < checkpoints.size(); i++) {
+            if (checkpoints.get(i).getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // --- Writing ---
+
+    private int append(byte type, String threadId, Checkpoint checkpoint) throws IOException {
+        body.reset();
+        out.writeByte(type);
+        writeString(threadId);
+        if (type == PUT) {
+            writeString(checkpoint.getId());
+            writeString(checkpoint.getNodeId());
+            writeString(checkpoint.getNextNodeId());
+            writeState(checkpoint.getState());
+        }
+        out.flush();
+
+        byte[] bytes = body.toByteArray();
+        crc.reset();
+        crc.update(bytes);
+        header.clear();
+        header.putInt(bytes.length).putInt((int) crc.getValue()).flip();
+
+        ByteBuffer[] record = {header, ByteBuffer.wrap(bytes)};
+        long written = 0;
+        while (written < HEADER_BYTES + bytes.length) {
+            written += channel.write(record);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        fileBytes += written;
+        appends++;
+        return (int) written;
+    }
+
+    private void writeState(Map<String, Object> state) throws IOException {
+        // Only plain values are persisted; anything else (e.g. a stream handle) is transient and skipped
+        int count = 0;
+        for (Object value : state.values()) {
+            if (isPersistable(value)) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (Map.Entry<String, Object> entry : state.entrySet()) {
+            Object value = entry.getValue();
+            if (!isPersistable(value)) {
+                continue;
+            }
+            writeString(entry.getKey());
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof String text) {
+                out.writeByte(STRING);
+                writeString(text);
+            } else if (value instanceof Integer number) {
+                out.writeByte(INT);
+                out.writeInt(number);
+            } else if (value instanceof Boolean flag) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean(flag);
+            } else if (value instanceof Long number) {
+                out.writeByte(LONG);
+                out.writeLong(number);
+            } else {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            }
+        }
+    }
+
+    private static boolean isPersistable(Object value) {
+        return value == null || value instanceof String || value instanceof Integer || value instanceof Boolean
+                || value instanceof Long || value instanceof Double;
+    }
+
+    // Length-prefixed UTF-8; -1 marks null. Unlike writeUTF this has no 64 KB limit.
+    private void writeString(String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // --- Replay ---
+
+    private void replay() throws IOException {
+        long size = channel.size();
+        long valid = 0;
+        if (size > 0) {
+            MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (log.remaining() >= HEADER_BYTES) {
+                int length = log.getInt();
+                int checksum = log.getInt();
+                if (length <= 0 || length > log.remaining()) {
+                    break;
+                }
+                ByteBuffer record = log.slice(log.position(), length);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(record, HEADER_BYTES + length);
+                log.position(log.position() + length);
+                valid = log.position();
+            }
+        }
+        if (valid < size) {
+            // Torn or corrupt tail from a crash mid-append: drop it so new records follow valid ones
+            LOG.warn("Checkpoint log: discarding {} bytes of incomplete records at the end of {}", size - valid, file);
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        fileBytes = valid;
+    }
+
+    private void apply(ByteBuffer record, int recordBytes) {
+        byte type = record.get();
+        String threadId = readString(record);
+        if (type == RELEASE) {
+            checkpointsByThread.remove(threadId);
+            setLive(threadId, 0);
+            return;
+        }
+        Checkpoint checkpoint = Checkpoint.builder()
+                .id(readString(record))
+                .nodeId(readString(record))
+                .nextNodeId(readString(record))
+                .state(readState(record))
+                .build();
+        LinkedList<Checkpoint> checkpoints = checkpointsByThread.computeIfAbsent(threadId, id -> new LinkedList<>());
+        int index = indexOf(checkpoints, checkpoint.getId());
+        if (index >= 0) {
+            checkpoints.set(index, checkpoint);
+        } else {
+            checkpoints.push(checkpoint);
+        }
+        setLive(threadId, recordBytes);
+    }
+
+    private static Map<String, Object> readState(ByteBuffer record) {
+        int count = record.getInt();
+        Map<String, Object> state = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = readString(record);
+            byte tag = record.get();
+            Object value = switch (tag) {
+                case NULL -> null;
+                case STRING -> readString(record);
+                case INT -> record.getInt();
+                case BOOLEAN -> record.get() != 0;
+                case LONG -> record.getLong();
+                case DOUBLE -> record.getDouble();
+                default -> throw new IllegalStateException("Unknown value tag " + tag + " for key " + key);
+            };
+            state.put(key, value);
+        }
+        return state;
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
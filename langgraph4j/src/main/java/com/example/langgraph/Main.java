@@ -1,9 +1,13 @@
 package com.example.langgraph;
 
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.GraphInput;
+import org.bsc.langgraph4j.NodeOutput;
 import org.bsc.langgraph4j.RunnableConfig;
-import org.bsc.langgraph4j.StateGraph;
 import org.bsc.langgraph4j.GraphStateException;
+import org.bsc.langgraph4j.streaming.StreamingOutput;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -11,121 +15,179 @@ import java.util.Optional;
 
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            // Batch mode: run a file of questions concurrently against one compiled graph
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "--queue".equals(args[0])) {
+            // Queue mode: enqueue questions, run a worker, or collect results for a queue shared by many JVMs
+            QueueWorker.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "--load-test".equals(args[0])) {
+            // Load-test mode: replay a workload open-loop in process or against a server and report percentiles
+            LoadTest.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // --stub [profile] runs offline against StubChatModel instead of Anthropic
+        // --stream [--max-chars N] [--banned regex] prints story tokens and node events as they happen
+        // --checkpoint-dir dir [--thread id] saves every step; rerunning with the same thread resumes an unfinished run
+        // --token-budget N ends the run with its best story once its model calls have spent N tokens
+        // --deadline-ms N stops the run, and the model calls it has in flight, after N ms
+        boolean useStub = false;
+        StubModelProfile stubProfile = null;
+        boolean stream = false;
+        int maxChars = 0;
+        String bannedPattern = null;
+        String checkpointDirectory = null;
+        String threadId = null;
+        int tokenBudget = 0;
+        long deadlineMillis = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--stub" -> {
+                    useStub = true;
+                    boolean hasSpec = i + 1 < args.length && !args[i + 1].startsWith("--");
+                    stubProfile = StubModelProfile.parse(hasSpec ? args[++i] : null);
+                }
+                case "--stream" -> stream = true;
+                case "--max-chars" -> maxChars = Integer.parseInt(args[++i]);
+                case "--banned" -> bannedPattern = args[++i];
+                case "--checkpoint-dir" -> checkpointDirectory = args[++i];
+                case "--thread" -> threadId = args[++i];
+                case "--token-budget" -> tokenBudget = Integer.parseInt(args[++i]);
+                case "--deadline-ms" -> deadlineMillis = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
         try {
             // Ensure ANTHROPIC_API_KEY environment variable is set
-            if (System.getenv("ANTHROPIC_API_KEY") == null || System.getenv("ANTHROPIC_API_KEY").isEmpty()) {
+            if (!useStub && (System.getenv("ANTHROPIC_API_KEY") == null || System.getenv("ANTHROPIC_API_KEY").isEmpty())) {
                 throw new IllegalArgumentException("ANTHROPIC_API_KEY environment variable not set.");
             }
 
-            // --- Define the graph ---
-            // Use State class
-            StateGraph<State> graph = new StateGraph<>(State::new);
-
-            // Add nodes using AsyncNodeAction
-            
-            graph.addNode("claudeNode", Nodes::callClaude);
-            graph.addNode("storyNode", Nodes::generateStory);
-            graph.addNode("checkScaryNode", Nodes::checkStoryScary);
-            graph.addNode("checkStoryFunnyNode", Nodes::checkStoryFunny);
-            graph.addNode("createStoryInstructionsNode", Nodes::createStoryInstructions);
-
-            graph.addEdge(StateGraph.START, "storyNode");
-            graph.addEdge("claudeNode", "storyNode");
-            graph.addEdge("storyNode", "checkScaryNode");
-
-            // Conditional edge after scary check
-            graph.addConditionalEdges(
-                    "checkScaryNode",
-                    Routers.routeAfterScaryCheck(),
-                    Map.of(
-                            "checkStoryFunnyNode", "checkStoryFunnyNode", // If SCARY, go to funniness check
-                            "createStoryInstructionsNode", "createStoryInstructionsNode" // If NOT_SCARY, go to generate instructions
-                    )
-            );
-
-            // Conditional edge after creating instructions (decides whether to loop or end)
-            graph.addConditionalEdges(
-                    "createStoryInstructionsNode",
-                    Routers.routeAfterCreateInstructions(),
-                    Map.of(
-                            "storyNode", "storyNode", // Loop back to generate story with instructions
-                            StateGraph.END, StateGraph.END // If max retries reached
-                    )
-            );
-
-            // Conditional edge after funniness check
-            graph.addConditionalEdges(
-                    "checkStoryFunnyNode",
-                    Routers.routeAfterFunninessCheck(),
-                    Map.of(
-                            "createStoryInstructionsNode", "createStoryInstructionsNode", // If NOT_FUNNY, go to generate instructions
-                            StateGraph.END, StateGraph.END // If FUNNY
-                    )
-            );
-
-            var compiledGraph = graph.compile();
-            System.out.println("Graph compiled successfully: Question Answer Story with Feedback-Driven Retries");
-
             // --- Run the example ---
             String initialQuestion = "Why did the sentient shadow always carry a rubber duck into the haunted attic?";
 
-            // Create initial state using State class
-            State initialState = State.of(initialQuestion);
-
-            Configuration configForRun = Configuration.builder()
-                    .temperature(0.5)
-                    .modelName("claude-3-haiku-20240307")
-                    .storyTemperature(0.9)
-                    .maxRetries(5) // Set overall max_retries for story generation attempts
+            Configuration configForRun = StoryGraph.runtimeDefaults()
+                    .modelProvider(useStub ? StubChatModel.PROVIDER : ChatModelRegistry.ANTHROPIC)
+                    .stubProfile(stubProfile)
+                    .storyStreaming(stream)
+                    .storyMaxChars(maxChars)
+                    .storyBannedPattern(bannedPattern)
+                    .checkpointDirectory(checkpointDirectory)
+                    .runTokenBudget(tokenBudget)
+                    .runDeadlineMillis(deadlineMillis)
                     .build();
 
-            // Pass configurable parameters via config map
-            Map<String, Object> config = new HashMap<>();
-            config.put("configurable", configForRun);
-
-            System.out.println("\n--- Starting Graph Run ---");
-            System.out.printf("Initial state: %s\n", initialState);
-            System.out.printf("Running graph with config: %s\n", configForRun);
-
-            // LangGraph4j does not have a direct equivalent of `astream` for printing chunks
-            // You would typically use LangSmith for live tracing.
-            // For now, we'll just run `invoke` and print the final state.
-            System.out.println("\n--- Running Graph (synchronously for final state) ---");
-            RunnableConfig runnableConfig = RunnableConfig.builder().build();
-            
-            // Convert initial state to Map<String, Object> for invoke method
-            Map<String, Object> initialStateMap = new HashMap<>();
-            initialStateMap.put("question", initialState.getQuestion());
-            initialStateMap.put("answer", initialState.getAnswer() != null ? initialState.getAnswer() : "");
-            initialStateMap.put("story", initialState.getStory() != null ? initialState.getStory() : "");
-            initialStateMap.put("scaryCheckFeedback", initialState.getScaryCheckFeedback() != null ? initialState.getScaryCheckFeedback() : "");
-            initialStateMap.put("funninessCheckFeedback", initialState.getFunninessCheckFeedback() != null ? initialState.getFunninessCheckFeedback() : "");
-            initialStateMap.put("storyGenerationInstructions", initialState.getStoryGenerationInstructions() != null ? initialState.getStoryGenerationInstructions() : "");
-            initialStateMap.put("retryCount", initialState.getRetryCount());
-            initialStateMap.put("maxRetries", initialState.getMaxRetries());
-            initialStateMap.put("terminateFlag", initialState.isTerminateFlag());
-
-            
-            Optional<State> optionalState = compiledGraph.invoke(initialStateMap, runnableConfig);
-            
-            if (optionalState.isPresent()) {
-                State finalState = optionalState.get();
+            StoryGraph.configureRuntime(configForRun);
+            // Closing forces the checkpoint log to disk, so it must happen on every path out
+            try (LogCheckpointSaver checkpoints = LogCheckpointSaver.open(configForRun)) {
+                if (checkpoints != null && threadId == null) {
+                    threadId = "main";
+                }
+                // A checkpointed run keeps its thread id as run id, so a resumed run finds its control again
+                String runId = threadId != null ? threadId : RunControl.newRunId();
+
+                // Initial inputs go to the graph as-is, without a copy; unset fields read as their defaults
+                Map<String, Object> initialInputs = State.inputs(initialQuestion, configForRun.getMaxRetries(),
+                        configForRun.getRunTokenBudget(), runId);
+
+                // --- Define the graph ---
+                var compiledGraph = StoryGraph.compile(configForRun, checkpoints);
+                System.out.println("Graph compiled successfully: Question Answer Story with Feedback-Driven Retries");
+
+                // Pass configurable parameters via config map
+                Map<String, Object> config = new HashMap<>();
+                config.put("configurable", configForRun);
+
+                System.out.println("\n--- Starting Graph Run ---");
+                System.out.printf("Initial state: %s\n", initialInputs);
+                System.out.printf("Running graph with config: %s\n", configForRun);
+
+                // --stream prints story tokens and node events as they arrive; otherwise just run `invoke`
+                System.out.println(stream
+                        ? "\n--- Running Graph (streaming) ---"
+                        : "\n--- Running Graph (synchronously for final state) ---");
+                RunnableConfig.Builder runnableConfigBuilder = RunnableConfig.builder();
+                if (threadId != null) {
+                    runnableConfigBuilder.threadId(threadId);
+                }
+                RunnableConfig runnableConfig = runnableConfigBuilder.build();
+
+                Optional<State> optionalState = Optional.empty();
+                boolean stopped = false;
+                try (RunControl run = RunControl.open(runId, configForRun.getRunDeadlineMillis())) {
+                    try {
+                        if (StoryGraph.canResume(checkpoints, threadId, initialQuestion)) {
+                            // An earlier run on this thread died partway through: pick up after its last completed node
+                            System.out.printf("Resuming thread '%s' from checkpoint\n", threadId);
+                            optionalState = stream
+                                    ? streamRun(compiledGraph, GraphInput.resume(), runnableConfig)
+                                    : StoryGraph.resume(compiledGraph, threadId);
+                        } else {
+                            optionalState = stream
+                                    ? streamRun(compiledGraph, GraphInput.args(initialInputs), runnableConfig)
+                                    : compiledGraph.invoke(initialInputs, runnableConfig);
+                        }
+                    } catch (Exception e) {
+                        if (!run.isStopped()) {
+                            throw e;
+                        }
+                        stopped = true;
+                        System.err.printf("\nRun stopped (%s); its model calls in flight were cancelled\n", run.stopReason());
+                    }
+                }
+
+                if (stopped) {
+                    RunControl.Stats runStats = RunControl.stats();
+                    System.err.printf("Node tasks cancelled: %d in flight, %d not started\n",
+                            runStats.tasksCancelled(), runStats.tasksSkipped());
+                } else if (optionalState.isPresent()) {
+                    State finalState = optionalState.get();
 
            
 
-                System.out.println("\n--- Final Graph State ---");
-                System.out.printf("\nFinal State (after full run): %s\n", finalState);
-                System.out.printf("\nClaude's Answer: %s\n", finalState.getAnswer());
-                System.out.printf("\nGenerated Story:\n%s\n", finalState.getStory());
-                System.out.printf("\nStory Scary Check Feedback: %s\n", finalState.getScaryCheckFeedback());
-                System.out.printf("\nStory Funniness Check Feedback: %s\n", finalState.getFunninessCheckFeedback());
-                System.out.printf("Total Retries: %d\n", finalState.getRetryCount());
-                String instructions = finalState.getStoryGenerationInstructions();
-                if (instructions != null && !instructions.isEmpty()) {
-                    System.out.printf("\nRemaining Story Generation Instructions (if any): %s\n", instructions);
+                    System.out.println("\n--- Final Graph State ---");
+                    System.out.printf("\nFinal State (after full run): %s\n", finalState);
+                    System.out.printf("\nClaude's Answer: %s\n", finalState.getAnswer());
+                    System.out.printf("\nGenerated Story:\n%s\n", finalState.getStory());
+                    System.out.printf("\nStory Scary Check Feedback: %s\n", finalState.getScaryCheckFeedback());
+                    System.out.printf("\nStory Funniness Check Feedback: %s\n", finalState.getFunninessCheckFeedback());
+                    System.out.printf("Total Retries: %d\n", finalState.getRetryCount());
+                    System.out.printf("Tokens used: %d%s\n", finalState.getTokensUsed(),
+                            finalState.isBudgetExhausted() ? " (token budget exhausted, best story kept)" : "");
+                    String instructions = finalState.getStoryGenerationInstructions();
+                    if (instructions != null && !instructions.isEmpty()) {
+                        System.out.printf("\nRemaining Story Generation Instructions (if any): %s\n", instructions);
+                    }
+
+                    ChatModelRegistry.Stats modelStats = ChatModelRegistry.stats();
+                    System.out.printf("\nModel clients: %d pooled, %d hits, %d misses (hit rate %.2f), %d evicted\n",
+                            modelStats.pooledClients(), modelStats.hits(), modelStats.misses(), modelStats.hitRate(),
+                            modelStats.evictions());
+                    NodeExecutor.Stats executorStats = NodeExecutor.stats();
+                    System.out.printf("Node executor (%s): %d tasks completed, %d rejected\n",
+                            executorStats.mode(), executorStats.completed(), executorStats.rejected());
+                    ResponseCache.Stats cacheStats = ResponseCache.shared().stats();
+                    System.out.printf("Evaluator cache: %d memory hits, %d disk hits, %d misses (hit rate %.2f)\n",
+                            cacheStats.memoryHits(), cacheStats.diskHits(), cacheStats.misses(), cacheStats.hitRate());
+                    LlmLimiter.Stats limiterStats = LlmLimiter.shared().stats();
+                    LlmCalls.Stats callStats = LlmCalls.stats();
+                    System.out.printf("Model calls: %d (%d retries, %d failed), throttled %d ms, backoff %d ms, service %d ms, concurrency limit %.1f\n",
+                            callStats.calls(), callStats.retries(), callStats.failures(), limiterStats.throttledMillis(),
+                            callStats.backoffMillis(), limiterStats.serviceMillis(), limiterStats.concurrencyLimit());
+                    if (checkpoints != null) {
+                        LogCheckpointSaver.Stats checkpointStats = checkpoints.stats();
+                        System.out.printf("Checkpoints: %d appends, log %d bytes, %d unfinished threads\n",
+                                checkpointStats.appends(), checkpointStats.fileBytes(), checkpointStats.pendingThreads());
+                    }
+                } else {
+                    System.err.println("Graph execution completed but returned no final state.");
                 }
-            } else {
-                System.err.println("Graph execution completed but returned no final state.");
             }
 
         } catch (GraphStateException e) {
@@ -136,4 +198,32 @@ public class Main {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs the graph through its streaming API, echoing story tokens inline and one line per finished node.
+     * Returns the state from the last node output, like {@code invoke}.
+     */
+    private static Optional<State> streamRun(CompiledGraph<State> compiledGraph, GraphInput input,
+                                             RunnableConfig runnableConfig) throws Exception {
+        State lastState = null;
+        boolean midStory = false;
+        for (NodeOutput<State> output : compiledGraph.stream(input, runnableConfig)) {
+            if (output instanceof StreamingOutput<State> streaming) {
+                if (!midStory) {
+                    System.out.print("\n>>> ");
+                    midStory = true;
+                }
+                System.out.print(streaming.chunk());
+                System.out.flush();
+                continue;
+            }
+            if (midStory) {
+                System.out.println();
+                midStory = false;
+            }
+            System.out.printf(">>> Event: node '%s' finished\n", output.node());
+            lastState = output.state();
+        }
+        return Optional.ofNullable(lastState);
+    }
+}
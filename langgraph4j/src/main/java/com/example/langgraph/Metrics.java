@@ -0,0 +1,334 @@
+package com.example.langgraph;
+
+import dev.langchain4j.model.output.TokenUsage;
+import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.action.AsyncEdgeAction;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide metrics for the story graph, rendered in the Prometheus text format by {@link #scrape()}.
+ * <p>
+ * Recording is lock-free (one {@link LongAdder} per bucket or counter), so instrumenting every node, router and
+ * model call costs nanoseconds. Nodes and routers are timed by wrapping their actions in {@link StoryGraph};
+ * model calls report latency, outcome and token usage from {@link LlmCalls}. Counters that other components
+ * already keep (cache, limiter, executor, coalescing, circuit state) are read from their stats at scrape time.
+ */
+public final class Metrics {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] CALL_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    // Routers only compare strings, so their buckets start at a microsecond
+    private static final double[] ROUTER_BUCKETS = {1e-6, 2.5e-6, 5e-6, 1e-5, 2.5e-5, 5e-5, 1e-4, 1e-3, 1e-2};
+    private static final double[] ITERATION_BUCKETS = {0, 1, 2, 3, 4, 5, 6, 8, 10, 20};
+    private static final double[] RUN_TOKEN_BUCKETS = {500, 1000, 2000, 4000, 8000, 16000, 32000, 64000, 128000};
+
+    private static final HistogramFamily NODE_SECONDS = new HistogramFamily("story_node_duration_seconds",
+            "Time from a node starting to its state update being ready", CALL_BUCKETS, "node", "outcome");
+    private static final HistogramFamily ROUTER_SECONDS = new HistogramFamily("story_router_duration_seconds",
+            "Time spent deciding a conditional edge", ROUTER_BUCKETS, "router");
+    private static final HistogramFamily MODEL_CALL_SECONDS = new HistogramFamily("story_model_call_duration_seconds",
+            "Latency of model call attempts, admission wait excluded", CALL_BUCKETS, "role", "model", "outcome");
+    private static final CounterFamily INPUT_TOKENS = new CounterFamily("story_model_input_tokens_total",
+            "Prompt tokens reported by the model", "role", "model");
+    private static final CounterFamily OUTPUT_TOKENS = new CounterFamily("story_model_output_tokens_total",
+            "Reply tokens reported by the model", "role", "model");
+    private static final HistogramFamily RUN_ITERATIONS = new HistogramFamily("story_run_iterations",
+            "Revision-loop iterations a run took before ending", ITERATION_BUCKETS, "outcome");
+    private static final HistogramFamily RUN_TOKENS = new HistogramFamily("story_run_tokens",
+            "Model tokens a run spent, for sizing runTokenBudget", RUN_TOKEN_BUCKETS, "outcome");
+
+    private Metrics() {
+    }
+
+    /**
+     * Times a node action from invocation until its future completes.
+     */
+    public static AsyncNodeAction<State> timedNode(String node, AsyncNodeAction<State> action) {
+        return state -> {
+            long started = System.nanoTime();
+            CompletableFuture<Map<String, Object>> update = action.apply(state);
+            update.whenComplete((value, error) -> recordNode(node, System.nanoTime() - started, outcome(error)));
+            return update;
+        };
+    }
+
+    /**
+     * Times a router, and records the run's iteration count when the router ends the graph.
+     */
+    public static AsyncEdgeAction<State> timedRouter(String router, AsyncEdgeAction<State> action) {
+        return state -> {
+            long started = System.nanoTime();
+            CompletableFuture<String> next = action.apply(state);
+            ROUTER_SECONDS.labels(router).observe((System.nanoTime() - started) / 1e9);
+            next.thenAccept(target -> {
+                if (StateGraph.END.equals(target)) {
+                    String outcome = runOutcome(state);
+                    RUN_ITERATIONS.labels(outcome).observe(state.getRetryCount());
+                    RUN_TOKENS.labels(outcome).observe(state.getTokensUsed());
+                }
+            });
+            return next;
+        };
+    }
+
+    /**
+     * "budget" when the token budget ended the run, "exhausted" when its retries ran out, else "passed".
+     */
+    private static String runOutcome(State state) {
+        if (state.isBudgetExhausted()) {
+            return "budget";
+        }
+        return state.isTerminateFlag() ? "exhausted" : "passed";
+    }
+
+    public static void recordNode(String node, long nanos, boolean succeeded) {
+        recordNode(node, nanos, succeeded ? "ok" : "error");
+    }
+
+    /**
+     * Records a node under {@code outcome}: "ok", "error", or "cancelled" when its run stopped.
+     */
+    public static void recordNode(String node, long nanos, String outcome) {
+        NODE_SECONDS.labels(node, outcome).observe(nanos / 1e9);
+    }
+
+    static String outcome(Throwable error) {
+        if (error == null) {
+            return "ok";
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof CancellationException ? "cancelled" : "error";
+    }
+
+    /**
+     * Records one model call attempt; {@code usage} may be null for failed calls or clients that report none.
+     */
+    public static void recordModelCall(String role, String model, LlmLimiter.Outcome outcome, long nanos, TokenUsage usage) {
+        MODEL_CALL_SECONDS.labels(role, model, outcome.name().toLowerCase()).observe(nanos / 1e9);
+        if (usage != null) {
+            if (usage.inputTokenCount() != null) {
+                INPUT_TOKENS.labels(role, model).add(usage.inputTokenCount());
+            }
+            if (usage.outputTokenCount() != null) {
+                OUTPUT_TOKENS.labels(role, model).add(usage.outputTokenCount());
+            }
+        }
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format.
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        NODE_SECONDS.write(out);
+        ROUTER_SECONDS.write(out);
+        RUN_ITERATIONS.write(out);
+        RUN_TOKENS.write(out);
+        MODEL_CALL_SECONDS.write(out);
+        INPUT_TOKENS.write(out);
+        OUTPUT_TOKENS.write(out);
+
+        LlmCalls.Stats calls = LlmCalls.stats();
+        counter(out, "story_model_calls_total", "Logical model calls, before retries and hedges", calls.calls());
+        counter(out, "story_model_retries_total", "Model call retries", calls.retries());
+        counter(out, "story_model_failures_total", "Model calls that failed after their retries", calls.failures());
+        counter(out, "story_model_backoff_seconds_total", "Time spent backing off before retries", calls.backoffMillis() / 1e3);
+        counter(out, "story_model_hedges_total", "Hedged duplicate calls sent", calls.hedges());
+        counter(out, "story_model_hedge_wins_total", "Hedged calls that answered first", calls.hedgeWins());
+
+        SingleFlight.Stats coalescing = LlmCalls.coalescingStats();
+        counter(out, "story_model_coalesced_total", "Callers that joined an identical call in flight", coalescing.coalesced());
+        counter(out, "story_model_abandoned_total", "Shared calls whose leading caller was stopped", coalescing.abandoned());
+
+        LlmLimiter.Stats limiter = LlmLimiter.shared().stats();
+        counter(out, "story_limiter_admitted_total", "Model calls admitted by the limiter", limiter.admitted());
+        counter(out, "story_limiter_throttled_total", "Model calls that waited for admission", limiter.throttled());
+        counter(out, "story_limiter_throttled_seconds_total", "Time spent waiting for admission", limiter.throttledMillis() / 1e3);
+        counter(out, "story_limiter_rate_limited_total", "Calls rejected by the provider with 429", limiter.rateLimited());
+        counter(out, "story_limiter_overloaded_total", "Calls rejected by the provider as overloaded", limiter.overloaded());
+        counter(out, "story_limiter_timeouts_total", "Calls that timed out", limiter.timeouts());
+        gauge(out, "story_limiter_concurrency_limit", "Current adaptive concurrency limit", limiter.concurrencyLimit());
+        gauge(out, "story_limiter_in_flight", "Model calls in flight", limiter.inFlight());
+
+        ResponseCache.Stats cache = ResponseCache.shared().stats();
+        counter(out, "story_cache_memory_hits_total", "Evaluator cache hits in memory", cache.memoryHits());
+        counter(out, "story_cache_disk_hits_total", "Evaluator cache hits on disk", cache.diskHits());
+        counter(out, "story_cache_misses_total", "Evaluator cache misses", cache.misses());
+
+        counter(out, "story_run_budget_exhausted_total", "Runs ended early by their token budget", RunBudget.exhaustedRuns());
+
+        RunControl.Stats runs = RunControl.stats();
+        header(out, "story_runs_stopped_total", "counter", "Runs stopped before finishing");
+        sample(out, "story_runs_stopped_total", List.of("reason"), List.of(RunControl.DEADLINE), runs.deadlineExceeded());
+        sample(out, "story_runs_stopped_total", List.of("reason"), List.of(RunControl.CANCELLED), runs.cancelled());
+        counter(out, "story_run_tasks_cancelled_total", "Node tasks cancelled in flight when their run stopped", runs.tasksCancelled());
+        counter(out, "story_run_tasks_skipped_total", "Node tasks not started because their run had stopped", runs.tasksSkipped());
+
+        StoryPreScreen.Stats screen = StoryPreScreen.shared().stats();
+        header(out, "story_prescreen_avoided_total", "counter", "Evaluator calls the lexical pre-screen answered instead of the model");
+        sample(out, "story_prescreen_avoided_total", List.of("criterion"), List.of("scary"), screen.avoidedScary());
+        sample(out, "story_prescreen_avoided_total", List.of("criterion"), List.of("funny"), screen.avoidedFunny());
+        counter(out, "story_prescreen_deferred_total", "Stories the pre-screen passed on to the model", screen.deferred());
+
+        NodeExecutor.Stats executor = NodeExecutor.stats();
+        gauge(out, "story_executor_queue_depth", "Node tasks submitted but not started", executor.queueDepth());
+        gauge(out, "story_executor_active", "Node tasks running", executor.active());
+        counter(out, "story_executor_completed_total", "Node tasks completed", executor.completed());
+        counter(out, "story_executor_rejected_total", "Node tasks rejected by a full queue", executor.rejected());
+
+        Map<String, ModelRouter.ModelStats> models = ModelRouter.shared().stats();
+        if (!models.isEmpty()) {
+            header(out, "story_model_circuit_open", "gauge", "1 while a model's circuit is open or half-open");
+            models.forEach((model, stats) -> sample(out, "story_model_circuit_open", List.of("model"), List.of(model),
+                    "CLOSED".equals(stats.circuit()) ? 0 : 1));
+            header(out, "story_model_circuit_opened_total", "counter", "Times a model's circuit opened");
+            models.forEach((model, stats) -> sample(out, "story_model_circuit_opened_total", List.of("model"),
+                    List.of(model), stats.opened()));
+        }
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, double value) {
+        header(out, name, "counter", help);
+        sample(out, name, List.of(), List.of(), value);
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, "gauge", help);
+        sample(out, name, List.of(), List.of(), value);
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, List<String> labelNames, List<String> labelValues,
+                               double value) {
+        out.append(name);
+        if (!labelNames.isEmpty()) {
+            out.append('{');
+            for (int i = 0; i < labelNames.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(labelNames.get(i)).append("=\"").append(escape(labelValues.get(i))).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static List<String> with(List<String> list, String extra) {
+        String[] values = list.toArray(new String[list.size() + 1]);
+        values[list.size()] = extra;
+        return List.of(values);
+    }
+
+    private static final class Histogram {
+        private final double[] bounds;
+        private final LongAdder[] buckets; // The last bucket is +Inf
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sum.add(value);
+        }
+    }
+
+    private static final class HistogramFamily {
+        private final String name;
+        private final String help;
+        private final double[] bounds;
+        private final List<String> labelNames;
+        private final Map<List<String>, Histogram> children = new ConcurrentHashMap<>();
+
+        HistogramFamily(String name, String help, double[] bounds, String... labelNames) {
+            this.name = name;
+            this.help = help;
+            this.bounds = bounds;
+            this.labelNames = List.of(labelNames);
+        }
+
+        Histogram labels(String... values) {
+            return children.computeIfAbsent(List.of(values), v -> new Histogram(bounds));
+        }
+
+        void write(StringBuilder out) {
+            if (children.isEmpty()) {
+                return;
+            }
+            header(out, name, "histogram", help);
+            List<String> bucketLabels = with(labelNames, "le");
+            children.forEach((values, histogram) -> {
+                // Read each bucket once, so the cumulative counts and the total agree within one scrape
+                long cumulative = 0;
+                for (int i = 0; i < histogram.buckets.length; i++) {
+                    cumulative += histogram.buckets[i].sum();
+                    double bound = i < bounds.length ? bounds[i] : Double.POSITIVE_INFINITY;
+                    sample(out, name + "_bucket", bucketLabels, with(values, format(bound)), cumulative);
+                }
+                sample(out, name + "_sum", labelNames, values, histogram.sum.sum());
+                sample(out, name + "_count", labelNames, values, cumulative);
+            });
+        }
+    }
+
+    private static final class CounterFamily {
+        private final String name;
+        private final String help;
+        private final List<String> labelNames;
+        private final Map<List<String>, LongAdder> children = new ConcurrentHashMap<>();
+
+        CounterFamily(String name, String help, String... labelNames) {
+            this.name = name;
+            this.help = help;
+            this.labelNames = List.of(labelNames);
+        }
+
+        LongAdder labels(String... values) {
+            return children.computeIfAbsent(List.of(values), v -> new LongAdder());
+        }
+
+        void write(StringBuilder out) {
+            if (children.isEmpty()) {
+                return;
+            }
+            header(out, name, "counter", help);
+            children.forEach((values, count) -> sample(out, name, labelNames, values, count.sum()));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.langgraph;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Serves {@link Metrics#scrape()} at {@code GET /metrics} for Prometheus; every other request falls through.
+ * {@link JettyStudioServer} mounts it next to the run endpoints, and batch runs can start it on a port of its own.
+ */
+public class MetricsHandler extends Handler.Abstract.NonBlocking {
+
+    public static final String METRICS_PATH = "/metrics";
+
+    /**
+     * Starts a server that only exposes metrics; it stops with the JVM.
+     */
+    public static Server serve(int port) throws Exception {
+        Server server = new Server(port);
+        server.setHandler(new MetricsHandler());
+        server.setStopAtShutdown(true);
+        server.start();
+        return server;
+    }
+
+    @Override
+    public boolean handle(Request request, Response response, Callback callback) {
+        if (!METRICS_PATH.equals(Request.getPathInContext(request))) {
+            return false;
+        }
+        response.setStatus(HttpStatus.OK_200);
+        response.getHeaders().put(HttpHeader.CONTENT_TYPE, Metrics.CONTENT_TYPE);
+        Content.Sink.write(response, true, Metrics.scrape(), callback);
+        return true;
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.langgraph;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the model for each call from the candidates configured for its route (answer, story, evaluator,
+ * instructions), using live per-model health.
+ * <p>
+ * Every model has a circuit breaker over its last {@value #WINDOW} calls. It opens when the error rate reaches
+ * {@code circuitErrorRate}. After {@code circuitOpenSeconds} it lets a single probe through (half-open), and
+ * closes again if the probe succeeds. Routes normally take their first model with a closed circuit. Routes in
+ * {@code fastestRoutes} instead take the healthy model with the lowest recent latency, which suits evaluators.
+ * Those routes occasionally try a random healthy model so the latency estimates of the others stay current.
+ * When every circuit on a route is open, the least recently opened model is tried anyway rather than failing.
+ */
+public final class ModelRouter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModelRouter.class);
+
+    public static final String ANSWER = "answer";
+    public static final String STORY = "story";
+    public static final String EVALUATOR = "evaluator";
+    public static final String INSTRUCTIONS = "instructions";
+
+    static final String DEFAULT_MODEL = "claude-3-haiku-20240307";
+
+    private static final int WINDOW = 20;
+    private static final int MIN_CALLS = 5;
+    private static final double DEFAULT_ERROR_RATE = 0.5;
+    private static final long DEFAULT_OPEN_SECONDS = 30;
+    private static final double EXPLORE_RATE = 0.05;
+    private static final double LATENCY_ALPHA = 0.2;
+
+    enum Circuit { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Point-in-time view of one model's health.
+     */
+    public record ModelStats(String circuit, double errorRate, long latencyMillis, long calls, long failures, long opened) {
+    }
+
+    private static volatile ModelRouter shared = new ModelRouter(Configuration.builder().build());
+
+    private final Configuration configuration;
+    private final double errorRateThreshold;
+    private final long openNanos;
+    private final Map<String, Health> health = new ConcurrentHashMap<>();
+
+    private ModelRouter(Configuration configuration) {
+        this.configuration = configuration;
+        this.errorRateThreshold = configuration.getCircuitErrorRate() > 0 ? configuration.getCircuitErrorRate() : DEFAULT_ERROR_RATE;
+        this.openNanos = TimeUnit.SECONDS.toNanos(
+                configuration.getCircuitOpenSeconds() > 0 ? configuration.getCircuitOpenSeconds() : DEFAULT_OPEN_SECONDS);
+    }
+
+    /**
+     * Replaces the shared router, and its health history, with one built from the given configuration.
+     */
+    public static synchronized void configure(Configuration configuration) {
+        shared = new ModelRouter(configuration);
+    }
+
+    public static ModelRouter shared() {
+        return shared;
+    }
+
+    /**
+     * The route serving a call role; the scary, funny and combined checks all share the evaluator route.
+     */
+    public static String routeFor(String callRole) {
+        return switch (callRole) {
+            case LlmCalls.ROLE_ANSWER -> ANSWER;
+            case LlmCalls.ROLE_STORY -> STORY;
+            case LlmCalls.ROLE_INSTRUCTIONS -> INSTRUCTIONS;
+            default -> EVALUATOR;
+        };
+    }
+
+    /**
+     * Candidate models for a route in order of preference; {@code modelName} (or Haiku) when none are configured.
+     */
+    public List<String> candidates(String route) {
+        Map<String, List<String>> routes = configuration.getModelRoutes();
+        List<String> candidates = routes != null ? routes.get(route) : null;
+        if (candidates != null && !candidates.isEmpty()) {
+            return candidates;
+        }
+        return List.of(configuration.getModelName() != null ? configuration.getModelName() : DEFAULT_MODEL);
+    }
+
+    /**
+     * Identifies the route's model set, e.g. for cache keys: replies are only reused while the candidates stay the same.
+     */
+    public String routeKey(String route) {
+        return String.join("|", candidates(route));
+    }
+
+    /**
+     * Sampling temperature for a route. Evaluators always run at 0 so their verdicts are repeatable and cacheable.
+     * Any other route runs at its configured temperature, 0 included, or at its default when none is set.
+     */
+    public double temperature(String route) {
+        return switch (route) {
+            case STORY -> orDefault(configuration.getStoryTemperature(), 0.9);
+            case ANSWER -> orDefault(configuration.getAnswerTemperature(), 0.7);
+            case INSTRUCTIONS -> orDefault(configuration.getTemperature(), 0.5);
+            default -> 0.0;
+        };
+    }
+
+    private static double orDefault(Double configured, double fallback) {
+        return configured != null ? configured : fallback;
+    }
+
+    /**
+     * Picks the model for the next call on {@code route}, skipping {@code avoid} (the model that just failed)
+     * when any other candidate is available.
+     */
+    public String select(String route, String avoid) {
+        List<String> candidates = candidates(route);
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        long now = System.nanoTime();
+        Set<String> fastest = configuration.getFastestRoutes();
+        if (fastest != null && fastest.contains(route)) {
+            String pick = fastestAvailable(candidates, avoid, now);
+            if (pick != null && health(pick).tryAcquire(now)) {
+                return pick;
+            }
+        }
+        for (String model : candidates) {
+            if (!model.equals(avoid) && health(model).tryAcquire(now)) {
+                return model;
+            }
+        }
+        // Every other circuit is open, so the model that just failed may still be the best bet
+        if (avoid != null && health(avoid).tryAcquire(now)) {
+            return avoid;
+        }
+        return leastRecentlyOpened(candidates);
+    }
+
+    /**
+     * True if a candidate other than {@code model} could take the next call on {@code route}.
+     */
+    public boolean hasHealthyAlternative(String route, String model) {
+        long now = System.nanoTime();
+        for (String candidate : candidates(route)) {
+            if (!candidate.equals(model) && health(candidate).admits(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String fastestAvailable(List<String> candidates, String avoid, long now) {
+        List<String> available = new ArrayList<>(candidates.size());
+        for (String model : candidates) {
+            if (!model.equals(avoid) && health(model).admits(now)) {
+                available.add(model);
+            }
+        }
+        if (available.isEmpty()) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < EXPLORE_RATE) {
+            return available.get(random.nextInt(available.size()));
+        }
+        String best = available.get(0);
+        for (String model : available) {
+            // Unmeasured models count as fastest, so each gets measured once
+            if (health(model).latencyMillis() < health(best).latencyMillis()) {
+                best = model;
+            }
+        }
+        return best;
+    }
+
+    private String leastRecentlyOpened(List<String> candidates) {
+        String oldest = candidates.get(0);
+        for (String model : candidates) {
+            if (health(model).openedAt() < health(oldest).openedAt()) {
+                oldest = model;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Records how a call to {@code model} went. Cancelled calls say nothing about the model and are not recorded.
+     */
+    public void record(String model, LlmLimiter.Outcome outcome, long latencyMillis) {
+        Health modelHealth = health(model);
+        if (outcome == LlmLimiter.Outcome.CANCELLED) {
+            modelHealth.releaseProbe();
+            return;
+        }
+        boolean opened = modelHealth.record(outcome == LlmLimiter.Outcome.SUCCESS, latencyMillis, System.nanoTime());
+        if (opened) {
+            LOG.warn("Circuit opened for model {} (error rate {} over the last {} calls)",
+                    model, String.format("%.2f", modelHealth.errorRate()), WINDOW);
+        }
+    }
+
+    public Map<String, ModelStats> stats() {
+        Map<String, ModelStats> stats = new TreeMap<>();
+        health.forEach((model, modelHealth) -> stats.put(model, modelHealth.snapshot()));
+        return stats;
+    }
+
+    private Health health(String model) {
+        return health.computeIfAbsent(model, m -> new Health());
+    }
+
+    private final class Health {
+        private final boolean[] outcomes = new boolean[WINDOW]; // true = failure
+        private int next;
+        private int recorded;
+        private int failuresInWindow;
+        private Circuit circuit = Circuit.CLOSED;
+        private long openedAt = Long.MIN_VALUE;
+        private boolean probeInFlight;
+        private double latencyMillis = -1;
+        private long calls;
+        private long failures;
+        private long opened;
+
+        synchronized boolean admits(long now) {
+            if (circuit == Circuit.OPEN && now - openedAt >= openNanos) {
+                circuit = Circuit.HALF_OPEN;
+                probeInFlight = false;
+            }
+            return circuit == Circuit.CLOSED || (circuit == Circuit.HALF_OPEN && !probeInFlight);
+        }
+
+        // Like admits, but a half-open circuit lets exactly one caller through as its probe
+        synchronized boolean tryAcquire(long now) {
+            if (!admits(now)) {
+                return false;
+            }
+            if (circuit == Circuit.HALF_OPEN) {
+                probeInFlight = true;
+            }
+            return true;
+        }
+
+        synchronized void releaseProbe() {
+            probeInFlight = false;
+        }
+
+        synchronized boolean record(boolean success, long millis, long now) {
+            calls++;
+            if (outcomes[next]) {
+                failuresInWindow--;
+            }
+            outcomes[next] = !success;
+            next = (next + 1) % WINDOW;
+            recorded = Math.min(WINDOW, recorded + 1);
+            if (success) {
+                latencyMillis = latencyMillis < 0 ? millis : latencyMillis + LATENCY_ALPHA * (millis - latencyMillis);
+                if (circuit == Circuit.HALF_OPEN) {
+                    circuit = Circuit.CLOSED;
+                    probeInFlight = false;
+                    resetWindow();
+                }
+                return false;
+            }
+            failures++;
+            failuresInWindow++;
+            boolean trip = circuit == Circuit.HALF_OPEN
+                    || (circuit == Circuit.CLOSED && recorded >= MIN_CALLS && errorRate() >= errorRateThreshold);
+            if (trip) {
+                circuit = Circuit.OPEN;
+                probeInFlight = false;
+                openedAt = now;
+                opened++;
+            }
+            return trip;
+        }
+
+        private void resetWindow() {
+            Arrays.fill(outcomes, false);
+            next = 0;
+            recorded = 0;
+            failuresInWindow = 0;
+        }
+
+        synchronized double errorRate() {
+            return recorded == 0 ? 0.0 : (double) failuresInWindow / recorded;
+        }
+
+        synchronized double latencyMillis() {
+            return latencyMillis < 0 ? 0 : latencyMillis;
+        }
+
+        synchronized long openedAt() {
+            return openedAt;
+        }
+
+        synchronized ModelStats snapshot() {
+            return new ModelStats(circuit.name(), errorRate(), Math.round(latencyMillis()), calls, failures, opened);
+        }
+    }
+}
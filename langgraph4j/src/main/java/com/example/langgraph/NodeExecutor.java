@@ -0,0 +1,211 @@
+package com.example.langgraph;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Execution strategy for blocking node work.
+ * Defaults to one virtual thread per task so blocking LLM calls never occupy the common ForkJoinPool;
+ * a bounded platform pool can be selected through {@link Configuration#getExecutorMode()}.
+ */
+public final class NodeExecutor implements Executor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NodeExecutor.class);
+
+    public static final String VIRTUAL = "virtual";
+    public static final String PLATFORM = "platform";
+    public static final String CACHED = "cached";
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Point-in-time view of the executor counters. {@code queueDepth} counts tasks submitted but not yet started.
+     */
+    public record Stats(String mode, int queueDepth, int active, long submitted, long completed, long rejected) {
+    }
+
+    private static volatile NodeExecutor current = create(Configuration.builder().build());
+
+    private final String mode;
+    private final ExecutorService delegate;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private NodeExecutor(String mode, ExecutorService delegate) {
+        this.mode = mode;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Replaces the shared executor with one built from the given configuration.
+     * Tasks already running on the previous executor are allowed to finish.
+     */
+    public static synchronized void configure(Configuration configuration) {
+        NodeExecutor previous = current;
+        current = create(configuration);
+        previous.delegate.shutdown();
+    }
+
+    /**
+     * Plugs in a caller-owned executor, e.g. a container-managed pool.
+     */
+    public static synchronized void use(String mode, ExecutorService executor) {
+        NodeExecutor previous = current;
+        current = new NodeExecutor(mode, executor);
+        previous.delegate.shutdown();
+    }
+
+    public static NodeExecutor current() {
+        return current;
+    }
+
+    /**
+     * Runs the supplier on the shared node executor. Inside a {@link RunControl controlled run} the task is
+     * interruptible, so stopping the run aborts it.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        if (RunControl.current() != null) {
+            return supplyInterruptibly(supplier);
+        }
+        return CompletableFuture.supplyAsync(supplier, current);
+    }
+
+    /**
+     * Runs the supplier on the shared node executor; cancelling the returned future
+     * interrupts the worker, so a blocking model call in flight is aborted rather than left to finish.
+     * The caller's {@link RunControl} goes with the task, and stopping that run cancels it. A task the executor
+     * rejects comes back as a future failed with the {@link RejectedExecutionException}.
+     */
+    public static <T> CompletableFuture<T> supplyInterruptibly(Supplier<T> supplier) {
+        RunControl run = RunControl.current();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            RunControl previous = RunControl.bind(run);
+            try {
+                result.complete(supplier.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                RunControl.bind(previous);
+            }
+            return null;
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        if (run != null) {
+            run.track(result);
+            if (result.isDone()) {
+                return result; // The run had already stopped
+            }
+        }
+        try {
+            current.execute(task);
+        } catch (RejectedExecutionException e) {
+            // A full platform pool: fail the future, so a run tracking it and any caller off the run's thread see it
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a non-blocking step on the calling thread and returns an already-completed future.
+     * Use for CPU-only nodes; edge actions get the same behaviour from {@code AsyncEdgeAction.edge_async}.
+     */
+    public static <T> CompletableFuture<T> inline(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.completedFuture(supplier.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public static Stats stats() {
+        return current.snapshot();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        submitted.increment();
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    public Stats snapshot() {
+        return new Stats(mode, queued.get(), active.get(), submitted.sum(), completed.sum(), rejected.sum());
+    }
+
+    private static NodeExecutor create(Configuration configuration) {
+        String mode = configuration.getExecutorMode() != null ? configuration.getExecutorMode() : VIRTUAL;
+        if (PLATFORM.equalsIgnoreCase(mode)) {
+            int threads = configuration.getExecutorThreads() > 0
+                    ? configuration.getExecutorThreads()
+                    : Runtime.getRuntime().availableProcessors() * 4;
+            int capacity = configuration.getExecutorQueueCapacity() > 0
+                    ? configuration.getExecutorQueueCapacity()
+                    : DEFAULT_QUEUE_CAPACITY;
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    threads, threads, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(capacity),
+                    daemonThreads("node-worker-"),
+                    new ThreadPoolExecutor.AbortPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            return new NodeExecutor(PLATFORM, pool);
+        }
+        return virtualThreadExecutor();
+    }
+
+    // Virtual threads need a Java 21 runtime; the build still targets 17, so look the factory up reflectively
+    private static NodeExecutor virtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new NodeExecutor(VIRTUAL, executor);
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("Virtual threads unavailable on this JVM, falling back to an unbounded platform pool.");
+            return new NodeExecutor(CACHED, Executors.newCachedThreadPool(daemonThreads("node-io-")));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,53 +1,43 @@
 package com.example.langgraph;
 
-import dev.langchain4j.model.anthropic.AnthropicChatModel;
-import dev.langchain4j.model.chat.ChatLanguageModel;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 
 public class Nodes {
 
-    // Helper to get LLM instance with default config
-    private static ChatLanguageModel getChatModel(String defaultModel, double defaultTemperature) {
-        return AnthropicChatModel.builder()
-                .apiKey(System.getenv("ANTHROPIC_API_KEY"))
-                .modelName(defaultModel)
-                .temperature(defaultTemperature)
-                .build();
-    }
+    private static final Logger LOG = LoggerFactory.getLogger(Nodes.class);
 
-    // Helper to get story LLM instance with default config
-    private static ChatLanguageModel getStoryChatModel(String defaultModel, double defaultTemperature) {
-        return AnthropicChatModel.builder()
-                .apiKey(System.getenv("ANTHROPIC_API_KEY"))
-                .modelName(defaultModel)
-                .temperature(defaultTemperature)
-                .build();
-    }
+    // Models and temperatures are chosen per call by ModelRouter; nodes only name the role they call for
 
 
 public static CompletableFuture<Map<String, Object>> callClaude(State state) {
-    return CompletableFuture.supplyAsync(() -> {
-        ChatLanguageModel llm = getChatModel("claude-3-haiku-20240307", 0.7);
-        
+    return NodeExecutor.supplyAsync(() -> {
         String question = state.getQuestion();
         
         if (question == null || question.isEmpty()) {
-            System.out.println("No question provided, skipping Claude answer generation.");
-            return Map.of("answer", "No question was asked due to empty input.");
+            LOG.warn("No question provided, skipping Claude answer generation.");
+            return StateDelta.create().answer("No question was asked due to empty input.");
         }
 
         int retryCount = state.getRetryCount();
-        System.out.printf("\n--- Node: callClaude --- (Attempt %d)\n", retryCount + 1);
-        System.out.printf("  Calling Claude for answer with question: '%s'\n", question);
+        LOG.info("Node callClaude (attempt {})", retryCount + 1);
+        LOG.debug("Calling Claude for answer with question: '{}'", question);
 
-        String response = llm.generate(question);
-        System.out.printf("  Received answer from Claude: %s\n", response);
+        RunBudget.Meter meter = new RunBudget.Meter();
+        String response = meter.text(LlmCalls.generate(LlmCalls.ROLE_ANSWER, question));
+        LOG.debug("Received answer from Claude: {}", response);
 
-        // Return only the state updates as a Map
-        return Map.of("answer", response);
+        // Return only the state updates
+        return RunBudget.settle(state, StateDelta.create().answer(response), meter);
     });
 }
 
@@ -57,103 +47,178 @@ public static CompletableFuture<Map<String, Object>> callClaude(State state) {
 
 
     /**
-     * Generates a short 2-paragraph story using the question and answer,
-     * optionally guided by specific instructions.
+     * Generates a short 2-paragraph story using the question and answer. With revision instructions,
+     * the previous story is sent along with them and revised rather than rewritten.
      */
     public static CompletableFuture<Map<String, Object>> generateStory(State state) {
-        return CompletableFuture.supplyAsync(() -> {
-            ChatLanguageModel llm = getStoryChatModel("claude-3-haiku-20240307", 0.9);
-
+        return NodeExecutor.supplyAsync(() -> {
             String question = state.getQuestion();
             String answer = state.getAnswer();
             String storyInstructions = state.getStoryGenerationInstructions();
             int retryCount = state.getRetryCount();
 
-            String systemMessageContent;
-            String humanMessageContent;
-
+            LOG.info("Node generateStory (attempt {})", retryCount + 1);
             if (storyInstructions != null && !storyInstructions.isEmpty()) {
-                systemMessageContent =
-                        "You are a whimsical storyteller. Create a short, two-paragraph story." +
-                        "You have received specific instructions for this new version of the story. " +
-                        "Prioritize these instructions to make the story better. " +
-                        "The story must feature the following question and its answer as the central punchline " +
-                        "or a key revelation. Make it engaging and concise.";
-                humanMessageContent =
-                        "Based on these instructions: '" + storyInstructions + "', " +
-                        "and the original question: '" + question + "', and answer: '" + answer + "', " +
-                        "write a new story.";
-                System.out.printf("  Generating story with instructions: '%s...'\n", storyInstructions.substring(0, Math.min(storyInstructions.length(), 70)));
+                LOG.debug("Generating story with instructions: '{}...'", storyInstructions.substring(0, Math.min(storyInstructions.length(), 70)));
             } else {
-                systemMessageContent =
-                        "You are a whimsical storyteller. Create a short, two-paragraph story." +
-                        "The story must feature the following question and its answer as the central punchline " +
-                        "or a key revelation. Make it engaging and concise.";
-                humanMessageContent =
-                        "The question was: '" + question + "'\n" +
-                        "The answer was: '" + answer + "'\n\n" +
-                        "Now, write the story.";
-                System.out.printf("  Generating initial story based on: '%s' and '%s'\n", question, answer);
+                LOG.debug("Generating initial story based on: '{}' and '{}'", question, answer);
             }
 
-            System.out.printf("\n--- Node: generateStory --- (Attempt %d)\n", retryCount + 1);
-            System.out.println("  State received by generateStory: ");
-            System.out.printf("    Question: '%s'\n", question);
-            System.out.printf("    Answer: '%s'\n", answer);
-
-            String storyResponse = llm.generate(systemMessageContent + "\n\n" + humanMessageContent);
+            RunBudget.Meter meter = new RunBudget.Meter();
+            String storyResponse = meter.text(LlmCalls.generate(LlmCalls.ROLE_STORY, Prompts.storySystemMessage(),
+                    Prompts.storyUserMessage(question, answer, state.getStory(), storyInstructions)));
 
-            System.out.printf("  Generated story (first 100 chars): %s...\n", storyResponse.substring(0, Math.min(storyResponse.length(), 100)));
+            LOG.debug("Generated story (first 100 chars): {}...", storyResponse.substring(0, Math.min(storyResponse.length(), 100)));
 
-            // Return only the updated fields
-            Map<String, Object> updates = new HashMap<>();
-            updates.put("story", storyResponse);
-            updates.put("storyGenerationInstructions", ""); // Clear instructions after using them
-            return updates;
+            // Return only the updated fields; the story is rated by the evaluators, not here
+            return RunBudget.settle(state, StateDelta.create()
+                    .story(storyResponse)
+                    .storyGenerationInstructions(""), meter); // Clear instructions after using them
         });
     }
 
 
     /**
-     * Uses an LLM to evaluate if the generated story is scary and meets the criteria.
-     * Returns reason for scary or not scary.
+     * Streaming variant of {@link #generateStory}: tokens are emitted to graph stream consumers as they arrive,
+     * and generation stops early once the given policy fires.
      */
-    public static CompletableFuture<Map<String, Object>> checkStoryScary(State state) {
-        return CompletableFuture.supplyAsync(() -> {
-            ChatLanguageModel llm = getChatModel("claude-3-haiku-20240307", 0.0);
-
+    public static AsyncNodeAction<State> generateStoryStreaming(StoryStopPolicy policy) {
+        return state -> {
             String question = state.getQuestion();
             String answer = state.getAnswer();
-            String story = state.getStory();
-            int retryCount = state.getRetryCount();
+            String storyInstructions = state.getStoryGenerationInstructions();
 
-            String systemMessage = 
-                    "You are an AI assistant tasked with evaluating stories for their scare factor. " +
-                    "Your goal is to determine if a given story is genuinely scary, creepy, or unsettling. " +
-                    "It should evoke a sense of dread, fear, or suspense. " +
-                    "Respond with ONLY 'SCARY' if it meets this criterion, otherwise respond with ONLY 'NOT_SCARY'. " +
-                    "Do NOT add any other text or explanation. Your output must be one word." +
-                    "Consider these points:\n" +
-                    "- Does it create a chilling atmosphere?\n" +
-                    "- Is there genuine suspense or horror?\n" +
-                    "- Does it evoke fear or discomfort?\n" +
-                    "- Is the provided question and answer integrated into the scary narrative?\n";
-
-            String userMessage = 
-                    "Here is the question: '" + question + "'\n" +
-                    "Here is the answer: '" + answer + "'\n" +
-                    "Here is the story: '" + story + "'\n\n" +
-                    "Is this story scary? Respond with 'SCARY' or 'NOT_SCARY'.";
-
-            System.out.printf("\n--- Node: checkScaryNode --- (Attempt %d)\n", retryCount + 1);
-            System.out.printf("  Checking scariness of story (first 50 chars): '%s...'\n", story.substring(0, Math.min(story.length(), 50)));
-
-            String evaluationResponse = llm.generate(systemMessage + "\n\n" + userMessage);
-            String feedback = evaluationResponse.trim().toUpperCase();
-
-            System.out.printf("  Story scariness feedback: %s\n", feedback);
-
-            return Map.of("scaryCheckFeedback", feedback);
+            LOG.info("Node generateStory, streaming (attempt {})", state.getRetryCount() + 1);
+
+            String userMessage = Prompts.storyUserMessage(question, answer, state.getStory(), storyInstructions);
+            StoryStreamHandler handler = new StoryStreamHandler("storyNode", state, policy,
+                    Prompts.storyPrompt(question, answer, state.getStory(), storyInstructions));
+            RunControl run = RunControl.current();
+            if (run != null) {
+                run.onStop(handler::cancel);
+            }
+            // The Anthropic client streams on its own threads; the stub streams on the calling one
+            NodeExecutor.supplyAsync(() -> {
+                LlmCalls.stream(LlmCalls.ROLE_STORY, policy.maxTokens(), Prompts.storySystemMessage(), userMessage, handler);
+                return null;
+            }).exceptionally(error -> {
+                handler.onError(error);
+                return null;
+            });
+            return CompletableFuture.completedFuture(Map.of("storyStream", handler.generator()));
+        };
+    }
+
+    /**
+     * One evaluator's verdict and the explanation it gave; both are empty for a check that was cancelled or skipped.
+     */
+    private record Evaluation(String verdict, String reason) {
+
+        static final Evaluation NONE = new Evaluation("", "");
+    }
+
+    /**
+     * A speculative story together with its evaluations; the funny one is empty when the scary check already failed.
+     */
+    private record Candidate(int index, String story, Evaluation scary, Evaluation funny) {
+
+        boolean passed() {
+            return Verdicts.isPass(scary.verdict(), Verdicts.SCARY) && Verdicts.isPass(funny.verdict(), Verdicts.FUNNY);
+        }
+    }
+
+    /**
+     * Speculative variant of {@link #generateStory}: writes {@code candidates} stories in parallel and evaluates
+     * each one as soon as it is written. The first candidate to pass both checks wins and the rest are cancelled.
+     * If none passes, the lowest-numbered candidate is kept with its feedback so the revision loop carries on as usual.
+     */
+    public static AsyncNodeAction<State> generateStoryCandidates(int candidates) {
+        return state -> {
+            LOG.info("Node generateStoryCandidates (attempt {}, {} candidates)", state.getRetryCount() + 1, candidates);
+
+            // Losing candidates are charged for the calls they finished before being cancelled
+            RunBudget.Meter meter = new RunBudget.Meter();
+            List<CompletableFuture<Candidate>> attempts = new ArrayList<>();
+            for (int i = 0; i < candidates; i++) {
+                int index = i;
+                attempts.add(NodeExecutor.supplyInterruptibly(() -> writeAndEvaluate(index, state, meter)));
+            }
+
+            // Callbacks are attached only once the list is complete, since a winner cancels all the others.
+            // The fallback waits on these callbacks, not on the attempts, so it cannot run before the last check.
+            CompletableFuture<Candidate> winner = new CompletableFuture<>();
+            List<CompletableFuture<Void>> checked = new ArrayList<>();
+            for (CompletableFuture<Candidate> attempt : attempts) {
+                checked.add(attempt.thenAccept(candidate -> {
+                    if (candidate.passed() && winner.complete(candidate)) {
+                        attempts.forEach(other -> other.cancel(true));
+                    }
+                }));
+            }
+            CompletableFuture.allOf(checked.toArray(CompletableFuture[]::new)).whenComplete((ignored, error) -> {
+                Optional<Candidate> fallback = attempts.stream()
+                        .filter(attempt -> attempt.isDone() && !attempt.isCompletedExceptionally())
+                        .map(CompletableFuture::join)
+                        .min(Comparator.comparingInt(Candidate::index));
+                if (fallback.isPresent()) {
+                    winner.complete(fallback.get()); // No-op if a passing candidate already won
+                } else {
+                    winner.completeExceptionally(error);
+                }
+            });
+
+            return winner.thenApply(candidate -> {
+                String scaryFeedback = candidate.scary().verdict();
+                String funnyFeedback = candidate.funny().verdict();
+                LOG.info("Candidate {} of {} selected: scary={} funny={}", candidate.index() + 1, candidates,
+                        scaryFeedback, funnyFeedback.isEmpty() ? "(skipped)" : funnyFeedback);
+                StateDelta delta = StateDelta.create()
+                        .story(candidate.story())
+                        .scaryCheckFeedback(scaryFeedback)
+                        .scaryCheckReason(candidate.scary().reason())
+                        .funninessCheckFeedback(funnyFeedback)
+                        .funninessCheckReason(candidate.funny().reason())
+                        .storyGenerationInstructions(""); // Clear instructions after using them
+                return RunBudget.settle(state, delta, meter, candidate.story(), scaryFeedback, funnyFeedback);
+            });
+        };
+    }
+
+    private static Candidate writeAndEvaluate(int index, State state, RunBudget.Meter meter) {
+        String question = state.getQuestion();
+        String answer = state.getAnswer();
+        int retryCount = state.getRetryCount();
+
+        String story = meter.text(LlmCalls.generate(LlmCalls.ROLE_STORY, Prompts.storySystemMessage(),
+                Prompts.storyUserMessage(question, answer, state.getStory(), state.getStoryGenerationInstructions())));
+        LOG.debug("Candidate {} written (first 60 chars): {}...", index + 1, story.substring(0, Math.min(story.length(), 60)));
+        checkNotCancelled();
+        Evaluation scary = evaluateScary(question, answer, story, retryCount, meter);
+        checkNotCancelled();
+        Evaluation funny = Verdicts.isPass(scary.verdict(), Verdicts.SCARY)
+                ? evaluateFunny(question, answer, story, retryCount, meter) : Evaluation.NONE;
+        return new Candidate(index, story, scary, funny);
+    }
+
+    // A model call that ignored the interrupt must not be followed by another one for a losing candidate
+    private static void checkNotCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Story candidate cancelled");
+        }
+    }
+
+    /**
+     * Uses an LLM to evaluate if the generated story is scary and meets the criteria.
+     * Returns reason for scary or not scary.
+     */
+    public static CompletableFuture<Map<String, Object>> checkStoryScary(State state) {
+        return NodeExecutor.supplyAsync(() -> {
+            RunBudget.Meter meter = new RunBudget.Meter();
+            Evaluation scary = evaluateScary(state, meter);
+            StateDelta delta = StateDelta.create()
+                    .scaryCheckFeedback(scary.verdict())
+                    .scaryCheckReason(scary.reason());
+            return RunBudget.settle(state, delta, meter, state.getStory(), scary.verdict(), "");
         });
     }
 
@@ -162,81 +227,207 @@ public static CompletableFuture<Map<String, Object>> callClaude(State state) {
      * Returns reason for funny or not funny.
      */
     public static CompletableFuture<Map<String, Object>> checkStoryFunny(State state) {
-        return CompletableFuture.supplyAsync(() -> {
-            ChatLanguageModel llm = getChatModel("claude-3-haiku-20240307", 0.0); // Low temp for strict evaluation
+        return NodeExecutor.supplyAsync(() -> {
+            RunBudget.Meter meter = new RunBudget.Meter();
+            Evaluation funny = evaluateFunny(state, meter);
+            StateDelta delta = StateDelta.create()
+                    .funninessCheckFeedback(funny.verdict())
+                    .funninessCheckReason(funny.reason());
+            return RunBudget.settle(state, delta, meter, state.getStory(), state.getScaryCheckFeedback(), funny.verdict());
+        });
+    }
+
+    /**
+     * Runs the scary and funny checks concurrently and merges both verdicts into the state.
+     * As soon as one check fails the other is cancelled, since the story goes back for revision either way;
+     * a cancelled check leaves its feedback empty, exactly as if the sequential graph had never reached it.
+     */
+    public static CompletableFuture<Map<String, Object>> checkStoryScaryAndFunny(State state) {
+        LOG.info("Node checkScaryAndFunny (attempt {})", state.getRetryCount() + 1);
+
+        RunBudget.Meter meter = new RunBudget.Meter();
+        CompletableFuture<Evaluation> scary = NodeExecutor.supplyInterruptibly(() -> evaluateScary(state, meter));
+        CompletableFuture<Evaluation> funny = NodeExecutor.supplyInterruptibly(() -> evaluateFunny(state, meter));
+
+        scary.whenComplete((evaluation, error) -> {
+            if (error != null || !Verdicts.isPass(evaluation.verdict(), Verdicts.SCARY)) {
+                funny.cancel(true);
+            }
+        });
+        funny.whenComplete((evaluation, error) -> {
+            if (error != null || !Verdicts.isPass(evaluation.verdict(), Verdicts.FUNNY)) {
+                scary.cancel(true);
+            }
+        });
+
+        return CompletableFuture.allOf(scary, funny).handle((ignored, error) -> {
+            Evaluation scaryEvaluation = evaluationOrNone(scary);
+            Evaluation funnyEvaluation = evaluationOrNone(funny);
+            LOG.info("Parallel evaluation: scary={} funny={}",
+                    scary.isCancelled() ? "(cancelled)" : scaryEvaluation.verdict(),
+                    funny.isCancelled() ? "(cancelled)" : funnyEvaluation.verdict());
+            StateDelta delta = StateDelta.create()
+                    .scaryCheckFeedback(scaryEvaluation.verdict())
+                    .scaryCheckReason(scaryEvaluation.reason())
+                    .funninessCheckFeedback(funnyEvaluation.verdict())
+                    .funninessCheckReason(funnyEvaluation.reason());
+            return RunBudget.settle(state, delta, meter, state.getStory(), scaryEvaluation.verdict(), funnyEvaluation.verdict());
+        });
+    }
+
+    /**
+     * Evaluates scariness and funniness with a single LLM call that returns both verdicts and short reasons,
+     * sending the question, answer and story once instead of once per check.
+     */
+    public static CompletableFuture<Map<String, Object>> checkStoryCombined(State state) {
+        return NodeExecutor.supplyAsync(() -> {
+            String modelName = ModelRouter.shared().routeKey(ModelRouter.EVALUATOR);
 
             String question = state.getQuestion();
             String answer = state.getAnswer();
             String story = state.getStory();
-            int retryCount = state.getRetryCount();
 
-            String systemMessage = 
-                    "You are an AI comedian evaluator. Your task is to determine if the given story " +
-                    "is genuinely funny, amusing, or has a clear comedic element, especially considering " +
-                    "how the question and answer were used. " +
-                    "Respond with ONLY 'FUNNY' if it achieves this, otherwise respond with ONLY 'NOT_FUNNY'. " +
-                    "Do NOT add any other text or explanation. Your output must be one word.";
+            LOG.info("Node checkStoryCombined (attempt {})", state.getRetryCount() + 1);
+            LOG.debug("Checking scariness and funniness of story (first 50 chars): '{}...'", story.substring(0, Math.min(story.length(), 50)));
+
+            String prompt = Prompts.combinedCheckPrompt(question, answer, story);
+            RunBudget.Meter meter = new RunBudget.Meter();
+            String evaluationResponse = ResponseCache.shared().getOrCompute(modelName, 0.0, prompt,
+                    () -> meter.text(LlmCalls.generate(LlmCalls.ROLE_COMBINED, Prompts.COMBINED_CHECK_SYSTEM,
+                            Prompts.combinedCheckUserMessage(question, answer, story))));
+            Verdicts.Combined verdicts = Verdicts.parseCombined(evaluationResponse);
+
+            LOG.info("Story scariness feedback: {} ({})", verdicts.scary(), verdicts.scaryReason());
+            LOG.info("Story funniness feedback: {} ({})", verdicts.funny(), verdicts.funnyReason());
+            StoryPreScreen.shared().record(story, Verdicts.SCARY, verdicts.scary());
+            StoryPreScreen.shared().record(story, Verdicts.FUNNY, verdicts.funny());
+
+            StateDelta delta = StateDelta.create()
+                    .scaryCheckFeedback(verdicts.scary())
+                    .scaryCheckReason(verdicts.scaryReason())
+                    .funninessCheckFeedback(verdicts.funny())
+                    .funninessCheckReason(verdicts.funnyReason());
+            return RunBudget.settle(state, delta, meter, story, verdicts.scary(), verdicts.funny());
+        });
+    }
 
-            String userMessage = 
-                    "Question: '" + question + "'\n" +
-                    "Answer: '" + answer + "'\n" +
-                    "Story: '" + story + "'\n\n" +
-                    "Is this story funny? Respond 'FUNNY' or 'NOT_FUNNY' and then explicitly why you think so.";
+    // A cancelled check contributes no verdict; a check that actually failed propagates its error
+    private static Evaluation evaluationOrNone(CompletableFuture<Evaluation> check) {
+        return check.isCancelled() ? Evaluation.NONE : check.join();
+    }
 
-            System.out.printf("\n--- Node: checkStoryFunny --- (Attempt %d)\n", retryCount + 1);
-            System.out.printf("  Checking funniness of story (first 50 chars): '%s...'\n", story.substring(0, Math.min(story.length(), 50)));
+    // The canonical verdict and its explanation, or the raw reply when it contains no verdict so the mismatch stays visible
+    private static Evaluation normalizedEvaluation(String reply, String positive) {
+        String verdict = Verdicts.parse(reply, positive);
+        return verdict.isEmpty() ? new Evaluation(reply.trim(), "") : new Evaluation(verdict, Verdicts.reason(reply, positive));
+    }
 
-            String evaluationResponse = llm.generate(systemMessage + "\n\n" + userMessage);
-            String feedback = evaluationResponse.trim().toUpperCase();
-            
-            System.out.printf("  Story funniness feedback: %s\n", feedback);
+    private static Evaluation evaluateScary(State state, RunBudget.Meter meter) {
+        return evaluateScary(state.getQuestion(), state.getAnswer(), state.getStory(), state.getRetryCount(), meter);
+    }
 
-            return Map.of("funninessCheckFeedback", feedback);
-        });
+    private static Evaluation evaluateFunny(State state, RunBudget.Meter meter) {
+        return evaluateFunny(state.getQuestion(), state.getAnswer(), state.getStory(), state.getRetryCount(), meter);
+    }
+
+    /**
+     * Uses an LLM to evaluate if the generated story is scary and meets the criteria, unless the pre-screen rejects it.
+     */
+    private static Evaluation evaluateScary(String question, String answer, String story, int retryCount, RunBudget.Meter meter) {
+        // Verdicts are cached per evaluator route, so changing its candidate models starts a fresh cache
+        String modelName = ModelRouter.shared().routeKey(ModelRouter.EVALUATOR);
+
+        LOG.info("Node checkScaryNode (attempt {})", retryCount + 1);
+        LOG.debug("Checking scariness of story (first 50 chars): '{}...'", story.substring(0, Math.min(story.length(), 50)));
+
+        // Obvious failures are rejected in-process, before the cache and the model
+        String screened = StoryPreScreen.shared().screen(story, Verdicts.SCARY);
+        if (screened != null) {
+            LOG.info("Story scariness feedback: {} (pre-screen)", screened);
+            return new Evaluation(screened, "");
+        }
+
+        // Temperature 0 verdicts are deterministic, so identical prompts are served from the cache, at no token cost
+        String prompt = Prompts.scaryCheckPrompt(question, answer, story);
+        String evaluationResponse = ResponseCache.shared().getOrCompute(modelName, 0.0, prompt,
+                () -> meter.text(LlmCalls.generate(LlmCalls.ROLE_SCARY, Prompts.SCARY_CHECK_SYSTEM,
+                        Prompts.scaryCheckUserMessage(question, answer, story))));
+        Evaluation evaluation = normalizedEvaluation(evaluationResponse, Verdicts.SCARY);
+        StoryPreScreen.shared().record(story, Verdicts.SCARY, evaluation.verdict());
+
+        LOG.info("Story scariness feedback: {} ({})", evaluation.verdict(), evaluation.reason());
+        return evaluation;
+    }
+
+    /**
+     * Uses an LLM to evaluate if the generated story is funny, unless the pre-screen rejects it.
+     */
+    private static Evaluation evaluateFunny(String question, String answer, String story, int retryCount, RunBudget.Meter meter) {
+        String modelName = ModelRouter.shared().routeKey(ModelRouter.EVALUATOR);
+
+        LOG.info("Node checkStoryFunny (attempt {})", retryCount + 1);
+        LOG.debug("Checking funniness of story (first 50 chars): '{}...'", story.substring(0, Math.min(story.length(), 50)));
+
+        String screened = StoryPreScreen.shared().screen(story, Verdicts.FUNNY);
+        if (screened != null) {
+            LOG.info("Story funniness feedback: {} (pre-screen)", screened);
+            return new Evaluation(screened, "");
+        }
+
+        String prompt = Prompts.funnyCheckPrompt(question, answer, story);
+        String evaluationResponse = ResponseCache.shared().getOrCompute(modelName, 0.0, prompt,
+                () -> meter.text(LlmCalls.generate(LlmCalls.ROLE_FUNNY, Prompts.FUNNY_CHECK_SYSTEM,
+                        Prompts.funnyCheckUserMessage(question, answer, story))));
+        // The funny prompt asks for an explanation after the verdict; it is kept apart as the reason
+        Evaluation evaluation = normalizedEvaluation(evaluationResponse, Verdicts.FUNNY);
+        StoryPreScreen.shared().record(story, Verdicts.FUNNY, evaluation.verdict());
+
+        LOG.info("Story funniness feedback: {} ({})", evaluation.verdict(), evaluation.reason());
+        return evaluation;
     }
     
 public static CompletableFuture<Map<String, Object>> createStoryInstructions(State state) {
-        return CompletableFuture.supplyAsync(() -> {
-            int currentRetryCount = state.getRetryCount() + 1;
-            int maxRetries = state.getMaxRetries();
-            ChatLanguageModel llm = getChatModel("claude-3-haiku-20240307", 0.5);
-    
-            System.out.printf("\n--- Node: createStoryInstructions --- (Attempt %d/%d)\n", currentRetryCount, maxRetries);
-    
-            Map<String, Object> updates = new HashMap<>();
-            updates.put("retryCount", currentRetryCount);
-    
-            if (currentRetryCount > maxRetries) {
-                System.out.printf("  Max retries (%d) reached for story generation. Setting terminateFlag to True.\n", maxRetries);
-                updates.put("story", "");
-                updates.put("scaryCheckFeedback", "");
-                updates.put("funninessCheckFeedback", "");
-                updates.put("storyGenerationInstructions", "");
-                updates.put("terminateFlag", true);
-                return updates;
-            }
-    
-            String question = state.getQuestion();
-            String answer = state.getAnswer();
-            String story = state.getStory();
-            String scaryFeedback = state.getScaryCheckFeedback();
-            String funnyFeedback = state.getFunninessCheckFeedback();
-    
-            String instructions = "";
-    
-            // ... [rest of the instruction generation logic remains the same] ...
-    
-            System.out.printf("  Generated instructions: '%s'\n", instructions);
-    
-            // Keep current story (it will be regenerated with new instructions)
-            updates.put("story", story);
-            // Clear feedback for next loop and set new instructions
-            updates.put("scaryCheckFeedback", "");
-            updates.put("funninessCheckFeedback", "");
-            updates.put("storyGenerationInstructions", instructions);
-            updates.put("terminateFlag", false);
-            
-            return updates;
+        int currentRetryCount = state.getRetryCount() + 1;
+        int maxRetries = state.getMaxRetries();
+
+        if (currentRetryCount > maxRetries) {
+            // Terminal branch only resets fields, so run it inline rather than paying an executor hop
+            return NodeExecutor.inline(() -> {
+                LOG.info("Node createStoryInstructions (attempt {}/{})", currentRetryCount, maxRetries);
+                LOG.info("Max retries ({}) reached for story generation. Setting terminateFlag to True.", maxRetries);
+                return StateDelta.create()
+                        .retryCount(currentRetryCount)
+                        .story("")
+                        .scaryCheckFeedback("")
+                        .scaryCheckReason("")
+                        .funninessCheckFeedback("")
+                        .funninessCheckReason("")
+                        .storyGenerationInstructions("")
+                        .terminateFlag(true);
+            });
+        }
+
+        // Instructions are derived from the verdicts without a model call, so this branch runs inline as well
+        return NodeExecutor.inline(() -> {
+            LOG.info("Node createStoryInstructions (attempt {}/{})", currentRetryCount, maxRetries);
+
+            String instructions = Prompts.revisionInstructions(state.getScaryCheckFeedback(), state.getScaryCheckReason(),
+                    state.getFunninessCheckFeedback(), state.getFunninessCheckReason(), state.getStoryStopReason());
+
+            LOG.debug("Generated instructions: '{}'", instructions);
+
+            return StateDelta.create()
+                    .retryCount(currentRetryCount)
+                    // Keep current story: the next attempt revises it with the new instructions. A draft stopped
+                    // for banned content is dropped instead, so it is never sent back to the model
+                    .story(StoryStopPolicy.BANNED.equals(state.getStoryStopReason()) ? "" : state.getStory())
+                    // Clear feedback for next loop and set new instructions
+                    .scaryCheckFeedback("")
+                    .scaryCheckReason("")
+                    .funninessCheckFeedback("")
+                    .funninessCheckReason("")
+                    .storyGenerationInstructions(instructions)
+                    .terminateFlag(false);
         });
     }
 
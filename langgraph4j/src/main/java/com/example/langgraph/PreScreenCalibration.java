@@ -0,0 +1,131 @@
+package com.example.langgraph;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Measures how well {@link StoryPreScreen} agrees with the LLM evaluators on recorded runs, offline and without
+ * model calls. Input is NDJSON: verdict records from {@code preScreenRecordFile} ({@code --record-verdicts}), or
+ * run results as written by {@link BatchRunner} or {@code POST /runs}, whose story is scored against the verdicts
+ * stored with it. Verdict records are the better input: results of runs that ran out of retries keep no story,
+ * so they hold few failing ones. Record results with the pre-screen off, so that their verdicts come from the model.
+ * <p>
+ * For a range of thresholds it prints the share of evaluator calls the screen would skip, and the false rejects:
+ * stories it would call {@code NOT_*} that the LLM passed. It recommends the highest threshold whose false
+ * rejects stay within {@code --max-false-reject} of the stories it screens out.
+ *
+ * Usage: PreScreenCalibration <verdicts-or-results.ndjson>... [--max-false-reject 0.02]
+ */
+public class PreScreenCalibration {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final double[] THRESHOLDS = {0.25, 0.5, 0.75, 1, 1.5, 2, 3, 4, 5, 7.5, 10};
+
+    private record Sample(String story, boolean passed) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        double maxFalseReject = 0.02;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--max-false-reject" -> maxFalseReject = Double.parseDouble(args[++i]);
+                default -> inputs.add(Path.of(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: PreScreenCalibration <verdicts-or-results.ndjson>... [--max-false-reject 0.02]");
+            System.exit(2);
+        }
+
+        List<Sample> scary = new ArrayList<>();
+        List<Sample> funny = new ArrayList<>();
+        for (Path input : inputs) {
+            try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    JsonNode record = JSON.readTree(line);
+                    String story = record.path("story").asText("");
+                    if (story.isBlank()) {
+                        continue; // Runs that ran out of retries keep no story to score
+                    }
+                    if (record.has("criterion")) {
+                        String positive = record.path("criterion").asText();
+                        addSample(Verdicts.SCARY.equals(positive) ? scary : funny, story, record.path("verdict").asText(""), positive);
+                    } else {
+                        addSample(scary, story, record.path("scaryCheckFeedback").asText(""), Verdicts.SCARY);
+                        addSample(funny, story, record.path("funninessCheckFeedback").asText(""), Verdicts.FUNNY);
+                    }
+                }
+            }
+        }
+
+        report(Verdicts.SCARY, "preScreenScaryThreshold", scary, maxFalseReject);
+        report(Verdicts.FUNNY, "preScreenFunnyThreshold", funny, maxFalseReject);
+    }
+
+    private static void addSample(List<Sample> samples, String story, String feedback, String positive) {
+        // An empty verdict means the check never ran, e.g. funniness after a story that was not scary
+        String verdict = Verdicts.parse(feedback, positive);
+        if (!verdict.isEmpty()) {
+            samples.add(new Sample(story, positive.equals(verdict)));
+        }
+    }
+
+    private static void report(String positive, String setting, List<Sample> samples, double maxFalseReject) {
+        long passed = samples.stream().filter(Sample::passed).count();
+        System.out.printf("\n--- %s: %d recorded verdicts, %d passed by the LLM ---\n", positive, samples.size(), passed);
+        if (samples.isEmpty()) {
+            return;
+        }
+        System.out.println("threshold  skipped  agreement  false rejects");
+
+        TreeSet<Double> thresholds = new TreeSet<>();
+        for (double threshold : THRESHOLDS) {
+            thresholds.add(threshold);
+        }
+        thresholds.add(StoryPreScreen.shared().threshold(positive));
+
+        double recommended = 0;
+        int recommendedSkipped = 0;
+        for (double threshold : thresholds) {
+            int skipped = 0;
+            int falseRejects = 0;
+            for (Sample sample : samples) {
+                if (StoryPreScreen.verdict(sample.story(), positive, threshold) != null) {
+                    skipped++;
+                    if (sample.passed()) {
+                        falseRejects++;
+                    }
+                }
+            }
+            double agreement = skipped == 0 ? 1.0 : 1.0 - (double) falseRejects / skipped;
+            System.out.printf("%9.2f  %6.1f%%  %8.1f%%  %d (%.1f%% of LLM passes)\n", threshold,
+                    100.0 * skipped / samples.size(), 100.0 * agreement, falseRejects,
+                    passed == 0 ? 0.0 : 100.0 * falseRejects / passed);
+            if (skipped > 0 && 1.0 - agreement <= maxFalseReject) {
+                recommended = threshold;
+                recommendedSkipped = skipped;
+            }
+        }
+        if (recommended > 0) {
+            System.out.printf("Recommended %s: %.2f (skips %.1f%% of %s checks)\n", setting, recommended,
+                    100.0 * recommendedSkipped / samples.size(), positive.toLowerCase());
+        } else {
+            System.out.printf("No threshold keeps false rejects within %.1f%%; leave the pre-screen off for %s\n",
+                    100.0 * maxFalseReject, positive.toLowerCase());
+        }
+    }
+}
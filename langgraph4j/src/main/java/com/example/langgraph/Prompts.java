@@ -0,0 +1,159 @@
+package com.example.langgraph;
+
+/**
+ * Prompt text for the story and evaluator nodes.
+ * Kept apart from {@link Nodes} so prompt construction can be reused and benchmarked on its own.
+ */
+public class Prompts {
+
+    // One system prompt for first drafts and revisions alike: its bytes never change between story calls, so the
+    // provider's prompt cache can serve it. Everything that varies goes at the end of the user message.
+    static final String STORY_SYSTEM =
+            "You are a whimsical storyteller. Create a short, two-paragraph story. " +
+            "The story must feature the given question and its answer as the central punchline " +
+            "or a key revelation. Make it engaging and concise. " +
+            "When you are given a previous story and required changes, revise that story: make every " +
+            "required change and keep what already works. Reply with the story only.";
+
+    // Evaluator reasons are quoted into revision instructions only up to this length
+    private static final int MAX_REASON_CHARS = 200;
+
+    static final String SCARY_CHECK_SYSTEM =
+            "You are an AI assistant tasked with evaluating stories for their scare factor. " +
+            "Your goal is to determine if a given story is genuinely scary, creepy, or unsettling. " +
+            "It should evoke a sense of dread, fear, or suspense. " +
+            "Respond with 'SCARY' if it meets this criterion, otherwise 'NOT_SCARY', " +
+            "followed by one short sentence saying why. Always give the verdict first.\n" +
+            "Consider these points:\n" +
+            "- Does it create a chilling atmosphere?\n" +
+            "- Is there genuine suspense or horror?\n" +
+            "- Does it evoke fear or discomfort?\n" +
+            "- Is the provided question and answer integrated into the scary narrative?\n";
+
+    static final String FUNNY_CHECK_SYSTEM =
+            "You are an AI comedian evaluator. Your task is to determine if the given story " +
+            "is genuinely funny, amusing, or has a clear comedic element, especially considering " +
+            "how the question and answer were used. " +
+            "Respond with 'FUNNY' if it achieves this, otherwise 'NOT_FUNNY', " +
+            "followed by one short sentence saying why. Always give the verdict first.";
+
+    static final String COMBINED_CHECK_SYSTEM =
+            "You are an AI assistant evaluating short stories on two criteria at once. " +
+            "A story is SCARY if it is genuinely creepy or unsettling and evokes dread, fear or suspense. " +
+            "A story is FUNNY if it is genuinely amusing or has a clear comedic element, especially in " +
+            "how the question and answer were used. " +
+            "Respond with ONLY a JSON object of this exact form and no other text:\n" +
+            "{\"scary\": \"SCARY\" or \"NOT_SCARY\", \"scaryReason\": \"<one short sentence>\", " +
+            "\"funny\": \"FUNNY\" or \"NOT_FUNNY\", \"funnyReason\": \"<one short sentence>\"}";
+
+    private static boolean hasText(String text) {
+        return text != null && !text.isEmpty();
+    }
+
+    public static String storySystemMessage() {
+        return STORY_SYSTEM;
+    }
+
+    /**
+     * The question and answer come first, so the prefix is the same for every attempt in a run. A revision adds
+     * the previous story and the changes it needs, rather than asking for a new story from scratch.
+     */
+    public static String storyUserMessage(String question, String answer, String previousStory, String instructions) {
+        StringBuilder message = new StringBuilder(256 + (previousStory != null ? previousStory.length() : 0))
+                .append("Question: '").append(question).append("'\n")
+                .append("Answer: '").append(answer).append("'\n\n");
+        if (!hasText(instructions)) {
+            return message.append("Now, write the story.").toString();
+        }
+        if (hasText(previousStory)) {
+            message.append("Previous story:\n").append(previousStory).append("\n\n");
+        }
+        return message.append("Required changes:\n").append(instructions).append("\n\n")
+                .append(hasText(previousStory) ? "Now, write the revised story." : "Now, write the story.")
+                .toString();
+    }
+
+    /**
+     * Full single-string story prompt: what the stub model sees, and the basis for token estimates.
+     */
+    public static String storyPrompt(String question, String answer, String previousStory, String instructions) {
+        return storySystemMessage() + "\n\n" + storyUserMessage(question, answer, previousStory, instructions);
+    }
+
+    /**
+     * Turns the last attempt's verdicts into a short list of required changes, one line each. Criteria the story
+     * already met are listed as things to keep, so a revision does not trade one failure for another. An empty
+     * verdict (a check that did not run) adds nothing.
+     */
+    public static String revisionInstructions(String scaryFeedback, String scaryReason, String funnyFeedback,
+                                              String funnyReason, String stopReason) {
+        StringBuilder changes = new StringBuilder(256);
+        if (StoryStopPolicy.BANNED.equals(stopReason)) {
+            changes.append("- Write a fresh story; the last draft was rejected for disallowed content.\n");
+        } else if (StoryStopPolicy.LENGTH.equals(stopReason)) {
+            changes.append("- Make it shorter; the last draft was cut off at the length limit.\n");
+        }
+        appendChange(changes, scaryFeedback, Verdicts.SCARY, scaryReason,
+                "- Make it genuinely scary: build dread and suspense toward an unsettling reveal.",
+                "- Keep the eerie atmosphere.");
+        appendChange(changes, funnyFeedback, Verdicts.FUNNY, funnyReason,
+                "- Make it funny: land the answer as a clear comedic punchline.",
+                "- Keep the humour.");
+        if (changes.length() == 0) {
+            changes.append("- Make it both genuinely scary and clearly funny, with the answer as the punchline.\n");
+        }
+        changes.setLength(changes.length() - 1);
+        return changes.toString();
+    }
+
+    private static void appendChange(StringBuilder changes, String feedback, String positive, String reason,
+                                     String fix, String keep) {
+        String verdict = Verdicts.parse(feedback, positive);
+        if (verdict.isEmpty()) {
+            return;
+        }
+        if (positive.equals(verdict)) {
+            changes.append(keep).append('\n');
+            return;
+        }
+        changes.append(fix);
+        if (hasText(reason)) {
+            String trimmed = reason.length() > MAX_REASON_CHARS ? reason.substring(0, MAX_REASON_CHARS) + "..." : reason;
+            changes.append(" Evaluator: ").append(trimmed);
+        }
+        changes.append('\n');
+    }
+
+    public static String scaryCheckUserMessage(String question, String answer, String story) {
+        return "Here is the question: '" + question + "'\n" +
+                "Here is the answer: '" + answer + "'\n" +
+                "Here is the story: '" + story + "'\n\n" +
+                "Is this story scary? Respond with 'SCARY' or 'NOT_SCARY', then one short sentence saying why.";
+    }
+
+    public static String scaryCheckPrompt(String question, String answer, String story) {
+        return SCARY_CHECK_SYSTEM + "\n\n" + scaryCheckUserMessage(question, answer, story);
+    }
+
+    public static String funnyCheckUserMessage(String question, String answer, String story) {
+        return "Question: '" + question + "'\n" +
+                "Answer: '" + answer + "'\n" +
+                "Story: '" + story + "'\n\n" +
+                "Is this story funny? Respond with 'FUNNY' or 'NOT_FUNNY', then one short sentence saying why.";
+    }
+
+    public static String funnyCheckPrompt(String question, String answer, String story) {
+        return FUNNY_CHECK_SYSTEM + "\n\n" + funnyCheckUserMessage(question, answer, story);
+    }
+
+    public static String combinedCheckUserMessage(String question, String answer, String story) {
+        return "Question: '" + question + "'\n" +
+                "Answer: '" + answer + "'\n" +
+                "Story: '" + story + "'\n\n" +
+                "Is this story scary and funny? Respond with the JSON object only.";
+    }
+
+    public static String combinedCheckPrompt(String question, String answer, String story) {
+        return COMBINED_CHECK_SYSTEM + "\n\n" + combinedCheckUserMessage(question, answer, story);
+    }
+}
@@ -0,0 +1,426 @@
+package com.example.langgraph;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.eclipse.jetty.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker mode for scaling story runs across JVMs: any number of workers, started anywhere that sees the same queue
+ * directory, pull questions from a shared {@link WorkQueue}, run them through the story graph and write the results
+ * back. Each worker runs {@code --concurrency} runs at once, renews its leases every third of the lease time and
+ * re-queues leases that other workers let expire. A run whose lease is lost is cancelled through its
+ * {@link RunControl}, since another worker now owns the item.
+ * <p>
+ * Client-side rate limits ({@code --rpm}, {@code --tpm}) apply per worker, so split the account's budget between them.
+ *
+ * Usage: QueueWorker enqueue <queue-dir> <questions-file>
+ *        QueueWorker work <queue-dir> [--concurrency N] [--worker-id id] [--lease-ms N] [--max-attempts N] [--drain]
+ *                         [--max-retries N] [--stub [profile-spec]] [--cache-dir dir] [--evaluation sequential|parallel|combined]
+ *                         [--rpm N] [--tpm N] [--hedge role=percentile,...] [--route route=model|model] [--fastest route,...]
+ *                         [--coalesce role,...] [--prescreen [scary,funny]] [--token-budget N] [--deadline-ms N] [--metrics-port N]
+ *        QueueWorker collect <queue-dir> [--output results.ndjson]
+ *
+ * With {@code --drain} a worker exits once nothing is pending or leased; otherwise it keeps polling for new work.
+ */
+public class QueueWorker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueueWorker.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final long DEFAULT_LEASE_MILLIS = 30_000;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long MIN_POLL_MILLIS = 50;
+    private static final long MAX_POLL_MILLIS = 1_000;
+
+    private final CompiledGraph<State> graph;
+    private final WorkQueue queue;
+    private final int concurrency;
+    private final long leaseMillis;
+    private final int maxAttempts;
+    private final boolean drain;
+    private final int maxRetries;
+    private final int tokenBudget; // 0 for unlimited
+    private final long deadlineMillis; // 0 for no per-run deadline
+
+    private final Map<WorkQueue.Lease, RunControl> active = new ConcurrentHashMap<>();
+    private volatile boolean stopping;
+
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong stopped = new AtomicLong();
+    private final AtomicLong lostLeases = new AtomicLong();
+
+    public QueueWorker(CompiledGraph<State> graph, WorkQueue queue, int concurrency, long leaseMillis, int maxAttempts,
+                       boolean drain, int maxRetries, int tokenBudget, long deadlineMillis) {
+        this.graph = graph;
+        this.queue = queue;
+        this.concurrency = concurrency;
+        this.leaseMillis = leaseMillis;
+        this.maxAttempts = maxAttempts;
+        this.drain = drain;
+        this.maxRetries = maxRetries;
+        this.tokenBudget = tokenBudget;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: QueueWorker enqueue <queue-dir> <questions-file> | work <queue-dir> [--concurrency N] [--worker-id id] [--lease-ms N] [--max-attempts N] [--drain] [--max-retries N] [--stub [spec]] [--cache-dir dir] [--evaluation sequential|parallel|combined] [--rpm N] [--tpm N] [--hedge role=percentile,...] [--route route=model|model] [--fastest route,...] [--coalesce role,...] [--prescreen [scary,funny]] [--token-budget N] [--deadline-ms N] [--metrics-port N] | collect <queue-dir> [--output file]");
+            System.exit(2);
+        }
+        Path directory = Path.of(args[1]);
+        try {
+            switch (args[0]) {
+                case "enqueue" -> enqueue(directory, Path.of(args[2]));
+                case "collect" -> collect(directory, args.length > 3 && "--output".equals(args[2]) ? Path.of(args[3]) : null);
+                case "work" -> work(directory, args);
+                default -> throw new IllegalArgumentException("Unknown command: " + args[0]);
+            }
+        } catch (Exception e) {
+            System.err.println("Queue " + args[0] + " failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void enqueue(Path directory, Path input) throws IOException {
+        WorkQueue queue = WorkQueue.open(directory, "enqueue");
+        long count = 0;
+        long malformed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String question;
+                try {
+                    question = BatchRunner.parseQuestion(line);
+                } catch (IOException e) {
+                    System.err.printf("Skipping malformed line %d: %s\n", lineNumber, e.getMessage());
+                    malformed++;
+                    continue;
+                }
+                if (question != null) {
+                    queue.enqueue(question);
+                    count++;
+                }
+            }
+        }
+        System.err.printf("Enqueued %d questions in %s (%d malformed lines skipped)\n", count, directory, malformed);
+    }
+
+    private static void collect(Path directory, Path output) throws IOException {
+        WorkQueue queue = WorkQueue.open(directory, "collect");
+        long count;
+        if (output != null) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(output), false, StandardCharsets.UTF_8)) {
+                count = queue.collect(out);
+            }
+        } else {
+            count = queue.collect(System.out);
+            System.out.flush();
+        }
+        WorkQueue.Stats stats = queue.stats();
+        System.err.printf("Collected %d results (%d pending, %d leased)\n", count, stats.pending(), stats.leased());
+    }
+
+    private static void work(Path directory, String[] args) throws Exception {
+        int concurrency = 16;
+        // The JVM name is pid@host, which tells workers apart in lease file names and logs
+        String workerId = ManagementFactory.getRuntimeMXBean().getName();
+        long leaseMillis = DEFAULT_LEASE_MILLIS;
+        int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        boolean drain = false;
+        int maxRetries = 5;
+        StubModelProfile stubProfile = null;
+        String cacheDirectory = null;
+        String evaluationMode = StoryGraph.SEQUENTIAL_EVALUATION;
+        int requestsPerMinute = 0;
+        int tokensPerMinute = 0;
+        Map<String, Double> hedgePercentiles = null;
+        Map<String, List<String>> modelRoutes = new HashMap<>();
+        Set<String> fastestRoutes = Set.of();
+        Set<String> coalescedRoles = null;
+        boolean preScreen = false;
+        double[] preScreenThresholds = {0, 0};
+        int tokenBudget = 0;
+        long deadlineMillis = 0;
+        int metricsPort = 0;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                case "--worker-id" -> workerId = args[++i];
+                case "--lease-ms" -> leaseMillis = Long.parseLong(args[++i]);
+                case "--max-attempts" -> maxAttempts = Integer.parseInt(args[++i]);
+                case "--drain" -> drain = true;
+                case "--max-retries" -> maxRetries = Integer.parseInt(args[++i]);
+                case "--stub" -> {
+                    boolean hasSpec = i + 1 < args.length && !args[i + 1].startsWith("--");
+                    stubProfile = StubModelProfile.parse(hasSpec ? args[++i] : null);
+                }
+                case "--cache-dir" -> cacheDirectory = args[++i];
+                case "--evaluation" -> evaluationMode = args[++i];
+                case "--rpm" -> requestsPerMinute = Integer.parseInt(args[++i]);
+                case "--tpm" -> tokensPerMinute = Integer.parseInt(args[++i]);
+                case "--hedge" -> hedgePercentiles = LlmCalls.parseHedgePercentiles(args[++i]);
+                case "--route" -> {
+                    String[] route = args[++i].split("=", 2);
+                    modelRoutes.put(route[0], List.of(route[1].split("\\|")));
+                }
+                case "--fastest" -> fastestRoutes = Set.of(args[++i].split(","));
+                case "--coalesce" -> coalescedRoles = Set.of(args[++i].split(","));
+                case "--prescreen" -> {
+                    preScreen = true;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        preScreenThresholds = Arrays.stream(args[++i].split(",")).mapToDouble(Double::parseDouble).toArray();
+                    }
+                }
+                case "--token-budget" -> tokenBudget = Integer.parseInt(args[++i]);
+                case "--deadline-ms" -> deadlineMillis = Long.parseLong(args[++i]);
+                case "--metrics-port" -> metricsPort = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Configuration configForRun = StoryGraph.runtimeDefaults()
+                .maxRetries(maxRetries)
+                .modelProvider(stubProfile != null ? StubChatModel.PROVIDER : ChatModelRegistry.ANTHROPIC)
+                .stubProfile(stubProfile)
+                .responseCacheDirectory(cacheDirectory)
+                .evaluationMode(evaluationMode)
+                .llmRequestsPerMinute(requestsPerMinute)
+                .llmTokensPerMinute(tokensPerMinute)
+                .hedgePercentiles(hedgePercentiles)
+                .modelRoutes(modelRoutes)
+                .fastestRoutes(fastestRoutes)
+                .coalescedRoles(coalescedRoles)
+                .preScreen(preScreen)
+                .preScreenScaryThreshold(preScreenThresholds[0])
+                .preScreenFunnyThreshold(preScreenThresholds[preScreenThresholds.length - 1])
+                .runTokenBudget(tokenBudget)
+                .runDeadlineMillis(deadlineMillis)
+                .build();
+        StoryGraph.configureRuntime(configForRun);
+
+        Server metricsServer = metricsPort > 0 ? MetricsHandler.serve(metricsPort) : null;
+        try {
+            WorkQueue queue = WorkQueue.open(directory, workerId);
+            QueueWorker worker = new QueueWorker(StoryGraph.compile(configForRun), queue, concurrency, leaseMillis,
+                    maxAttempts, drain, maxRetries, tokenBudget, deadlineMillis);
+            // On SIGTERM, hand unfinished items straight back instead of leaving them to expire
+            Thread main = Thread.currentThread();
+            Thread hook = new Thread(() -> {
+                worker.stop();
+                try {
+                    main.join(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(hook);
+            worker.run();
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // Already shutting down
+            }
+        } finally {
+            if (metricsServer != null) {
+                metricsServer.stop();
+            }
+        }
+    }
+
+    /**
+     * Claims and runs items until stopped, or with {@code drain} until the queue is empty.
+     */
+    public void run() throws InterruptedException {
+        long started = System.nanoTime();
+        LOG.info("Worker {} started: {} runs at a time, {} ms leases", queue.workerId(), concurrency, leaseMillis);
+
+        ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "queue-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, leaseMillis / 3);
+        heartbeats.scheduleAtFixedRate(this::renewAndReclaim, period, period, TimeUnit.MILLISECONDS);
+
+        // Each run gets a driver thread of its own, never a node pool thread; see StoryGraph.configureRuntime
+        List<Thread> drivers = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Thread driver = new Thread(this::drive, "queue-run-" + (i + 1));
+            driver.setDaemon(true);
+            driver.start();
+            drivers.add(driver);
+        }
+        for (Thread driver : drivers) {
+            driver.join();
+        }
+        heartbeats.shutdownNow();
+        printSummary(System.nanoTime() - started);
+    }
+
+    /**
+     * Stops claiming, cancels the runs in flight and returns their items to the queue.
+     */
+    public void stop() {
+        stopping = true;
+        active.values().forEach(RunControl::cancel);
+    }
+
+    private void drive() {
+        long pollMillis = MIN_POLL_MILLIS;
+        while (!stopping) {
+            WorkQueue.Lease lease;
+            try {
+                lease = queue.claim();
+                if (lease == null) {
+                    if (drain && queue.drained()) {
+                        return;
+                    }
+                    // Idle workers back off, so an empty queue costs a directory listing a second per thread at most
+                    Thread.sleep(pollMillis);
+                    pollMillis = Math.min(MAX_POLL_MILLIS, pollMillis * 2);
+                    continue;
+                }
+            } catch (IOException e) {
+                LOG.warn("Could not claim from the queue: {}", e.getMessage());
+                sleepQuietly(MAX_POLL_MILLIS);
+                continue;
+            } catch (InterruptedException e) {
+                return;
+            }
+            pollMillis = MIN_POLL_MILLIS;
+            process(lease);
+        }
+    }
+
+    private void process(WorkQueue.Lease lease) {
+        long start = System.nanoTime();
+        ObjectNode result = JSON.createObjectNode();
+        result.put("id", lease.id());
+        result.put("question", lease.question());
+        result.put("worker", queue.workerId());
+        result.put("attempt", lease.attempt() + 1);
+        RunControl run = RunControl.open(RunControl.newRunId(), deadlineMillis);
+        active.put(lease, run);
+        try {
+            Optional<State> finalState = graph.invoke(State.inputs(lease.question(), maxRetries, tokenBudget, run.runId()),
+                    RunnableConfig.builder().build());
+            if (finalState.isPresent()) {
+                result.put("status", "ok");
+                BatchRunner.putState(result, finalState.get());
+                succeeded.incrementAndGet();
+            } else {
+                result.put("status", "error");
+                result.put("error", "Graph execution completed but returned no final state.");
+                failed.incrementAndGet();
+            }
+        } catch (Exception e) {
+            if (RunControl.CANCELLED.equals(run.stopReason())) {
+                // Cancelled for a lost lease or a shutdown: the item is another worker's, or goes back to the queue
+                finishCancelled(lease);
+                return;
+            }
+            if (run.isStopped()) {
+                result.put("status", "stopped");
+                result.put("stopReason", run.stopReason());
+                stopped.incrementAndGet();
+            } else {
+                result.put("status", "error");
+                result.put("error", String.valueOf(e.getMessage()));
+                failed.incrementAndGet();
+            }
+        } finally {
+            active.remove(lease);
+            run.close();
+        }
+        result.put("latencyMs", (System.nanoTime() - start) / 1_000_000);
+        try {
+            queue.complete(lease, result.toString());
+        } catch (IOException e) {
+            // The lease expires and another worker runs the item again
+            LOG.warn("Could not store the result of {}: {}", lease.id(), e.getMessage());
+        }
+    }
+
+    private void finishCancelled(WorkQueue.Lease lease) {
+        if (!stopping) {
+            return;
+        }
+        try {
+            queue.release(lease);
+        } catch (IOException e) {
+            LOG.warn("Could not release {}: {}", lease.id(), e.getMessage());
+        }
+    }
+
+    private void renewAndReclaim() {
+        try {
+            active.forEach((lease, run) -> {
+                if (!queue.heartbeat(lease)) {
+                    LOG.warn("Lost the lease on {}, cancelling its run", lease.id());
+                    lostLeases.incrementAndGet();
+                    run.cancel();
+                }
+            });
+            queue.reclaimExpired(leaseMillis, maxAttempts);
+        } catch (Exception e) {
+            // An exception would cancel the schedule, and with it every later heartbeat
+            LOG.warn("Queue heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long runs = succeeded.get() + failed.get() + stopped.get();
+        System.err.println("\n--- Worker Summary ---");
+        System.err.printf("Worker %s: %d runs (%d ok, %d failed, %d stopped), %d leases lost, concurrency %d\n",
+                queue.workerId(), runs, succeeded.get(), failed.get(), stopped.get(), lostLeases.get(), concurrency);
+        System.err.printf("Wall time: %.2fs, throughput: %.2f runs/s\n", seconds, seconds > 0 ? runs / seconds : 0.0);
+        try {
+            WorkQueue.Stats stats = queue.stats();
+            System.err.printf("Queue: %d pending, %d leased, %d done; this worker claimed %d, reclaimed %d expired leases, lost %d claims to other workers, dropped %d duplicates\n",
+                    stats.pending(), stats.leased(), stats.done(), stats.claimed(), stats.reclaimed(),
+                    stats.collisions(), stats.duplicates());
+        } catch (IOException e) {
+            System.err.printf("Queue: unreadable (%s)\n", e.getMessage());
+        }
+        LlmCalls.Stats callStats = LlmCalls.stats();
+        System.err.printf("Model calls: %d (%d retries, %d failed)\n", callStats.calls(), callStats.retries(), callStats.failures());
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.langgraph;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed cache for deterministic LLM calls such as the temperature-0 evaluators.
+ * Entries are keyed by a SHA-256 of (key version, provider, model, temperature, full prompt) and held in a
+ * bounded in-memory LRU with a TTL, optionally backed by an on-disk tier that survives restarts. The provider keeps
+ * stub replies from being served to real runs sharing a cache directory; bump {@link #KEY_VERSION} whenever the
+ * format of cached replies changes, so stale disk entries are simply never looked up again.
+ */
+public final class ResponseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+    private static final long DEFAULT_TTL_SECONDS = 3600;
+
+    static final int KEY_VERSION = 2;
+
+    /**
+     * Point-in-time view of the cache counters.
+     */
+    public record Stats(long memoryHits, long diskHits, long misses, long evictions, long expirations, int size) {
+
+        public double hitRate() {
+            long total = memoryHits + diskHits + misses;
+            return total == 0 ? 0.0 : (double) (memoryHits + diskHits) / total;
+        }
+    }
+
+    private record Entry(String value, long expiresAtMillis) {
+    }
+
+    private static volatile ResponseCache shared = new ResponseCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_SECONDS, null);
+
+    private final String provider;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public ResponseCache(int maxEntries, long ttlSeconds, Path directory) {
+        this(ChatModelRegistry.ANTHROPIC, maxEntries, ttlSeconds, directory);
+    }
+
+    /**
+     * @param provider the model provider whose replies this cache holds, part of every key
+     */
+    public ResponseCache(String provider, int maxEntries, long ttlSeconds, Path directory) {
+        this.provider = provider;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.directory = directory;
+        // Access-ordered so the eldest entry is always the least recently used
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ResponseCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Replaces the shared cache with one sized from the given configuration.
+     * A {@code responseCacheMaxEntries} below zero disables caching.
+     */
+    public static synchronized void configure(Configuration configuration) {
+        int maxEntries = configuration.getResponseCacheMaxEntries() != 0
+                ? configuration.getResponseCacheMaxEntries()
+                : DEFAULT_MAX_ENTRIES;
+        long ttlSeconds = configuration.getResponseCacheTtlSeconds() > 0
+                ? configuration.getResponseCacheTtlSeconds()
+                : DEFAULT_TTL_SECONDS;
+        Path directory = configuration.getResponseCacheDirectory() != null
+                ? Path.of(configuration.getResponseCacheDirectory())
+                : null;
+        String provider = configuration.getModelProvider() != null
+                ? configuration.getModelProvider()
+                : ChatModelRegistry.ANTHROPIC;
+        shared = new ResponseCache(provider, Math.max(0, maxEntries), ttlSeconds, directory);
+    }
+
+    public static ResponseCache shared() {
+        return shared;
+    }
+
+    public static String key(String provider, String modelName, double temperature, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Integer.toString(KEY_VERSION).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(provider.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Double.toString(temperature).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Returns the cached reply for this call, or invokes the model and caches its reply.
+     */
+    public String getOrCompute(String modelName, double temperature, String prompt, Supplier<String> call) {
+        if (maxEntries == 0) {
+            return call.get();
+        }
+        String key = key(provider, modelName, temperature, prompt);
+
+        String cached = getFromMemory(key);
+        if (cached != null) {
+            memoryHits.increment();
+            return cached;
+        }
+        cached = getFromDisk(key);
+        if (cached != null) {
+            diskHits.increment();
+            putInMemory(key, cached);
+            return cached;
+        }
+
+        misses.increment();
+        String value = call.get();
+        putInMemory(key, value);
+        putOnDisk(key, value);
+        return value;
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(memoryHits.sum(), diskHits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size);
+    }
+
+    private String getFromMemory(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtMillis() < System.currentTimeMillis()) {
+                entries.remove(key);
+                expirations.increment();
+                return null;
+            }
+            return entry.value();
+        }
+    }
+
+    private void putInMemory(String key, String value) {
+        synchronized (entries) {
+            entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    private Path diskPath(String key) {
+        // Two-character fan-out keeps directories small on large caches
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private String getFromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path path = diskPath(key);
+        try {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            if (Files.getLastModifiedTime(path).toMillis() + ttlMillis < System.currentTimeMillis()) {
+                Files.deleteIfExists(path);
+                expirations.increment();
+                return null;
+            }
+            return Files.readString(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // A broken disk entry is just a miss
+            return null;
+        }
+    }
+
+    private void putOnDisk(String key, String value) {
+        if (directory == null) {
+            return;
+        }
+        Path path = diskPath(key);
+        try {
+            Files.createDirectories(path.getParent());
+            Path tmp = Files.createTempFile(path.getParent(), key, ".tmp");
+            Files.writeString(tmp, value, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOG.warn("Response cache: could not persist entry {}: {}", key, e.getMessage());
+        }
+    }
+}
@@ -2,75 +2,148 @@ package com.example.langgraph;
 
 import org.bsc.langgraph4j.StateGraph;
 import org.bsc.langgraph4j.action.AsyncEdgeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.CompletableFuture;
+import static org.bsc.langgraph4j.action.AsyncEdgeAction.edge_async;
 
+/**
+ * Routers only compare strings and flags, so they run inline on the calling thread
+ * and return already-completed futures instead of hopping to the node executor.
+ */
 public class Routers {
 
+    private static final Logger LOG = LoggerFactory.getLogger(Routers.class);
+
     /**
-     * Decides the next step based on the story's scariness feedback asynchronously.
+     * Decides the next step based on the story's scariness feedback inline.
      * If SCARY, proceed to funniness check. If NOT_SCARY, go create instructions.
      */
     public static AsyncEdgeAction<State> routeAfterScaryCheck() {
-        return state -> CompletableFuture.supplyAsync(() -> {
+        return edge_async(state -> {
             int retryCount = state.getRetryCount();
             int maxRetries = state.getMaxRetries();
             String scaryFeedback = state.getScaryCheckFeedback();
 
-            System.out.printf("\n--- Router: routeAfterScaryCheck --- (Current retry: %d/%d)\n", retryCount, maxRetries);
-            System.out.printf("  Scary feedback: %s\n", scaryFeedback);
+            LOG.debug("Router routeAfterScaryCheck (retry {}/{})", retryCount, maxRetries);
+            LOG.debug("Scary feedback: {}", scaryFeedback);
+
+            String end = RunBudget.endIfExhausted(state);
+            if (end != null) {
+                LOG.debug("Token budget exhausted. Ending graph with the best story so far.");
+                return end;
+            }
 
-            if ("SCARY".equals(scaryFeedback)) {
-                System.out.println("  Story is SCARY. Proceeding to funniness check.");
+            if (Verdicts.isPass(scaryFeedback, Verdicts.SCARY)) {
+                LOG.debug("Story is SCARY. Proceeding to funniness check.");
                 return "checkStoryFunnyNode";
             } else { // If NOT_SCARY or any unexpected feedback, always try to regenerate story with instructions
-                System.out.println("  Story is NOT_SCARY or feedback is unexpected. Generating instructions for story revision.");
+                LOG.debug("Story is NOT_SCARY or feedback is unexpected. Generating instructions for story revision.");
                 return "createStoryInstructionsNode";
             }
         });
     }
 
     /**
-     * Decides whether to continue regenerating the story or end if max retries reached asynchronously,
+     * Decides whether to continue regenerating the story or end if max retries reached inline,
      * based on the terminateFlag set by createStoryInstructions.
      */
     public static AsyncEdgeAction<State> routeAfterCreateInstructions() {
-        return state -> CompletableFuture.supplyAsync(() -> {
+        return edge_async(state -> {
             int retryCount = state.getRetryCount();
             int maxRetries = state.getMaxRetries();
             boolean terminateFlag = state.isTerminateFlag();
 
-            System.out.printf("\n--- Router: routeAfterCreateInstructions --- (Current retry: %d/%d)\n", retryCount, maxRetries);
+            LOG.debug("Router routeAfterCreateInstructions (retry {}/{})", retryCount, maxRetries);
+            String end = RunBudget.endIfExhausted(state);
+            if (end != null) {
+                LOG.debug("Token budget exhausted. Ending graph with the best story so far.");
+                return end;
+            }
             if (terminateFlag) {
-                System.out.println("  Terminate flag set by createStoryInstructions. Ending graph.");
+                LOG.debug("Terminate flag set by createStoryInstructions. Ending graph.");
                 return StateGraph.END;
             } else {
-                System.out.println("  Max retries not reached. Re-generating story with new instructions.");
+                LOG.debug("Max retries not reached. Re-generating story with new instructions.");
                 return "storyNode";
             }
         });
     }
 
    /**
-     * Decides the next step based on the story's funniness feedback asynchronously.
+     * Decides the next step based on the story's funniness feedback inline.
      * If funny, end. If not funny, go create instructions.
      */
     public static AsyncEdgeAction<State> routeAfterFunninessCheck() {
-        return state -> CompletableFuture.supplyAsync(() -> {
+        return edge_async(state -> {
+            int retryCount = state.getRetryCount();
+            int maxRetries = state.getMaxRetries();
+            String funnyFeedback = state.getFunninessCheckFeedback();
+
+            LOG.debug("Router routeAfterFunninessCheck (retry {}/{})", retryCount, maxRetries);
+            LOG.debug("Funniness feedback: {}", funnyFeedback);
+
+            if (Verdicts.isPass(funnyFeedback, Verdicts.FUNNY)) {
+                LOG.debug("Story is FUNNY. Ending graph.");
+                return StateGraph.END;
+            }
+            String end = RunBudget.endIfExhausted(state);
+            if (end != null) {
+                LOG.debug("Token budget exhausted. Ending graph with the best story so far.");
+                return end;
+            }
+            // If NOT_FUNNY or any unexpected feedback, always try to regenerate story with instructions
+            LOG.debug("Story is NOT_FUNNY or feedback is unexpected. Generating instructions for story revision.");
+            return "createStoryInstructionsNode";
+        });
+    }
+
+    /**
+     * Decides the next step after the parallel or combined scary/funny evaluation inline.
+     * If the story is both SCARY and FUNNY, end. Otherwise go create instructions,
+     * which is where either sequential check would have sent a failing story.
+     */
+    public static AsyncEdgeAction<State> routeAfterEvaluation() {
+        return edge_async(state -> {
             int retryCount = state.getRetryCount();
             int maxRetries = state.getMaxRetries();
+            String scaryFeedback = state.getScaryCheckFeedback();
             String funnyFeedback = state.getFunninessCheckFeedback();
 
-            System.out.printf("\n--- Router: routeAfterFunninessCheck --- (Current retry: %d/%d)\n", retryCount, maxRetries);
-            System.out.printf("  Funniness feedback: %s\n", funnyFeedback);
+            LOG.debug("Router routeAfterEvaluation (retry {}/{})", retryCount, maxRetries);
+            LOG.debug("Scary feedback: {}, funniness feedback: {}", scaryFeedback, funnyFeedback);
 
-            if ("FUNNY".equals(funnyFeedback)) {
-                System.out.println("  Story is FUNNY. Ending graph.");
+            if (Verdicts.isPass(scaryFeedback, Verdicts.SCARY) && Verdicts.isPass(funnyFeedback, Verdicts.FUNNY)) {
+                LOG.debug("Story is SCARY and FUNNY. Ending graph.");
                 return StateGraph.END;
-            } else { // If NOT_FUNNY or any unexpected feedback, always try to regenerate story with instructions
-                System.out.println("  Story is NOT_FUNNY or feedback is unexpected. Generating instructions for story revision.");
+            }
+            String end = RunBudget.endIfExhausted(state);
+            if (end != null) {
+                LOG.debug("Token budget exhausted. Ending graph with the best story so far.");
+                return end;
+            }
+            LOG.debug("Story failed at least one check. Generating instructions for story revision.");
+            return "createStoryInstructionsNode";
+        });
+    }
+
+    /**
+     * Used after the streaming story node: a story rejected mid-stream skips the evaluators
+     * and goes straight to revision; anything else proceeds to {@code evaluationNode}. A run whose story
+     * used up its token budget ends here instead.
+     */
+    public static AsyncEdgeAction<State> routeAfterStory(String evaluationNode) {
+        return edge_async(state -> {
+            String end = RunBudget.endIfExhausted(state);
+            if (end != null) {
+                LOG.debug("Token budget exhausted. Ending graph with the best story so far.");
+                return end;
+            }
+            if (StoryStopPolicy.BANNED.equals(state.getStoryStopReason())) {
+                LOG.debug("Router routeAfterStory: story rejected while streaming. Generating instructions for story revision.");
                 return "createStoryInstructionsNode";
             }
+            return evaluationNode;
         });
     }
-}
\ No newline at end of file
+}
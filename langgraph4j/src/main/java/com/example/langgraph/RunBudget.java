@@ -0,0 +1,115 @@
+package com.example.langgraph;
+
+import dev.langchain4j.model.output.TokenUsage;
+import org.bsc.langgraph4j.StateGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-run token budget. Every node that calls a model meters the tokens its calls report and adds them to
+ * {@link State#getTokensUsed()}. Evaluation nodes also remember the best story so far: the one that passed the
+ * most checks, the earliest on a tie. Once usage reaches {@link State#getTokenBudget()}, the node that crossed it
+ * puts the best story and its verdicts back in place, and the next router ends the run. This avoids paying for
+ * another revision pass that may not do better.
+ */
+public final class RunBudget {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RunBudget.class);
+
+    private static final LongAdder EXHAUSTED_RUNS = new LongAdder();
+
+    /**
+     * Tokens spent by one node's model calls, which may run on several threads.
+     */
+    public static final class Meter {
+        private final LongAdder tokens = new LongAdder();
+
+        /**
+         * Charges a reply and returns its text.
+         */
+        public String text(LlmCalls.Reply reply) {
+            add(reply.tokenUsage(), reply.text());
+            return reply.text();
+        }
+
+        /**
+         * Charges a call's reported usage, or an estimate from the reply when the client reported none.
+         */
+        public void add(TokenUsage usage, String reply) {
+            tokens.add(usage != null && usage.totalTokenCount() != null ? usage.totalTokenCount() : reply.length() / 4);
+        }
+
+        public void add(long estimatedTokens) {
+            tokens.add(estimatedTokens);
+        }
+
+        long tokens() {
+            return tokens.sum();
+        }
+    }
+
+    private RunBudget() {
+    }
+
+    /**
+     * Adds the node's metered tokens to the run's usage. A rated story ({@code story} non-null, with the verdicts it
+     * got so far) replaces the best story when it passed more checks. If usage reaches the budget, the delta puts
+     * the best story back and marks the run exhausted.
+     */
+    public static StateDelta settle(State state, StateDelta delta, Meter meter, String story,
+                                    String scaryFeedback, String funnyFeedback) {
+        String bestStory = state.getBestStory();
+        String bestScary = state.getBestScaryCheckFeedback();
+        String bestFunny = state.getBestFunninessCheckFeedback();
+        if (story != null && !story.isEmpty()
+                && (bestStory.isEmpty() || score(scaryFeedback, funnyFeedback) > score(bestScary, bestFunny))) {
+            bestStory = story;
+            bestScary = scaryFeedback;
+            bestFunny = funnyFeedback;
+            delta.bestStory(bestStory).bestScaryCheckFeedback(bestScary).bestFunninessCheckFeedback(bestFunny);
+        }
+
+        long used = state.getTokensUsed() + meter.tokens();
+        delta.tokensUsed((int) Math.min(Integer.MAX_VALUE, used));
+        if (state.getTokenBudget() > 0 && used >= state.getTokenBudget() && !state.isBudgetExhausted()) {
+            LOG.info("Token budget exhausted ({} of {} tokens), ending with the best story so far",
+                    used, state.getTokenBudget());
+            delta.budgetExhausted(true);
+            if (!bestStory.isEmpty()) {
+                delta.story(bestStory).scaryCheckFeedback(bestScary).funninessCheckFeedback(bestFunny);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Adds the node's metered tokens without rating a story, e.g. for the answer and story nodes.
+     */
+    public static StateDelta settle(State state, StateDelta delta, Meter meter) {
+        return settle(state, delta, meter, null, "", "");
+    }
+
+    /**
+     * For routers: where to go when the run is out of budget, or {@code null} to route as usual.
+     */
+    public static String endIfExhausted(State state) {
+        if (!state.isBudgetExhausted()) {
+            return null;
+        }
+        EXHAUSTED_RUNS.increment();
+        return StateGraph.END;
+    }
+
+    /**
+     * Runs ended early because their token budget ran out.
+     */
+    public static long exhaustedRuns() {
+        return EXHAUSTED_RUNS.sum();
+    }
+
+    private static int score(String scaryFeedback, String funnyFeedback) {
+        return (Verdicts.isPass(scaryFeedback, Verdicts.SCARY) ? 1 : 0) + (Verdicts.isPass(funnyFeedback, Verdicts.FUNNY) ? 1 : 0);
+    }
+}
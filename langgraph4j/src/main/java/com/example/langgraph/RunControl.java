@@ -0,0 +1,244 @@
+package com.example.langgraph;
+
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Deadline and cancellation for one graph run. The caller opens a control around {@code invoke}/{@code stream} and
+ * passes its id in the run's inputs ({@link State#getRunId()}); nodes wrapped with {@link #guarded} find it there.
+ * <p>
+ * While a node runs, its control is bound to the thread, and {@link NodeExecutor} carries it into every task the
+ * node submits, hedges and speculative candidates included. When the deadline passes or {@link #cancel()} is
+ * called, each of those tasks is cancelled, which interrupts its worker: a model call waiting for admission, backing
+ * off or blocked in the client is aborted, and a story stream is stopped. The node's future fails at once with a
+ * {@link RunCancelledException}, so the graph stops without visiting the rest of the loop, and any node started
+ * after the stop fails before doing work. A client call that ignores the interrupt still holds its worker until
+ * its own HTTP timeout.
+ */
+public final class RunControl implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RunControl.class);
+
+    public static final String DEADLINE = "deadline";
+    public static final String CANCELLED = "cancelled";
+
+    /**
+     * Why a run stopped early; {@link #reason()} is {@link #DEADLINE} or {@link #CANCELLED}.
+     */
+    public static final class RunCancelledException extends CancellationException {
+        private final String reason;
+
+        RunCancelledException(String runId, String reason) {
+            super(DEADLINE.equals(reason) ? "Run " + runId + " exceeded its deadline" : "Run " + runId + " was cancelled");
+            this.reason = reason;
+        }
+
+        public String reason() {
+            return reason;
+        }
+    }
+
+    /**
+     * Point-in-time view of the cancellation counters. {@code tasksCancelled} counts node tasks stopped while in
+     * flight; {@code tasksSkipped} counts tasks refused because their run had already stopped.
+     */
+    public record Stats(long deadlineExceeded, long cancelled, long tasksCancelled, long tasksSkipped) {
+    }
+
+    private static final Map<String, RunControl> RUNS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<RunControl> CURRENT = new ThreadLocal<>();
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "run-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final LongAdder DEADLINE_EXCEEDED = new LongAdder();
+    private static final LongAdder CANCELLED_RUNS = new LongAdder();
+    private static final LongAdder TASKS_CANCELLED = new LongAdder();
+    private static final LongAdder TASKS_SKIPPED = new LongAdder();
+
+    private final String runId;
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private final CopyOnWriteArrayList<Consumer<RunCancelledException>> stopHooks = new CopyOnWriteArrayList<>();
+    private final ScheduledFuture<?> deadline; // null without a deadline
+    private volatile RunCancelledException stopped;
+
+    private RunControl(String runId, long timeoutMillis) {
+        this.runId = runId;
+        this.deadline = timeoutMillis > 0 ? TIMER.schedule(() -> stop(DEADLINE), timeoutMillis, TimeUnit.MILLISECONDS) : null;
+    }
+
+    /**
+     * Opens the control for a run; {@code timeoutMillis} of 0 means no deadline. Close it once the run returns.
+     */
+    public static RunControl open(String runId, long timeoutMillis) {
+        RunControl run = new RunControl(runId, timeoutMillis);
+        RUNS.put(runId, run);
+        return run;
+    }
+
+    /**
+     * A fresh id for a run that has no thread id of its own.
+     */
+    public static String newRunId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Cancels the open run with the given id; returns false if there is none or it already stopped.
+     */
+    public static boolean cancel(String runId) {
+        RunControl run = RUNS.get(runId);
+        return run != null && run.cancel();
+    }
+
+    /**
+     * The control of the run the current thread is working for, or null outside a controlled run.
+     */
+    static RunControl current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds {@code run} to the current thread and returns the previous binding, to be restored afterwards.
+     */
+    static RunControl bind(RunControl run) {
+        RunControl previous = CURRENT.get();
+        if (run != null) {
+            CURRENT.set(run);
+        } else {
+            CURRENT.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Wraps a node so it runs under its run's control: refused once the run has stopped, and failed at once if the
+     * run stops while the node is in flight.
+     */
+    public static AsyncNodeAction<State> guarded(AsyncNodeAction<State> action) {
+        return state -> {
+            RunControl run = state.getRunId().isEmpty() ? null : RUNS.get(state.getRunId());
+            if (run == null) {
+                return action.apply(state);
+            }
+            if (run.stopped != null) {
+                TASKS_SKIPPED.increment();
+                return CompletableFuture.failedFuture(run.stopped);
+            }
+            RunControl previous = bind(run);
+            try {
+                return run.track(action.apply(state));
+            } finally {
+                bind(previous);
+            }
+        };
+    }
+
+    public String runId() {
+        return runId;
+    }
+
+    /**
+     * Stops the run; returns false if it had already stopped.
+     */
+    public boolean cancel() {
+        return stop(CANCELLED);
+    }
+
+    public boolean isStopped() {
+        return stopped != null;
+    }
+
+    /**
+     * {@link #DEADLINE}, {@link #CANCELLED}, or null while the run is live.
+     */
+    public String stopReason() {
+        RunCancelledException reason = stopped;
+        return reason != null ? reason.reason() : null;
+    }
+
+    /**
+     * Registers a future to be failed with the run's {@link RunCancelledException} when it stops. A future from
+     * {@link NodeExecutor#supplyInterruptibly} interrupts its worker when that happens.
+     */
+    <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        RunCancelledException reason = stopped;
+        if (reason != null) {
+            TASKS_SKIPPED.increment();
+            future.completeExceptionally(reason);
+            return future;
+        }
+        if (!future.isDone()) {
+            inFlight.add(future);
+            future.whenComplete((value, error) -> inFlight.remove(future));
+            // A stop between the check above and the add would otherwise miss this future
+            if (stopped != null && future.completeExceptionally(stopped)) {
+                TASKS_CANCELLED.increment();
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Calls {@code hook} when the run stops, for work that is not a future, e.g. a stream on the client's threads.
+     */
+    void onStop(Consumer<RunCancelledException> hook) {
+        stopHooks.add(hook);
+        RunCancelledException reason = stopped;
+        if (reason != null && stopHooks.remove(hook)) {
+            hook.accept(reason);
+        }
+    }
+
+    private boolean stop(String reason) {
+        RunCancelledException exception = new RunCancelledException(runId, reason);
+        synchronized (this) {
+            if (stopped != null) {
+                return false;
+            }
+            stopped = exception;
+        }
+        (DEADLINE.equals(reason) ? DEADLINE_EXCEEDED : CANCELLED_RUNS).increment();
+        LOG.info("Run {} stopped ({}), cancelling {} tasks in flight", runId, reason, inFlight.size());
+        for (CompletableFuture<?> future : inFlight) {
+            if (future.completeExceptionally(exception)) {
+                TASKS_CANCELLED.increment();
+            }
+        }
+        for (Consumer<RunCancelledException> hook : stopHooks) {
+            if (stopHooks.remove(hook)) {
+                hook.accept(exception);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (deadline != null) {
+            deadline.cancel(false);
+        }
+        RUNS.remove(runId, this);
+    }
+
+    public static Stats stats() {
+        return new Stats(DEADLINE_EXCEEDED.sum(), CANCELLED_RUNS.sum(), TASKS_CANCELLED.sum(), TASKS_SKIPPED.sum());
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.langgraph;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: the first caller for a key runs the work on its own thread, and callers
+ * arriving while it is in flight wait on the same result instead of starting their own.
+ * <p>
+ * The leader never hands the work to another pool and waits on it, so coalescing cannot tie up a bounded
+ * {@link NodeExecutor}: with one worker thread, two identical calls still both finish. A waiter that is interrupted
+ * simply leaves. If the leader itself is stopped, e.g. its run is cancelled, its work is interrupted with it; any
+ * callers still waiting then start the call again, one of them leading, so one cancelled run cannot fail the others.
+ * Nothing is kept once a flight lands; repeat calls after that are {@link ResponseCache}'s job.
+ */
+public final class SingleFlight<K, V> {
+
+    /**
+     * Point-in-time view of the coalescing counters. {@code coalesced} counts callers that joined an existing flight;
+     * {@code abandoned} counts flights whose leader was stopped, whether or not another caller took over.
+     */
+    public record Stats(long flights, long coalesced, long abandoned, int inFlight) {
+    }
+
+    // Completes a flight whose leader was stopped, telling its waiters to start the call again
+    private static final class LeaderLeft extends RuntimeException {
+        LeaderLeft() {
+            super("The leader of a shared call was stopped", null, false, false);
+        }
+    }
+
+    private final Map<K, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    private final class Flight {
+        private final K key;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        Flight(K key) {
+            this.key = key;
+        }
+
+        V lead(Supplier<V> work) {
+            V value;
+            try {
+                value = work.get();
+            } catch (RuntimeException | Error e) {
+                // Unlisted first, so a caller retrying after this starts a fresh flight
+                flights.remove(key, this);
+                if (Thread.currentThread().isInterrupted() || e instanceof CancellationException) {
+                    abandoned.increment();
+                    result.completeExceptionally(new LeaderLeft());
+                } else {
+                    result.completeExceptionally(e);
+                }
+                throw e;
+            }
+            flights.remove(key, this);
+            result.complete(value);
+            return value;
+        }
+    }
+
+    /**
+     * Returns the result of {@code work} for {@code key}, sharing it with every concurrent caller of the same key.
+     */
+    public V execute(K key, Supplier<V> work) {
+        boolean[] leader = new boolean[1];
+        Flight flight = flights.compute(key, (k, existing) -> {
+            if (existing != null) {
+                return existing;
+            }
+            leader[0] = true;
+            return new Flight(k);
+        });
+        if (leader[0]) {
+            started.increment();
+            return flight.lead(work);
+        }
+        coalesced.increment();
+
+        try {
+            return flight.result.get();
+        } catch (InterruptedException e) {
+            // Only this caller leaves; the leader's work carries on for everyone else
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Caller left a shared model call");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LeaderLeft) {
+                return execute(key, work);
+            }
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new RuntimeException(e.getCause());
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(started.sum(), coalesced.sum(), abandoned.sum(), flights.size());
+    }
+}
@@ -4,68 +4,206 @@ import org.bsc.langgraph4j.state.AgentState;
 
 import java.util.Map;
 
+/**
+ * Graph state for the story loop. langgraph4j builds a new State for every step, so each field is read
+ * from the backing map once, at construction, into a typed slot; getters then cost a field load rather
+ * than a map lookup and an {@code Optional}. Node updates are written as {@link StateDelta}s.
+ */
 public class State extends AgentState {
-    
+
+    public static final String QUESTION = "question";
+    public static final String ANSWER = "answer";
+    public static final String STORY = "story";
+    public static final String SCARY_CHECK_FEEDBACK = "scaryCheckFeedback";
+    public static final String SCARY_CHECK_REASON = "scaryCheckReason";
+    public static final String FUNNINESS_CHECK_FEEDBACK = "funninessCheckFeedback";
+    public static final String FUNNINESS_CHECK_REASON = "funninessCheckReason";
+    public static final String STORY_GENERATION_INSTRUCTIONS = "storyGenerationInstructions";
+    public static final String STORY_STOP_REASON = "storyStopReason";
+    public static final String RETRY_COUNT = "retryCount";
+    public static final String MAX_RETRIES = "maxRetries";
+    public static final String TERMINATE_FLAG = "terminateFlag";
+    public static final String TOKEN_BUDGET = "tokenBudget";
+    public static final String TOKENS_USED = "tokensUsed";
+    public static final String BUDGET_EXHAUSTED = "budgetExhausted";
+    public static final String BEST_STORY = "bestStory";
+    public static final String BEST_SCARY_CHECK_FEEDBACK = "bestScaryCheckFeedback";
+    public static final String BEST_FUNNINESS_CHECK_FEEDBACK = "bestFunninessCheckFeedback";
+    public static final String RUN_ID = "runId";
+
+    private static final int DEFAULT_MAX_RETRIES = 5;
+
+    private final String question;
+    private final String answer;
+    private final String story;
+    private final String scaryCheckFeedback;
+    private final String scaryCheckReason;
+    private final String funninessCheckFeedback;
+    private final String funninessCheckReason;
+    private final String storyGenerationInstructions;
+    private final String storyStopReason;
+    private final int retryCount;
+    private final int maxRetries;
+    private final boolean terminateFlag;
+    private final int tokenBudget;
+    private final int tokensUsed;
+    private final boolean budgetExhausted;
+    private final String bestStory;
+    private final String bestScaryCheckFeedback;
+    private final String bestFunninessCheckFeedback;
+    private final String runId;
+
     // Constructor
     public State(Map<String, Object> initData) {
         super(initData);
+        question = text(initData, QUESTION);
+        answer = text(initData, ANSWER);
+        story = text(initData, STORY);
+        scaryCheckFeedback = text(initData, SCARY_CHECK_FEEDBACK);
+        scaryCheckReason = text(initData, SCARY_CHECK_REASON);
+        funninessCheckFeedback = text(initData, FUNNINESS_CHECK_FEEDBACK);
+        funninessCheckReason = text(initData, FUNNINESS_CHECK_REASON);
+        storyGenerationInstructions = text(initData, STORY_GENERATION_INSTRUCTIONS);
+        storyStopReason = text(initData, STORY_STOP_REASON);
+        retryCount = number(initData, RETRY_COUNT, 0);
+        maxRetries = number(initData, MAX_RETRIES, DEFAULT_MAX_RETRIES);
+        terminateFlag = initData.get(TERMINATE_FLAG) instanceof Boolean flag && flag;
+        tokenBudget = number(initData, TOKEN_BUDGET, 0);
+        tokensUsed = number(initData, TOKENS_USED, 0);
+        budgetExhausted = initData.get(BUDGET_EXHAUSTED) instanceof Boolean flag && flag;
+        bestStory = text(initData, BEST_STORY);
+        bestScaryCheckFeedback = text(initData, BEST_SCARY_CHECK_FEEDBACK);
+        bestFunninessCheckFeedback = text(initData, BEST_FUNNINESS_CHECK_FEEDBACK);
+        runId = text(initData, RUN_ID);
+    }
+
+    private static String text(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        return value != null ? (String) value : "";
     }
-    
+
+    private static int number(Map<String, Object> data, String key, int defaultValue) {
+        return data.get(key) instanceof Integer value ? value : defaultValue;
+    }
+
     // Getters with default values
     public String getQuestion() {
-        return this.<String>value("question").orElse("");
+        return question;
     }
-    
+
     public String getAnswer() {
-        return this.<String>value("answer").orElse("");
+        return answer;
     }
-    
+
     public String getStory() {
-        return this.<String>value("story").orElse("");
+        return story;
     }
-    
+
     public String getScaryCheckFeedback() {
-        return this.<String>value("scaryCheckFeedback").orElse("");
+        return scaryCheckFeedback;
     }
-    
+
     public String getFunninessCheckFeedback() {
-        return this.<String>value("funninessCheckFeedback").orElse("");
+        return funninessCheckFeedback;
+    }
+
+    // Short explanations behind the last verdicts, empty when a check did not run or gave none
+    public String getScaryCheckReason() {
+        return scaryCheckReason;
     }
-    
+
+    public String getFunninessCheckReason() {
+        return funninessCheckReason;
+    }
+
     public String getStoryGenerationInstructions() {
-        return this.<String>value("storyGenerationInstructions").orElse("");
+        return storyGenerationInstructions;
     }
-    
+
+    // Why the streamed story was cut short ("length" or "banned"), empty if it completed
+    public String getStoryStopReason() {
+        return storyStopReason;
+    }
+
     public int getRetryCount() {
-        return this.<Integer>value("retryCount").orElse(0);
+        return retryCount;
     }
-    
+
     public int getMaxRetries() {
-        return this.<Integer>value("maxRetries").orElse(5);
+        return maxRetries;
     }
-    
+
     public boolean isTerminateFlag() {
-        return this.<Boolean>value("terminateFlag").orElse(false);
+        return terminateFlag;
     }
-    
+
+    // Model tokens this run may spend, 0 for no limit; see RunBudget
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    public int getTokensUsed() {
+        return tokensUsed;
+    }
+
+    // Set once tokensUsed reaches tokenBudget; the run then ends with its best story
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    // The story that passed the most checks so far, with the verdicts it got
+    public String getBestStory() {
+        return bestStory;
+    }
+
+    public String getBestScaryCheckFeedback() {
+        return bestScaryCheckFeedback;
+    }
+
+    public String getBestFunninessCheckFeedback() {
+        return bestFunninessCheckFeedback;
+    }
+
+    // Key of the run's RunControl, empty for a run without deadline or cancellation
+    public String getRunId() {
+        return runId;
+    }
+
+    /**
+     * Graph input for a new run: an immutable map handed straight to {@code invoke}/{@code stream}
+     * without copying. Keys left out read as their defaults.
+     */
+    public static Map<String, Object> inputs(String question, int maxRetries) {
+        return Map.of(QUESTION, question, MAX_RETRIES, maxRetries);
+    }
+
+    /**
+     * Graph input for a run limited to {@code tokenBudget} model tokens; 0 means unlimited.
+     */
+    public static Map<String, Object> inputs(String question, int maxRetries, int tokenBudget) {
+        return tokenBudget > 0
+                ? Map.of(QUESTION, question, MAX_RETRIES, maxRetries, TOKEN_BUDGET, tokenBudget)
+                : inputs(question, maxRetries);
+    }
+
+    /**
+     * Graph input for a run under the {@link RunControl} opened with {@code runId}; null for an uncontrolled run.
+     */
+    public static Map<String, Object> inputs(String question, int maxRetries, int tokenBudget, String runId) {
+        if (runId == null) {
+            return inputs(question, maxRetries, tokenBudget);
+        }
+        return tokenBudget > 0
+                ? Map.of(QUESTION, question, MAX_RETRIES, maxRetries, TOKEN_BUDGET, tokenBudget, RUN_ID, runId)
+                : Map.of(QUESTION, question, MAX_RETRIES, maxRetries, RUN_ID, runId);
+    }
+
+    public static Map<String, Object> inputs(String question) {
+        return inputs(question, DEFAULT_MAX_RETRIES);
+    }
+
     // Factory method for creating new instances
     public static State of(String question) {
-        return new State(Map.of(
-            "question", question,
-            "answer", "",
-            "story", "",
-            "scaryCheckFeedback", "",
-            "funninessCheckFeedback", "",
-            "storyGenerationInstructions", "",
-            "retryCount", 0,
-            "maxRetries", 5,
-            "terminateFlag", false
-        ));
-    }
-    
-    // Method to update values in the state
-    public State appendValue(String key, Object value) {
-        this.data().put(key, value);
-        return this;
-    }
-}
\ No newline at end of file
+        return new State(inputs(question));
+    }
+}
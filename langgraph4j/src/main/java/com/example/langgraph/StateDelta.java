@@ -0,0 +1,168 @@
+package com.example.langgraph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * A node's partial state update, held as a small array of entries rather than a hash table.
+ * It is a read-only {@code Map}, so langgraph4j merges it like any other update; the merge streams
+ * the entries straight off the array, without the table, nodes and spliterator a {@code HashMap} needs.
+ */
+public final class StateDelta extends AbstractMap<String, Object> {
+
+    // createStoryInstructions sets six fields; budget bookkeeping adds up to two, or six when it ends the run
+    private static final int INITIAL_CAPACITY = 8;
+
+    @SuppressWarnings("unchecked")
+    private Entry<String, Object>[] entries = new Entry[INITIAL_CAPACITY];
+    private int size;
+
+    private StateDelta() {
+    }
+
+    public static StateDelta create() {
+        return new StateDelta();
+    }
+
+    public StateDelta answer(String value) {
+        return set(State.ANSWER, value);
+    }
+
+    public StateDelta story(String value) {
+        return set(State.STORY, value);
+    }
+
+    public StateDelta scaryCheckFeedback(String value) {
+        return set(State.SCARY_CHECK_FEEDBACK, value);
+    }
+
+    public StateDelta scaryCheckReason(String value) {
+        return set(State.SCARY_CHECK_REASON, value);
+    }
+
+    public StateDelta funninessCheckFeedback(String value) {
+        return set(State.FUNNINESS_CHECK_FEEDBACK, value);
+    }
+
+    public StateDelta funninessCheckReason(String value) {
+        return set(State.FUNNINESS_CHECK_REASON, value);
+    }
+
+    public StateDelta storyGenerationInstructions(String value) {
+        return set(State.STORY_GENERATION_INSTRUCTIONS, value);
+    }
+
+    public StateDelta storyStopReason(String value) {
+        return set(State.STORY_STOP_REASON, value);
+    }
+
+    public StateDelta retryCount(int value) {
+        return set(State.RETRY_COUNT, value);
+    }
+
+    public StateDelta terminateFlag(boolean value) {
+        return set(State.TERMINATE_FLAG, value);
+    }
+
+    public StateDelta tokensUsed(int value) {
+        return set(State.TOKENS_USED, value);
+    }
+
+    public StateDelta budgetExhausted(boolean value) {
+        return set(State.BUDGET_EXHAUSTED, value);
+    }
+
+    public StateDelta bestStory(String value) {
+        return set(State.BEST_STORY, value);
+    }
+
+    public StateDelta bestScaryCheckFeedback(String value) {
+        return set(State.BEST_SCARY_CHECK_FEEDBACK, value);
+    }
+
+    public StateDelta bestFunninessCheckFeedback(String value) {
+        return set(State.BEST_FUNNINESS_CHECK_FEEDBACK, value);
+    }
+
+    private StateDelta set(String key, Object value) {
+        Entry<String, Object> entry = new SimpleImmutableEntry<>(key, value);
+        for (int i = 0; i < size; i++) {
+            // Keys are the State constants, so identity is enough
+            if (entries[i].getKey() == key) {
+                entries[i] = entry;
+                return this;
+            }
+        }
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        entries[size++] = entry;
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        return index >= 0 ? entries[index].getValue() : null;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+            if (entries[i].getKey().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        return entries[next++];
+                    }
+                };
+            }
+
+            @Override
+            public Spliterator<Entry<String, Object>> spliterator() {
+                return Spliterators.spliterator(entries, 0, size, Spliterator.DISTINCT | Spliterator.NONNULL);
+            }
+        };
+    }
+}
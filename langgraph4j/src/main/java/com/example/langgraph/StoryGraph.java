@@ -0,0 +1,242 @@
+package com.example.langgraph;
+
+import org.bsc.langgraph4j.CompileConfig;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.GraphInput;
+import org.bsc.langgraph4j.GraphStateException;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.bsc.langgraph4j.checkpoint.BaseCheckpointSaver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Builds the question/answer/story graph with feedback-driven retries.
+ * Shared by every entry point so they all run the same topology.
+ */
+public class StoryGraph {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StoryGraph.class);
+
+    // Each retry pass visits up to four nodes; langgraph4j's default cap of 25 steps
+    // cuts a five-retry run short before createStoryInstructions can terminate it
+    public static final int MAX_ITERATIONS = 200;
+
+    public static final String SEQUENTIAL_EVALUATION = "sequential";
+    public static final String PARALLEL_EVALUATION = "parallel";
+    public static final String COMBINED_EVALUATION = "combined";
+
+    /**
+     * Settings every entry point starts from; callers add their own flags on top.
+     */
+    public static Configuration.ConfigurationBuilder runtimeDefaults() {
+        return Configuration.builder()
+                .temperature(0.5)
+                .modelName("claude-3-haiku-20240307")
+                .storyTemperature(0.9)
+                .maxRetries(5) // Overall max_retries for story generation attempts
+                .requestTimeoutSeconds(60)
+                .cacheSystemPrompts(true);
+    }
+
+    /**
+     * Points every shared subsystem at {@code configuration}. Each entry point calls this once before compiling the
+     * graph, so a new subsystem is wired up here rather than in every main.
+     * <p>
+     * Runs block in {@code invoke()} while their nodes execute on {@link NodeExecutor}, so entry points drive runs
+     * from threads of their own; sharing a bounded node pool with the drivers could leave every worker waiting on
+     * node tasks queued behind it.
+     */
+    public static void configureRuntime(Configuration configuration) {
+        // Share one client per model/temperature across all node calls
+        ChatModelRegistry.configure(configuration);
+        // Run blocking node work on the configured executor instead of the common pool
+        NodeExecutor.configure(configuration);
+        ResponseCache.configure(configuration);
+        StoryPreScreen.configure(configuration);
+        // Shared admission control and retry policy for every model call
+        LlmCalls.configure(configuration);
+        // Per-role model choice with circuit breaking; routes default to modelName
+        ModelRouter.configure(configuration);
+    }
+
+    public static StateGraph<State> create() throws GraphStateException {
+        return create(Configuration.builder().build());
+    }
+
+    /**
+     * Builds the graph; {@code evaluationMode} selects sequential scary-then-funny checks (default),
+     * a single node that runs both checks concurrently ("parallel") or one that asks for both verdicts
+     * in a single call ("combined"), and {@code storyStreaming} swaps in the
+     * streaming story node. With {@code storyCandidates} above 1 the story node writes and evaluates
+     * several candidates itself and both of those options are ignored.
+     */
+    public static StateGraph<State> create(Configuration configuration) throws GraphStateException {
+        // Use State class
+        StateGraph<State> graph = new StateGraph<>(State::new);
+
+        // Add nodes using AsyncNodeAction
+        graph.addNode("claudeNode", node("claudeNode", Nodes::callClaude));
+        graph.addNode("createStoryInstructionsNode", node("createStoryInstructionsNode", Nodes::createStoryInstructions));
+
+        graph.addEdge(StateGraph.START, "storyNode");
+        graph.addEdge("claudeNode", "storyNode");
+
+        if (configuration.getStoryCandidates() > 1) {
+            // Candidates are evaluated inside the story node, so it routes straight on the verdicts
+            graph.addNode("storyNode", node("storyNode", Nodes.generateStoryCandidates(configuration.getStoryCandidates())));
+            graph.addConditionalEdges(
+                    "storyNode",
+                    Metrics.timedRouter("routeAfterEvaluation", Routers.routeAfterEvaluation()),
+                    Map.of(
+                            "createStoryInstructionsNode", "createStoryInstructionsNode", // If no candidate passed
+                            StateGraph.END, StateGraph.END // If a candidate is SCARY and FUNNY
+                    )
+            );
+        } else {
+            addStoryAndEvaluation(graph, configuration);
+        }
+
+        // Conditional edge after creating instructions (decides whether to loop or end)
+        graph.addConditionalEdges(
+                "createStoryInstructionsNode",
+                Metrics.timedRouter("routeAfterCreateInstructions", Routers.routeAfterCreateInstructions()),
+                Map.of(
+                        "storyNode", "storyNode", // Loop back to generate story with instructions
+                        StateGraph.END, StateGraph.END // If max retries reached
+                )
+        );
+
+        return graph;
+    }
+
+    private static void addStoryAndEvaluation(StateGraph<State> graph, Configuration configuration) throws GraphStateException {
+        if (configuration.isStoryStreaming()) {
+            // Returns at once with a token stream, so StoryStreamHandler times it instead
+            graph.addNode("storyNode", RunControl.guarded(Nodes.generateStoryStreaming(StoryStopPolicy.from(configuration))));
+        } else {
+            graph.addNode("storyNode", node("storyNode", Nodes::generateStory));
+        }
+
+        String evaluationMode = configuration.getEvaluationMode();
+        boolean singleNode = PARALLEL_EVALUATION.equals(evaluationMode) || COMBINED_EVALUATION.equals(evaluationMode);
+        String evaluationNode = singleNode ? "evaluateStoryNode" : "checkScaryNode";
+        if (configuration.isStoryStreaming() || configuration.getRunTokenBudget() > 0) {
+            // A story rejected mid-stream skips the evaluators; a run out of budget skips them too and ends
+            graph.addConditionalEdges(
+                    "storyNode",
+                    Metrics.timedRouter("routeAfterStory", Routers.routeAfterStory(evaluationNode)),
+                    Map.of(
+                            evaluationNode, evaluationNode,
+                            "createStoryInstructionsNode", "createStoryInstructionsNode",
+                            StateGraph.END, StateGraph.END
+                    )
+            );
+        } else {
+            graph.addEdge("storyNode", evaluationNode);
+        }
+
+        if (singleNode) {
+            if (COMBINED_EVALUATION.equals(evaluationMode)) {
+                graph.addNode("evaluateStoryNode", node("evaluateStoryNode", Nodes::checkStoryCombined));
+            } else {
+                graph.addNode("evaluateStoryNode", node("evaluateStoryNode", Nodes::checkStoryScaryAndFunny));
+            }
+
+            // Conditional edge after the combined checks
+            graph.addConditionalEdges(
+                    "evaluateStoryNode",
+                    Metrics.timedRouter("routeAfterEvaluation", Routers.routeAfterEvaluation()),
+                    Map.of(
+                            "createStoryInstructionsNode", "createStoryInstructionsNode", // If either check failed
+                            StateGraph.END, StateGraph.END // If SCARY and FUNNY
+                    )
+            );
+        } else {
+            addSequentialEvaluation(graph);
+        }
+    }
+
+    private static void addSequentialEvaluation(StateGraph<State> graph) throws GraphStateException {
+        graph.addNode("checkScaryNode", node("checkScaryNode", Nodes::checkStoryScary));
+        graph.addNode("checkStoryFunnyNode", node("checkStoryFunnyNode", Nodes::checkStoryFunny));
+
+        // Conditional edge after scary check
+        graph.addConditionalEdges(
+                "checkScaryNode",
+                Metrics.timedRouter("routeAfterScaryCheck", Routers.routeAfterScaryCheck()),
+                Map.of(
+                        "checkStoryFunnyNode", "checkStoryFunnyNode", // If SCARY, go to funniness check
+                        "createStoryInstructionsNode", "createStoryInstructionsNode", // If NOT_SCARY, go to generate instructions
+                        StateGraph.END, StateGraph.END // If the run's token budget is spent
+                )
+        );
+
+        // Conditional edge after funniness check
+        graph.addConditionalEdges(
+                "checkStoryFunnyNode",
+                Metrics.timedRouter("routeAfterFunninessCheck", Routers.routeAfterFunninessCheck()),
+                Map.of(
+                        "createStoryInstructionsNode", "createStoryInstructionsNode", // If NOT_FUNNY, go to generate instructions
+                        StateGraph.END, StateGraph.END // If FUNNY
+                )
+        );
+    }
+
+    // Every node is timed, and runs under its run's deadline and cancellation
+    private static AsyncNodeAction<State> node(String name, AsyncNodeAction<State> action) {
+        return Metrics.timedNode(name, RunControl.guarded(action));
+    }
+
+    public static CompiledGraph<State> compile() throws GraphStateException {
+        return compile(Configuration.builder().build());
+    }
+
+    public static CompiledGraph<State> compile(Configuration configuration) throws GraphStateException {
+        return compile(configuration, null);
+    }
+
+    /**
+     * Compiles the graph with a checkpoint saver, so the state is saved after every node and a run can be
+     * resumed by thread id. A run's checkpoints are released once it reaches END; only unfinished runs keep them.
+     */
+    public static CompiledGraph<State> compile(Configuration configuration, BaseCheckpointSaver checkpointSaver) throws GraphStateException {
+        CompileConfig.Builder compileConfig = CompileConfig.builder();
+        if (checkpointSaver != null) {
+            compileConfig.checkpointSaver(checkpointSaver).releaseThread(true);
+        }
+        CompiledGraph<State> compiledGraph = create(configuration).compile(compileConfig.build());
+        compiledGraph.setMaxIterations(MAX_ITERATIONS);
+        return compiledGraph;
+    }
+
+    /**
+     * True if {@code threadId} has an unfinished run for {@code question} to resume. Checkpoints the thread holds
+     * for a different question, e.g. after the input file was edited, are released, so the question starts fresh
+     * instead of inheriting another question's answer and story.
+     */
+    public static boolean canResume(LogCheckpointSaver checkpoints, String threadId, String question) throws Exception {
+        if (checkpoints == null || !checkpoints.pendingThreads().contains(threadId)) {
+            return false;
+        }
+        RunnableConfig thread = RunnableConfig.builder().threadId(threadId).build();
+        Object saved = checkpoints.get(thread).map(checkpoint -> checkpoint.getState().get(State.QUESTION)).orElse(null);
+        if (question.equals(saved)) {
+            return true;
+        }
+        LOG.warn("Thread '{}' was checkpointed for a different question; starting it over", threadId);
+        checkpoints.release(thread);
+        return false;
+    }
+
+    /**
+     * Continues an unfinished run from its last checkpoint, skipping every node that already completed.
+     */
+    public static Optional<State> resume(CompiledGraph<State> compiledGraph, String threadId) {
+        return compiledGraph.invoke(GraphInput.resume(), RunnableConfig.builder().threadId(threadId).build());
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.langgraph;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process lexical pre-screen in front of the scary and funny evaluators. A story's score for a criterion is its
+ * density of cue words (matched by stem) per 100 words; a story well below the threshold is rejected with
+ * {@code NOT_SCARY} or {@code NOT_FUNNY} without a model call, and anything else is deferred to the LLM.
+ * The screen never passes a story, so a wrong call costs one revision rather than a bad result, and
+ * {@link PreScreenCalibration} measures how often that happens on recorded runs.
+ * <p>
+ * With {@code preScreenRecordFile} set, every verdict the model makes is appended there with its story, whether or
+ * not the screen is on, giving the calibration tool failing stories that batch results no longer hold.
+ */
+public final class StoryPreScreen {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StoryPreScreen.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final double DEFAULT_SCARY_THRESHOLD = 1.0;
+    private static final double DEFAULT_FUNNY_THRESHOLD = 0.5;
+    // Shorter stories say too little through cue density to be rejected on it
+    static final int MIN_WORDS = 20;
+
+    private static final List<String> SCARY_CUES = List.of(
+            "afraid", "blood", "bone", "cold", "corpse", "creak", "crypt", "dark", "dead", "death", "demon", "dread",
+            "eerie", "fear", "ghost", "ghoul", "grave", "grim", "haunt", "horror", "howl", "midnight", "monster",
+            "nightmare", "scream", "shadow", "shiver", "shriek", "sinister", "skull", "terror", "trembl", "whisper");
+    private static final List<String> FUNNY_CUES = List.of(
+            "absurd", "banana", "chuckl", "clown", "comic", "duck", "funny", "giggl", "grinn", "guffaw", "hilari",
+            "joke", "laugh", "oops", "pants", "prank", "ridiculous", "rubber", "silly", "slipp", "snort",
+            "squeak", "tickl", "wink", "wobbl");
+
+    /**
+     * Cue words found in a story, for one criterion.
+     */
+    public record Score(int words, int cues) {
+
+        public double density() {
+            return words == 0 ? 0.0 : 100.0 * cues / words;
+        }
+    }
+
+    /**
+     * Point-in-time view of the screen's counters.
+     */
+    public record Stats(long avoidedScary, long avoidedFunny, long deferred) {
+
+        public long avoided() {
+            return avoidedScary + avoidedFunny;
+        }
+    }
+
+    private static volatile StoryPreScreen shared = new StoryPreScreen(false, DEFAULT_SCARY_THRESHOLD, DEFAULT_FUNNY_THRESHOLD, null);
+
+    private final boolean enabled;
+    private final double scaryThreshold;
+    private final double funnyThreshold;
+    private final Path recordFile;
+
+    private final LongAdder avoidedScary = new LongAdder();
+    private final LongAdder avoidedFunny = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+
+    public StoryPreScreen(boolean enabled, double scaryThreshold, double funnyThreshold, Path recordFile) {
+        this.enabled = enabled;
+        this.scaryThreshold = scaryThreshold;
+        this.funnyThreshold = funnyThreshold;
+        this.recordFile = recordFile;
+    }
+
+    /**
+     * Replaces the shared screen with one built from the given configuration; it is off unless {@code preScreen} is set.
+     */
+    public static synchronized void configure(Configuration configuration) {
+        shared = new StoryPreScreen(configuration.isPreScreen(),
+                configuration.getPreScreenScaryThreshold() > 0 ? configuration.getPreScreenScaryThreshold() : DEFAULT_SCARY_THRESHOLD,
+                configuration.getPreScreenFunnyThreshold() > 0 ? configuration.getPreScreenFunnyThreshold() : DEFAULT_FUNNY_THRESHOLD,
+                configuration.getPreScreenRecordFile() != null ? Path.of(configuration.getPreScreenRecordFile()) : null);
+    }
+
+    public static StoryPreScreen shared() {
+        return shared;
+    }
+
+    /**
+     * Returns {@code NOT_<positive>} when the story confidently fails the criterion, or {@code null} to ask the model.
+     */
+    public String screen(String story, String positive) {
+        if (!enabled) {
+            return null;
+        }
+        String verdict = verdict(story, positive, threshold(positive));
+        if (verdict == null) {
+            deferred.increment();
+        } else if (Verdicts.SCARY.equals(positive)) {
+            avoidedScary.increment();
+        } else {
+            avoidedFunny.increment();
+        }
+        return verdict;
+    }
+
+    /**
+     * Appends a model-made verdict to the record file, if there is one. Recording is for calibration runs, so lines
+     * are written one at a time under a lock rather than buffered.
+     */
+    public void record(String story, String positive, String verdict) {
+        if (recordFile == null || Verdicts.parse(verdict, positive).isEmpty()) {
+            return;
+        }
+        ObjectNode line = JSON.createObjectNode();
+        line.put("criterion", positive);
+        line.put("verdict", verdict);
+        line.put("story", story);
+        synchronized (this) {
+            try {
+                Files.writeString(recordFile, line + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                LOG.warn("Could not record verdict to {}: {}", recordFile, e.getMessage());
+            }
+        }
+    }
+
+    public double threshold(String positive) {
+        return Verdicts.SCARY.equals(positive) ? scaryThreshold : funnyThreshold;
+    }
+
+    public Stats stats() {
+        return new Stats(avoidedScary.sum(), avoidedFunny.sum(), deferred.sum());
+    }
+
+    /**
+     * The screen's decision at a given threshold, shared with the calibration tool.
+     */
+    static String verdict(String story, String positive, double threshold) {
+        if (story == null || story.isBlank()) {
+            return "NOT_" + positive;
+        }
+        Score score = score(story, positive);
+        if (score.words() < MIN_WORDS || score.density() >= threshold) {
+            return null;
+        }
+        return "NOT_" + positive;
+    }
+
+    /**
+     * Counts words and cue words in one pass; a word is a cue when it starts with one of the criterion's stems.
+     */
+    public static Score score(String story, String positive) {
+        List<String> cues = Verdicts.SCARY.equals(positive) ? SCARY_CUES : FUNNY_CUES;
+        int words = 0;
+        int hits = 0;
+        int length = story.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetter(story.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetter(story.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                words++;
+                if (isCue(story, start, i, cues)) {
+                    hits++;
+                }
+            }
+        }
+        return new Score(words, hits);
+    }
+
+    private static boolean isCue(String story, int start, int end, List<String> cues) {
+        for (String cue : cues) {
+            if (end - start >= cue.length() && story.regionMatches(true, start, cue, 0, cue.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.langgraph;
+
+import java.util.regex.Pattern;
+
+/**
+ * Stop conditions checked against a story while it streams in.
+ * Reaching {@code maxChars} truncates the story and keeps it; matching {@code bannedPattern} rejects it
+ * outright so it goes straight back for revision without paying for the rest of the stream or the evaluators.
+ *
+ * @param maxChars      length cap in characters, 0 for none
+ * @param bannedPattern pattern that rejects the story as soon as it appears, or null for none
+ */
+public record StoryStopPolicy(int maxChars, Pattern bannedPattern) {
+
+    public static final String LENGTH = "length";
+    public static final String BANNED = "banned";
+
+    public static final StoryStopPolicy NONE = new StoryStopPolicy(0, null);
+
+    public static StoryStopPolicy from(Configuration configuration) {
+        String banned = configuration.getStoryBannedPattern();
+        return new StoryStopPolicy(
+                Math.max(0, configuration.getStoryMaxChars()),
+                banned != null && !banned.isEmpty() ? Pattern.compile(banned) : null);
+    }
+
+    /**
+     * Returns why generation should stop for the text streamed so far, or null to keep going.
+     */
+    public String check(CharSequence text) {
+        if (bannedPattern != null && bannedPattern.matcher(text).find()) {
+            return BANNED;
+        }
+        if (maxChars > 0 && text.length() >= maxChars) {
+            return LENGTH;
+        }
+        return null;
+    }
+
+    /**
+     * Output token limit to request from the model so it cannot run far past the length cap, or 0 for the default.
+     */
+    public int maxTokens() {
+        // Roughly four characters per token; leave headroom so the character cap is what normally triggers
+        return maxChars > 0 ? Math.max(16, maxChars / 3) : 0;
+    }
+}
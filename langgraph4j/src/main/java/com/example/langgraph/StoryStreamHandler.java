@@ -0,0 +1,138 @@
+package com.example.langgraph;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import org.bsc.async.AsyncGenerator;
+import org.bsc.async.AsyncGeneratorQueue;
+import org.bsc.langgraph4j.streaming.StreamingOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bridges a streaming chat model into the graph: every token becomes a {@link StreamingOutput} on an
+ * embedded generator, and the finished story becomes the generator's result, which langgraph4j merges
+ * into the state like any other node update.
+ * <p>
+ * When the {@link StoryStopPolicy} fires the node completes immediately with what it has and the handler
+ * throws from {@code onNext} to abort the stream. langchain4j 0.36 has no stream cancellation, so late tokens
+ * from a client that keeps reading are simply dropped; the policy's token limit bounds what is billed.
+ * <p>
+ * The node itself returns as soon as the stream is set up, so the handler records the node's duration in
+ * {@link Metrics} when the story is finished or fails, and charges the run's {@link RunBudget}: the usage the
+ * client reports on completion, or an estimate from the prompt and streamed text when the stream was stopped.
+ */
+public class StoryStreamHandler implements StreamingResponseHandler<AiMessage> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StoryStreamHandler.class);
+
+    /**
+     * Thrown from {@code onNext} to tell the model client to stop streaming.
+     */
+    static final class StopGeneration extends RuntimeException {
+        StopGeneration(String reason) {
+            super("Story generation stopped: " + reason, null, false, false);
+        }
+    }
+
+    private final String nodeId;
+    private final State state;
+    private final StoryStopPolicy policy;
+    private final String prompt;
+    private final BlockingQueue<AsyncGenerator.Data<StreamingOutput<State>>> queue = new LinkedBlockingQueue<>();
+    private final StringBuilder text = new StringBuilder();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final long startedNanos = System.nanoTime();
+
+    public StoryStreamHandler(String nodeId, State state, StoryStopPolicy policy, String prompt) {
+        this.nodeId = nodeId;
+        this.state = state;
+        this.policy = policy;
+        this.prompt = prompt;
+    }
+
+    /**
+     * The generator to return from the node under any key; it yields tokens and finishes with the state update.
+     */
+    public AsyncGenerator<StreamingOutput<State>> generator() {
+        return new AsyncGeneratorQueue.Generator<>(queue);
+    }
+
+    @Override
+    public void onNext(String token) {
+        String reason;
+        synchronized (text) {
+            if (finished.get()) {
+                throw new StopGeneration("already finished");
+            }
+            text.append(token);
+            reason = policy.check(text);
+        }
+        queue.add(AsyncGenerator.Data.of(new StreamingOutput<>(token, nodeId, state)));
+        if (reason != null) {
+            finish(reason, null);
+            throw new StopGeneration(reason);
+        }
+    }
+
+    @Override
+    public void onComplete(Response<AiMessage> response) {
+        finish("", response != null ? response.tokenUsage() : null);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        // Our own StopGeneration comes back here from clients that catch handler exceptions
+        if (finished.compareAndSet(false, true)) {
+            Metrics.recordNode(nodeId, System.nanoTime() - startedNanos, false);
+            queue.add(AsyncGenerator.Data.error(error));
+        }
+    }
+
+    /**
+     * Ends the node with {@code error} when its run stops; the client is told to stop at its next token.
+     */
+    public void cancel(Throwable error) {
+        if (finished.compareAndSet(false, true)) {
+            Metrics.recordNode(nodeId, System.nanoTime() - startedNanos, "cancelled");
+            queue.add(AsyncGenerator.Data.error(error));
+        }
+    }
+
+    private void finish(String stopReason, TokenUsage usage) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        String story;
+        synchronized (text) {
+            story = text.toString();
+        }
+        int streamed = story.length();
+        if (StoryStopPolicy.LENGTH.equals(stopReason)) {
+            story = story.substring(0, Math.min(story.length(), policy.maxChars()));
+        } else if (StoryStopPolicy.BANNED.equals(stopReason)) {
+            story = "";
+        }
+        if (!stopReason.isEmpty()) {
+            LOG.info("Story stream stopped early ({}) after {} chars", stopReason, streamed);
+        }
+        Metrics.recordNode(nodeId, System.nanoTime() - startedNanos, true);
+
+        RunBudget.Meter meter = new RunBudget.Meter();
+        if (usage != null && usage.totalTokenCount() != null) {
+            meter.add(usage.totalTokenCount());
+        } else {
+            meter.add((prompt.length() + streamed) / 4);
+        }
+        StateDelta delta = StateDelta.create()
+                .story(story)
+                .storyStopReason(stopReason)
+                .storyGenerationInstructions(""); // Clear instructions after using them
+        queue.add(AsyncGenerator.Data.done(RunBudget.settle(state, delta, meter)));
+    }
+}
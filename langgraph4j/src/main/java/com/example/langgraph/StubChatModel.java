@@ -0,0 +1,213 @@
+package com.example.langgraph;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.anthropic.internal.client.AnthropicHttpException;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deterministic in-process stand-in for the Anthropic chat model, selected with
+ * {@code Configuration.modelProvider = "stub"}. Replies follow simple rules keyed on the prompt
+ * (a SCARY/NOT_SCARY or FUNNY/NOT_FUNNY verdict with a reason, both as JSON, a two-paragraph story, or an answer), so the whole graph
+ * runs offline. Latency, token counts and failures follow the configured {@link StubModelProfile}.
+ */
+public class StubChatModel implements ChatLanguageModel {
+
+    public static final String PROVIDER = "stub";
+
+    private static final String[] STORY_WORDS = {
+            "the", "attic", "creaked", "while", "a", "shadow", "whispered", "and", "the", "duck",
+            "squeaked", "in", "the", "dark", "candle", "flickered", "giggling", "ghost", "tiptoed", "past",
+            "dusty", "trunks", "cold", "breath", "laughed", "nervously", "at", "midnight", "someone", "knocked"
+    };
+
+    private final String modelName;
+    private final double temperature;
+    private final StubModelProfile profile;
+    private final AtomicLong calls = new AtomicLong();
+
+    public StubChatModel(String modelName, double temperature, StubModelProfile profile) {
+        this.modelName = modelName;
+        this.temperature = temperature;
+        this.profile = profile != null ? profile : StubModelProfile.builder().build();
+    }
+
+    /**
+     * A reply that has passed the failure rolls, with the latency before its first token.
+     */
+    record Call(String reply, TokenUsage tokenUsage, long firstTokenMillis) {
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        Call call = start(messages);
+        sleep(call.firstTokenMillis() + profile.getPerOutputTokenMillis() * call.tokenUsage().outputTokenCount());
+        return Response.from(AiMessage.from(call.reply()), call.tokenUsage(), FinishReason.STOP);
+    }
+
+    /**
+     * Rolls for failures and prepares the reply without sleeping for its generation time.
+     */
+    Call start(List<ChatMessage> messages) {
+        String prompt = promptText(messages);
+        long callIndex = calls.getAndIncrement();
+        // Failures and latency vary per call but replay identically for the same seed and call order
+        SplittableRandom callRandom = new SplittableRandom(profile.getSeed() * 0x9E3779B97F4A7C15L + callIndex);
+
+        List<String> failingModels = profile.getFailingModels();
+        if (failingModels != null && failingModels.contains(modelName)) {
+            throw new AnthropicHttpException(529, "{\"type\":\"error\",\"error\":{\"type\":\"overloaded_error\",\"message\":\"stub model down\"}}");
+        }
+        double roll = callRandom.nextDouble();
+        if (roll < profile.getRateLimitErrorRate()) {
+            throw new AnthropicHttpException(429, "{\"type\":\"error\",\"error\":{\"type\":\"rate_limit_error\",\"message\":\"stub rate limit\"}}");
+        }
+        roll -= profile.getRateLimitErrorRate();
+        if (roll < profile.getOverloadedErrorRate()) {
+            throw new AnthropicHttpException(529, "{\"type\":\"error\",\"error\":{\"type\":\"overloaded_error\",\"message\":\"stub overloaded\"}}");
+        }
+        roll -= profile.getOverloadedErrorRate();
+        if (roll < profile.getTimeoutRate()) {
+            sleep(profile.getTimeoutMillis());
+            throw new RuntimeException(new SocketTimeoutException("stub timeout after " + profile.getTimeoutMillis() + " ms"));
+        }
+
+        String reply = reply(prompt, callIndex);
+        TokenUsage tokenUsage = new TokenUsage(estimateTokens(prompt), estimateTokens(reply));
+        return new Call(reply, tokenUsage, sampleLatency(callRandom));
+    }
+
+    StubModelProfile profile() {
+        return profile;
+    }
+
+    public String modelName() {
+        return modelName;
+    }
+
+    public double temperature() {
+        return temperature;
+    }
+
+    private String reply(String prompt, long callIndex) {
+        List<String> script = profile.getScript();
+        if (script != null && !script.isEmpty()) {
+            return script.get((int) (callIndex % script.size()));
+        }
+
+        // Verdicts depend only on the prompt, so identical evaluations always agree
+        double verdict = unitHash(prompt);
+        if (prompt.contains("Is this story scary and funny?")) {
+            // Independent draws for the two criteria, still fixed per prompt
+            boolean scary = unitHash(prompt + "#scary") < profile.getScaryRate();
+            boolean funny = unitHash(prompt + "#funny") < profile.getFunnyRate();
+            return "{\"scary\": \"" + (scary ? "SCARY" : "NOT_SCARY") + "\", \"scaryReason\": \"stub verdict\", "
+                    + "\"funny\": \"" + (funny ? "FUNNY" : "NOT_FUNNY") + "\", \"funnyReason\": \"stub verdict\"}";
+        }
+        if (prompt.contains("Is this story scary?")) {
+            return (verdict < profile.getScaryRate() ? "SCARY" : "NOT_SCARY") + " - stub verdict";
+        }
+        if (prompt.contains("Is this story funny?")) {
+            return (verdict < profile.getFunnyRate() ? "FUNNY" : "NOT_FUNNY") + " - stub verdict";
+        }
+        if (prompt.contains("storyteller")) {
+            return story(prompt, callIndex);
+        }
+        return "A stub answer to: " + prompt.substring(0, Math.min(prompt.length(), 80));
+    }
+
+    private String story(String prompt, long callIndex) {
+        // Sampled stories differ from call to call, like a real model above temperature 0
+        long variant = temperature > 0 ? callIndex * 0x9E3779B97F4A7C15L : 0;
+        SplittableRandom words = new SplittableRandom(profile.getSeed() ^ prompt.hashCode() ^ variant);
+        StringBuilder story = new StringBuilder();
+        int half = Math.max(1, profile.getStoryTokens() / 2);
+        for (int paragraph = 0; paragraph < 2; paragraph++) {
+            if (paragraph > 0) {
+                story.append("\n\n");
+            }
+            for (int i = 0; i < half; i++) {
+                if (i > 0) {
+                    story.append(' ');
+                }
+                story.append(STORY_WORDS[words.nextInt(STORY_WORDS.length)]);
+            }
+            story.append('.');
+        }
+        return story.toString();
+    }
+
+    private long sampleLatency(SplittableRandom random) {
+        Map<String, Double> scales = profile.getModelLatencyScale();
+        long base = (long) (profile.getLatencyMillis() * (scales != null ? scales.getOrDefault(modelName, 1.0) : 1.0));
+        if (base <= 0) {
+            return 0;
+        }
+        return switch (profile.getLatencyDistribution() != null ? profile.getLatencyDistribution() : "fixed") {
+            case "uniform" -> Math.max(0, base - profile.getLatencyJitterMillis()
+                    + (long) (random.nextDouble() * 2 * profile.getLatencyJitterMillis()));
+            case "lognormal" -> (long) (base * Math.exp(profile.getLatencySigma() * gaussian(random)));
+            default -> base;
+        };
+    }
+
+    // Box-Muller; SplittableRandom has no nextGaussian on Java 17
+    private static double gaussian(SplittableRandom random) {
+        double u1 = 1.0 - random.nextDouble();
+        double u2 = random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+    }
+
+    private double unitHash(String text) {
+        long h = profile.getSeed() ^ text.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    static int estimateTokens(String text) {
+        return Math.max(1, (text.length() + 3) / 4);
+    }
+
+    private static String promptText(List<ChatMessage> messages) {
+        StringBuilder prompt = new StringBuilder();
+        for (ChatMessage message : messages) {
+            if (prompt.length() > 0) {
+                prompt.append("\n\n");
+            }
+            if (message instanceof SystemMessage system) {
+                prompt.append(system.text());
+            } else if (message instanceof UserMessage user) {
+                prompt.append(user.singleText());
+            } else if (message instanceof AiMessage ai && ai.text() != null) {
+                prompt.append(ai.text());
+            }
+        }
+        return prompt.toString();
+    }
+
+    static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // Behave like an aborted HTTP call: surface the interruption to the caller
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Stub model call interrupted", e);
+        }
+    }
+}
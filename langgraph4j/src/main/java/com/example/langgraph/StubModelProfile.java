@@ -0,0 +1,100 @@
+package com.example.langgraph;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Behaviour of the in-process {@link StubChatModel}: reply rules, latency distribution,
+ * token counts and injected failures. Zero latency/error values mean "off".
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StubModelProfile {
+    @Builder.Default
+    private String latencyDistribution = "fixed"; // "fixed", "uniform" or "lognormal"
+    private long latencyMillis; // Fixed latency, uniform mean or lognormal median per call
+    private long latencyJitterMillis; // Uniform half-width around latencyMillis
+    @Builder.Default
+    private double latencySigma = 0.5; // Lognormal shape parameter
+    private long perOutputTokenMillis; // Extra latency per generated token
+    @Builder.Default
+    private int storyTokens = 160; // Approximate length of generated stories
+    @Builder.Default
+    private double scaryRate = 0.5; // Fraction of stories judged SCARY
+    @Builder.Default
+    private double funnyRate = 0.5; // Fraction of stories judged FUNNY
+    private double rateLimitErrorRate; // Fraction of calls failing with HTTP 429
+    private double overloadedErrorRate; // Fraction of calls failing with HTTP 529
+    private double timeoutRate; // Fraction of calls that hang for timeoutMillis and then fail
+    @Builder.Default
+    private long timeoutMillis = 30_000;
+    private long seed;
+    private List<String> script; // Replies returned in order, cycling; overrides the rules when set
+    private List<String> failingModels; // Models whose calls always fail with HTTP 529, to exercise failover
+    private Map<String, Double> modelLatencyScale; // Per-model latency multiplier, to make some models slower
+
+    /**
+     * Parses a compact command-line spec such as
+     * {@code latency=lognormal:800:0.6,perToken=5,scary=0.7,funny=0.4,429=0.02,timeout=0.01,seed=7}.
+     * {@code failModels=a|b} makes models a and b always fail; {@code modelScale=a:0.5|b:3} scales their latency.
+     */
+    public static StubModelProfile parse(String spec) {
+        StubModelProfile profile = StubModelProfile.builder().build();
+        if (spec == null || spec.isBlank()) {
+            return profile;
+        }
+        for (String entry : spec.split(",")) {
+            String[] pair = entry.trim().split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Malformed stub profile entry: " + entry);
+            }
+            String value = pair[1].trim();
+            switch (pair[0].trim()) {
+                case "latency" -> {
+                    String[] parts = value.split(":");
+                    if (parts.length == 1) {
+                        profile.setLatencyMillis(Long.parseLong(parts[0]));
+                    } else {
+                        profile.setLatencyDistribution(parts[0]);
+                        profile.setLatencyMillis(Long.parseLong(parts[1]));
+                        if (parts.length > 2 && "lognormal".equals(parts[0])) {
+                            profile.setLatencySigma(Double.parseDouble(parts[2]));
+                        } else if (parts.length > 2) {
+                            profile.setLatencyJitterMillis(Long.parseLong(parts[2]));
+                        }
+                    }
+                }
+                case "perToken" -> profile.setPerOutputTokenMillis(Long.parseLong(value));
+                case "storyTokens" -> profile.setStoryTokens(Integer.parseInt(value));
+                case "scary" -> profile.setScaryRate(Double.parseDouble(value));
+                case "funny" -> profile.setFunnyRate(Double.parseDouble(value));
+                case "429" -> profile.setRateLimitErrorRate(Double.parseDouble(value));
+                case "529" -> profile.setOverloadedErrorRate(Double.parseDouble(value));
+                case "timeout" -> profile.setTimeoutRate(Double.parseDouble(value));
+                case "timeoutMillis" -> profile.setTimeoutMillis(Long.parseLong(value));
+                case "seed" -> profile.setSeed(Long.parseLong(value));
+                case "script" -> profile.setScript(new ArrayList<>(List.of(value.split("\\|"))));
+                case "failModels" -> profile.setFailingModels(new ArrayList<>(List.of(value.split("\\|"))));
+                case "modelScale" -> {
+                    Map<String, Double> scales = new HashMap<>();
+                    for (String scale : value.split("\\|")) {
+                        String[] parts = scale.split(":", 2);
+                        scales.put(parts[0], Double.parseDouble(parts[1]));
+                    }
+                    profile.setModelLatencyScale(scales);
+                }
+                default -> throw new IllegalArgumentException("Unknown stub profile key: " + pair[0]);
+            }
+        }
+        return profile;
+    }
+}
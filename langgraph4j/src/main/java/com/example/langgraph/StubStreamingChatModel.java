@@ -0,0 +1,62 @@
+package com.example.langgraph;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * Streaming counterpart of {@link StubChatModel}: the same replies, delivered word by word.
+ * The first token arrives after the profile's latency and each later one after its per-token delay.
+ * Tokens are emitted on the calling thread; if the handler throws from {@code onNext} the stream stops
+ * there and the handler gets {@code onError}, like an aborted HTTP stream.
+ */
+public class StubStreamingChatModel implements StreamingChatLanguageModel {
+
+    private final StubChatModel model;
+
+    public StubStreamingChatModel(StubChatModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        StubChatModel.Call call;
+        try {
+            call = model.start(messages);
+            StubChatModel.sleep(call.firstTokenMillis());
+        } catch (RuntimeException e) {
+            handler.onError(e);
+            return;
+        }
+
+        String reply = call.reply();
+        long perTokenMillis = model.profile().getPerOutputTokenMillis();
+        int start = 0;
+        while (start < reply.length()) {
+            // Each chunk is a word plus its trailing whitespace, like a streamed token
+            int end = start;
+            while (end < reply.length() && !Character.isWhitespace(reply.charAt(end))) {
+                end++;
+            }
+            while (end < reply.length() && Character.isWhitespace(reply.charAt(end))) {
+                end++;
+            }
+            String chunk = reply.substring(start, end);
+            try {
+                StubChatModel.sleep(perTokenMillis * StubChatModel.estimateTokens(chunk));
+                handler.onNext(chunk);
+            } catch (RuntimeException e) {
+                handler.onError(e);
+                return;
+            }
+            start = end;
+        }
+
+        handler.onComplete(Response.from(AiMessage.from(reply), call.tokenUsage(), FinishReason.STOP));
+    }
+}
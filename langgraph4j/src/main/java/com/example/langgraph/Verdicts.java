@@ -0,0 +1,138 @@
+package com.example.langgraph;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tolerant parsing of evaluator replies. Models add punctuation, explanations and odd casing
+ * ("Not funny - the joke falls flat."), so verdicts are found by pattern rather than by string equality.
+ */
+public final class Verdicts {
+
+    public static final String SCARY = "SCARY";
+    public static final String FUNNY = "FUNNY";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Pattern SCARY_VERDICT = verdictPattern(SCARY);
+    private static final Pattern FUNNY_VERDICT = verdictPattern(FUNNY);
+    // Punctuation and connectives between a verdict and its explanation: "NOT_FUNNY. Because", "SCARY - it"
+    private static final Pattern REASON_LEAD = Pattern.compile("^[\\s.,;:!*)\\]\"'`\u2013\u2014-]*(?:because\\b)?[\\s,:]*",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Both verdicts and their reasons from a single combined evaluator call.
+     */
+    public record Combined(String scary, String scaryReason, String funny, String funnyReason) {
+
+        public boolean passed() {
+            return isPass(scary, SCARY) && isPass(funny, FUNNY);
+        }
+    }
+
+    private Verdicts() {
+    }
+
+    private static Pattern verdictPattern(String positive) {
+        // "NOT_SCARY", "not scary", "Not-Scary" are all negative, and so is a negation up to three words before the
+        // mention in the same clause: "not very scary", "isn't scary", "would not call it scary". Group 2 marks a
+        // mention followed by a colon
+        return Pattern.compile("\\b(NOT[\\s_-]*|(?:not|never|[a-z]*n['\u2019]t)(?:\\s+[\\w'\u2019]+){0,3}?\\s+)?"
+                + positive + "\\b(\\s*:)?", Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * Normalizes a reply to {@code positive} or {@code NOT_<positive>}, or "" if it contains neither.
+     * Evaluators give their verdict first and explain it afterwards, so the first mention decides: in
+     * "FUNNY - it's not scary at all, and not boring" the explanation does not overturn the verdict. A mention
+     * negated earlier in its clause counts as negative, so "The story is not very funny" fails.
+     * Labels are skipped, so "funny: not funny" reads as a failure.
+     */
+    public static String parse(String reply, String positive) {
+        Matcher verdict = firstVerdict(reply, positive);
+        if (verdict == null) {
+            return "";
+        }
+        return verdict.group(1) != null ? "NOT_" + positive : positive;
+    }
+
+    /**
+     * The explanation that follows the verdict, e.g. "the twist is too gentle" from
+     * "NOT_SCARY - the twist is too gentle", or "" when the reply gives none.
+     */
+    public static String reason(String reply, String positive) {
+        Matcher verdict = firstVerdict(reply, positive);
+        if (verdict == null) {
+            return "";
+        }
+        return REASON_LEAD.matcher(reply.substring(verdict.end())).replaceFirst("").trim();
+    }
+
+    // The mention that decides the verdict, positioned on it, or null if the reply has none
+    private static Matcher firstVerdict(String reply, String positive) {
+        if (reply == null) {
+            return null;
+        }
+        Pattern pattern = SCARY.equals(positive) ? SCARY_VERDICT : FUNNY.equals(positive) ? FUNNY_VERDICT : verdictPattern(positive);
+        Matcher matcher = pattern.matcher(reply);
+        while (matcher.find()) {
+            if (matcher.group(2) != null && isLabel(reply, matcher.end(), pattern)) {
+                continue;
+            }
+            return matcher;
+        }
+        return null;
+    }
+
+    // "funny: NOT_FUNNY" - the mention before the colon names the verdict that follows it
+    private static boolean isLabel(String reply, int end, Pattern pattern) {
+        int next = end;
+        while (next < reply.length() && !Character.isLetter(reply.charAt(next))) {
+            next++;
+        }
+        return pattern.matcher(reply).region(next, reply.length()).lookingAt();
+    }
+
+    public static boolean isPass(String feedback, String positive) {
+        return positive.equals(parse(feedback, positive));
+    }
+
+    /**
+     * Parses a combined evaluator reply. JSON is expected (optionally wrapped in prose or a code fence);
+     * a reply that is not valid JSON still yields whatever verdicts can be found in its text.
+     */
+    public static Combined parseCombined(String reply) {
+        int start = reply != null ? reply.indexOf('{') : -1;
+        int end = reply != null ? reply.lastIndexOf('}') : -1;
+        if (start >= 0 && end > start) {
+            try {
+                JsonNode node = JSON.readTree(reply.substring(start, end + 1));
+                return new Combined(
+                        verdictField(node.get("scary"), SCARY),
+                        textField(node.get("scaryReason")),
+                        verdictField(node.get("funny"), FUNNY),
+                        textField(node.get("funnyReason")));
+            } catch (IOException e) {
+                // Fall through to the plain-text scan
+            }
+        }
+        return new Combined(parse(reply, SCARY), "", parse(reply, FUNNY), "");
+    }
+
+    private static String verdictField(JsonNode node, String positive) {
+        if (node == null || node.isNull()) {
+            return "";
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue() ? positive : "NOT_" + positive;
+        }
+        return parse(node.asText(), positive);
+    }
+
+    private static String textField(JsonNode node) {
+        return node == null || node.isNull() ? "" : node.asText().trim();
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.langgraph;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Durable work queue of questions shared by any number of worker JVMs on one machine or one shared filesystem.
+ * Every item is a file, and every state change is an atomic rename, so no lock or server is needed:
+ * <ul>
+ *   <li>{@code pending/<id>.<attempt>.json} waits to be claimed; ids sort in enqueue order.</li>
+ *   <li>{@code leased/<id>.<attempt>.<worker>.json} is being run. Claiming is the rename from {@code pending}, so
+ *       exactly one worker wins an item. The lease file's modification time is its heartbeat. A claim goes through
+ *       {@code leased/<id>.<attempt>.<worker>.claiming}, which gets its fresh heartbeat before it is published under
+ *       its lease name, so a reclaiming worker never sees a new lease with the item's old time.</li>
+ *   <li>{@code done/<id>.json} holds the result line.</li>
+ * </ul>
+ * A lease whose heartbeat is older than the lease time belonged to a worker that died or stalled. Any worker may
+ * rename it back to {@code pending} with the attempt count raised; after {@code maxAttempts} it is completed with
+ * an error instead. Delivery is at least once: a stalled worker whose lease was taken notices at its next heartbeat
+ * and stops, and an item that already has a result is dropped when claimed again.
+ * <p>
+ * Workers do not share a lock or a counter, so they scale with the filesystem's rename rate. A worker lists
+ * {@code pending} once per batch of claims and tries the oldest items in shuffled order, which keeps workers from
+ * all contending for the same head item. Every directory must be on one filesystem, where rename is atomic.
+ */
+public final class WorkQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkQueue.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String SUFFIX = ".json";
+    private static final String CLAIMING = ".claiming";
+    private static final String EXPIRED = ".expired";
+    private static final int CLAIM_BATCH = 256;
+
+    /**
+     * A claimed item. {@code path} is the lease file, which {@link #heartbeat} keeps fresh.
+     */
+    public record Lease(String id, int attempt, String question, Path path) {
+    }
+
+    /**
+     * Point-in-time view of the queue: item counts are read from the directories, the rest counts this process's
+     * operations. {@code collisions} are claims lost to another worker.
+     */
+    public record Stats(long pending, long leased, long done, long enqueued, long claimed, long completed,
+                        long reclaimed, long collisions, long duplicates) {
+    }
+
+    private final Path pending;
+    private final Path leased;
+    private final Path done;
+    private final Path tmp;
+    private final String workerId;
+
+    private final Deque<String> candidates = new ArrayDeque<>(); // Guarded by itself
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder reclaimed = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    private WorkQueue(Path directory, String workerId) {
+        this.pending = directory.resolve("pending");
+        this.leased = directory.resolve("leased");
+        this.done = directory.resolve("done");
+        this.tmp = directory.resolve("tmp");
+        this.workerId = workerId.replaceAll("[^A-Za-z0-9-]", "-");
+    }
+
+    /**
+     * Opens (creating if needed) the queue in {@code directory} on behalf of {@code workerId}, which names this
+     * process's leases, and finishes any claim or expiry that a crashed worker left half done.
+     */
+    public static WorkQueue open(Path directory, String workerId) throws IOException {
+        WorkQueue queue = new WorkQueue(directory, workerId);
+        Files.createDirectories(queue.pending);
+        Files.createDirectories(queue.leased);
+        Files.createDirectories(queue.done);
+        Files.createDirectories(queue.tmp);
+        queue.recoverInterrupted();
+        return queue;
+    }
+
+    /**
+     * A worker that dies between the steps of a claim or of a final expiry leaves a file that is neither pending nor
+     * a lease, so nothing would ever pick it up again. Half-made claims go back to {@code pending}; expiries are
+     * completed with their error. Both are safe while other workers run: a claim taken back from a live worker is a
+     * lost race to that worker, and completing an expiry twice writes the same result.
+     */
+    private void recoverInterrupted() throws IOException {
+        List<Path> leftovers;
+        try (Stream<Path> files = Files.list(leased)) {
+            leftovers = files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.endsWith(CLAIMING) || name.endsWith(EXPIRED);
+            }).toList();
+        }
+        for (Path path : leftovers) {
+            String[] parts = path.getFileName().toString().split("\\.");
+            String id = parts[0];
+            try {
+                if (path.getFileName().toString().endsWith(CLAIMING)) {
+                    Files.move(path, pending.resolve(id + "." + parts[1] + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+                    LOG.warn("Returned {} to the queue: {} stopped partway through claiming it", id, parts[2]);
+                } else {
+                    failExpired(path, id, Integer.parseInt(parts[1]));
+                }
+            } catch (NoSuchFileException e) {
+                // Finished by its worker, or recovered by another one, meanwhile
+            }
+        }
+    }
+
+    public String workerId() {
+        return workerId;
+    }
+
+    /**
+     * Adds a question and returns its id.
+     */
+    public String enqueue(String question) throws IOException {
+        // Millisecond prefix keeps enqueue order across processes; the random suffix keeps ids unique between them
+        String id = String.format("%013d-%06d-%08x", System.currentTimeMillis(), sequence.incrementAndGet() % 1_000_000,
+                ThreadLocalRandom.current().nextInt());
+        ObjectNode item = JSON.createObjectNode();
+        item.put("question", question);
+        publish(pending.resolve(id + ".0" + SUFFIX), item.toString());
+        enqueued.increment();
+        return id;
+    }
+
+    /**
+     * Claims the next item, or returns null when nothing is pending.
+     */
+    public Lease claim() throws IOException {
+        while (true) {
+            String name = nextCandidate();
+            if (name == null) {
+                return null;
+            }
+            String base = name.substring(0, name.length() - SUFFIX.length());
+            String id = base.substring(0, base.indexOf('.'));
+            int attempt = Integer.parseInt(base.substring(base.indexOf('.') + 1));
+            Path claiming = leased.resolve(base + "." + workerId + CLAIMING);
+            Path lease = leased.resolve(base + "." + workerId + SUFFIX);
+            try {
+                Files.move(pending.resolve(name), claiming, StandardCopyOption.ATOMIC_MOVE);
+                // The rename kept the time the item was enqueued or last renewed; reclaimers only look at *.json,
+                // so the fresh heartbeat is in place before the lease becomes visible to them
+                Files.setLastModifiedTime(claiming, FileTime.fromMillis(System.currentTimeMillis()));
+                Files.move(claiming, lease, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                collisions.increment(); // Another worker claimed it first
+                continue;
+            }
+            if (Files.exists(done.resolve(id + SUFFIX))) {
+                // Re-queued after its first worker stalled, but that worker finished it after all
+                duplicates.increment();
+                Files.deleteIfExists(lease);
+                continue;
+            }
+            String question;
+            try {
+                question = BatchRunner.parseQuestion(Files.readString(lease, StandardCharsets.UTF_8));
+            } catch (NoSuchFileException e) {
+                collisions.increment(); // Reclaimed after a stall between the claim and this read
+                continue;
+            } catch (JsonProcessingException e) {
+                // A corrupt item would otherwise fail every claim that reaches it; record it as failed instead
+                LOG.warn("Item {} is not a readable question, failing it: {}", id, e.getOriginalMessage());
+                fail(lease, id, null, "Malformed queue item: " + e.getOriginalMessage());
+                continue;
+            }
+            claimed.increment();
+            return new Lease(id, attempt, question, lease);
+        }
+    }
+
+    private String nextCandidate() throws IOException {
+        synchronized (candidates) {
+            if (candidates.isEmpty()) {
+                List<String> names;
+                try (Stream<Path> files = Files.list(pending)) {
+                    names = files.map(path -> path.getFileName().toString())
+                            .filter(name -> name.endsWith(SUFFIX))
+                            .sorted()
+                            .limit(CLAIM_BATCH)
+                            .collect(Collectors.toCollection(ArrayList::new));
+                }
+                Collections.shuffle(names);
+                candidates.addAll(names);
+            }
+            return candidates.poll();
+        }
+    }
+
+    /**
+     * Renews the lease; returns false if it was lost, i.e. another worker reclaimed the item.
+     */
+    public boolean heartbeat(Lease lease) {
+        try {
+            Files.setLastModifiedTime(lease.path(), FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stores the item's result line and ends the lease.
+     */
+    public void complete(Lease lease, String result) throws IOException {
+        publish(done.resolve(lease.id() + SUFFIX), result);
+        Files.deleteIfExists(lease.path());
+        completed.increment();
+    }
+
+    /**
+     * Hands a claimed item back unchanged, e.g. when this worker shuts down before finishing it.
+     */
+    public void release(Lease lease) throws IOException {
+        try {
+            Files.move(lease.path(), pending.resolve(lease.id() + "." + lease.attempt() + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // Already reclaimed by another worker
+        }
+    }
+
+    /**
+     * Re-queues every lease whose heartbeat is older than {@code leaseMillis}, or completes it with an error once it
+     * has been tried {@code maxAttempts} times. Safe to call from every worker at once. Returns the leases taken.
+     */
+    public int reclaimExpired(long leaseMillis, int maxAttempts) throws IOException {
+        long expiredBefore = System.currentTimeMillis() - leaseMillis;
+        List<Path> expired = new ArrayList<>();
+        try (Stream<Path> files = Files.list(leased)) {
+            files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).forEach(path -> {
+                try {
+                    if (Files.getLastModifiedTime(path).toMillis() < expiredBefore) {
+                        expired.add(path);
+                    }
+                } catch (IOException e) {
+                    // Completed or reclaimed meanwhile
+                }
+            });
+        }
+        int taken = 0;
+        for (Path path : expired) {
+            String[] parts = path.getFileName().toString().split("\\.");
+            String id = parts[0];
+            int attempt = Integer.parseInt(parts[1]) + 1;
+            String owner = parts[2];
+            try {
+                if (attempt < maxAttempts) {
+                    Files.move(path, pending.resolve(id + "." + attempt + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+                    LOG.warn("Lease on {} held by {} expired, re-queued as attempt {}", id, owner, attempt + 1);
+                } else {
+                    // Claim it first, so only one worker writes the failure
+                    Path mine = leased.resolve(id + "." + attempt + "." + workerId + EXPIRED);
+                    Files.move(path, mine, StandardCopyOption.ATOMIC_MOVE);
+                    failExpired(mine, id, attempt);
+                    LOG.warn("Lease on {} expired for the last time, giving up after {} attempts", id, attempt);
+                }
+                reclaimed.increment();
+                taken++;
+            } catch (NoSuchFileException e) {
+                // Completed, heartbeat-renewed elsewhere and reclaimed, or taken by another worker first
+            }
+        }
+        return taken;
+    }
+
+    private void failExpired(Path path, String id, int attempts) throws IOException {
+        String question;
+        try {
+            question = BatchRunner.parseQuestion(Files.readString(path, StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            question = null;
+        }
+        fail(path, id, question, "Lease expired on " + attempts + " attempts");
+    }
+
+    // Publishes an error result for an item this worker holds at path, then drops the item
+    private void fail(Path path, String id, String question, String error) throws IOException {
+        ObjectNode result = JSON.createObjectNode();
+        result.put("id", id);
+        result.put("question", question);
+        result.put("status", "error");
+        result.put("error", error);
+        publish(done.resolve(id + SUFFIX), result.toString());
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * True when nothing is pending or leased, i.e. every item has a result.
+     */
+    public boolean drained() throws IOException {
+        return count(pending) == 0 && count(leased) == 0;
+    }
+
+    /**
+     * Writes every result, in enqueue order, one per line.
+     */
+    public long collect(PrintStream out) throws IOException {
+        List<Path> results;
+        try (Stream<Path> files = Files.list(done)) {
+            results = files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path result : results) {
+            out.println(Files.readString(result, StandardCharsets.UTF_8));
+        }
+        return results.size();
+    }
+
+    public Stats stats() throws IOException {
+        return new Stats(count(pending), count(leased), count(done), enqueued.sum(), claimed.sum(), completed.sum(),
+                reclaimed.sum(), collisions.sum(), duplicates.sum());
+    }
+
+    private static long count(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).count();
+        }
+    }
+
+    // Written in full under tmp, then renamed into place, so readers in other processes never see a partial file
+    private void publish(Path target, String content) throws IOException {
+        Path file = Files.createTempFile(tmp, workerId, ".tmp");
+        try {
+            Files.writeString(file, content, StandardCharsets.UTF_8);
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.langgraph;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LlmCallsTest {
+
+    @Test
+    void interruptedIoOnAnInterruptedThreadIsACancel() {
+        // How the losing side of a hedge fails: its thread was interrupted mid-request
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(LlmLimiter.Outcome.CANCELLED, LlmCalls.classify(new InterruptedIOException()));
+            assertEquals(LlmLimiter.Outcome.CANCELLED,
+                    LlmCalls.classify(new RuntimeException(new SocketTimeoutException("Read timed out"))));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void interruptedIoOnALiveThreadIsATimeout() {
+        assertEquals(LlmLimiter.Outcome.TIMEOUT, LlmCalls.classify(new InterruptedIOException()));
+        assertEquals(LlmLimiter.Outcome.TIMEOUT,
+                LlmCalls.classify(new RuntimeException(new SocketTimeoutException("Read timed out"))));
+        assertEquals(LlmLimiter.Outcome.ERROR, LlmCalls.classify(new IllegalStateException("boom")));
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.langgraph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmLimiterTest {
+
+    private static double limit(LlmLimiter limiter) {
+        return limiter.stats().concurrencyLimit();
+    }
+
+    // One call admitted after any earlier decrease, ending in the given outcome
+    private static void call(LlmLimiter limiter, LlmLimiter.Outcome outcome) throws InterruptedException {
+        limiter.release(limiter.acquire(0), outcome, 0);
+    }
+
+    @Test
+    void congestionHalvesTheLimitOncePerWindow() throws Exception {
+        LlmLimiter limiter = new LlmLimiter(0, 0, 8);
+        List<LlmLimiter.Permit> burst = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            burst.add(limiter.acquire(0));
+        }
+        // Four calls in flight when the provider pushes back: only the first 429 counts
+        for (LlmLimiter.Permit permit : burst) {
+            limiter.release(permit, LlmLimiter.Outcome.RATE_LIMITED, 0);
+        }
+        assertEquals(4.0, limit(limiter));
+        assertEquals(4, limiter.stats().rateLimited());
+
+        call(limiter, LlmLimiter.Outcome.OVERLOADED);
+        assertEquals(2.0, limit(limiter));
+        call(limiter, LlmLimiter.Outcome.TIMEOUT);
+        call(limiter, LlmLimiter.Outcome.RATE_LIMITED);
+        assertEquals(1.0, limit(limiter), "the limit never drops below one slot");
+
+        // Plain errors and cancellations say nothing about capacity
+        call(limiter, LlmLimiter.Outcome.ERROR);
+        call(limiter, LlmLimiter.Outcome.CANCELLED);
+        assertEquals(1.0, limit(limiter));
+    }
+
+    @Test
+    void successesRecoverTheLimitAdditively() throws Exception {
+        LlmLimiter limiter = new LlmLimiter(0, 0, 4);
+        call(limiter, LlmLimiter.Outcome.RATE_LIMITED);
+        call(limiter, LlmLimiter.Outcome.RATE_LIMITED);
+        assertEquals(1.0, limit(limiter));
+
+        LlmLimiter.Permit only = limiter.acquire(0);
+        assertTrue(limiter.saturated());
+        limiter.release(only, LlmLimiter.Outcome.SUCCESS, 0);
+        assertFalse(limiter.saturated());
+        assertEquals(2.0, limit(limiter));
+        call(limiter, LlmLimiter.Outcome.SUCCESS);
+        assertEquals(2.5, limit(limiter));
+
+        for (int i = 0; i < 50; i++) {
+            call(limiter, LlmLimiter.Outcome.SUCCESS);
+        }
+        assertEquals(4.0, limit(limiter), "recovery stops at the configured maximum");
+        assertEquals(0, limiter.stats().inFlight());
+    }
+
+    @Test
+    void requestBucketRefillsContinuously() throws Exception {
+        // 600 requests a minute: ten a second, and a bucket holding one second's worth
+        LlmLimiter limiter = new LlmLimiter(600, 0, 64);
+        for (int i = 0; i < 10; i++) {
+            limiter.release(limiter.acquire(0), LlmLimiter.Outcome.SUCCESS, 0);
+        }
+        assertEquals(0, limiter.stats().throttled());
+
+        long start = System.nanoTime();
+        limiter.release(limiter.acquire(0), LlmLimiter.Outcome.SUCCESS, 0);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waitedMillis >= 80 && waitedMillis < 1000, "waited " + waitedMillis + " ms for one request");
+        assertEquals(1, limiter.stats().throttled());
+    }
+
+    @Test
+    void tokenBucketSettlesEstimatesAndRefills() throws Exception {
+        // 60,000 tokens a minute: a thousand a second
+        LlmLimiter limiter = new LlmLimiter(0, 60_000, 64);
+        // The call used less than estimated, so the difference goes back into the bucket
+        limiter.release(limiter.acquire(1000), LlmLimiter.Outcome.SUCCESS, 900);
+        limiter.release(limiter.acquire(100), LlmLimiter.Outcome.SUCCESS, 100);
+        assertEquals(0, limiter.stats().throttled());
+
+        long start = System.nanoTime();
+        limiter.release(limiter.acquire(100), LlmLimiter.Outcome.SUCCESS, 100);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waitedMillis >= 80 && waitedMillis < 1000, "waited " + waitedMillis + " ms for 100 tokens");
+        assertEquals(1, limiter.stats().throttled());
+    }
+}
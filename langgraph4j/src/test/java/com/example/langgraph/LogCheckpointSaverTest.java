@@ -0,0 +1,152 @@
+package com.example.langgraph;
+
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.checkpoint.Checkpoint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogCheckpointSaverTest {
+
+    @TempDir
+    Path directory;
+
+    private static RunnableConfig thread(String threadId) {
+        return RunnableConfig.builder().threadId(threadId).build();
+    }
+
+    private static Checkpoint checkpoint(String id, String node, Map<String, Object> state) {
+        return Checkpoint.builder().id(id).nodeId(node).nextNodeId(node + "-next").state(state).build();
+    }
+
+    private static Map<String, Object> state(String story, int retryCount) {
+        Map<String, Object> state = new HashMap<>();
+        state.put(State.QUESTION, "Why did the shadow carry a duck?");
+        state.put(State.STORY, story);
+        state.put(State.RETRY_COUNT, retryCount);
+        state.put(State.TERMINATE_FLAG, false);
+        state.put(State.ANSWER, null);
+        return state;
+    }
+
+    private Path logFile() {
+        return directory.resolve(LogCheckpointSaver.LOG_FILE);
+    }
+
+    @Test
+    void replaysCheckpointsAfterReopen() throws Exception {
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, 0)) {
+            saver.put(thread("t1"), checkpoint("c1", "answer", state("", 0)));
+            saver.put(thread("t1"), checkpoint("c2", "storyNode", state("draft", 1)));
+        }
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, 0)) {
+            assertEquals(Set.of("t1"), saver.pendingThreads());
+            Checkpoint latest = saver.get(thread("t1")).orElseThrow();
+            assertEquals("c2", latest.getId());
+            assertEquals("storyNode", latest.getNodeId());
+            assertEquals("draft", latest.getState().get(State.STORY));
+            assertEquals(1, latest.getState().get(State.RETRY_COUNT));
+            assertEquals(false, latest.getState().get(State.TERMINATE_FLAG));
+            assertTrue(latest.getState().containsKey(State.ANSWER));
+            assertEquals(2, saver.list(thread("t1")).size());
+        }
+    }
+
+    @Test
+    void tornTailIsTruncated() throws Exception {
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, 0)) {
+            saver.put(thread("t1"), checkpoint("c1", "answer", state("", 0)));
+            saver.put(thread("t1"), checkpoint("c2", "storyNode", state("draft", 1)));
+        }
+        long valid = Files.size(logFile());
+        // A crash mid-append leaves a header that promises more bytes than were written
+        try (FileChannel channel = FileChannel.open(logFile(), StandardOpenOption.APPEND)) {
+            ByteBuffer torn = ByteBuffer.allocate(12).putInt(500).putInt(42).putInt(7);
+            torn.flip();
+            channel.write(torn);
+        }
+
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, 0)) {
+            assertEquals(valid, Files.size(logFile()));
+            assertEquals("c2", saver.get(thread("t1")).orElseThrow().getId());
+            // New records follow the valid ones rather than the discarded tail
+            saver.put(thread("t1"), checkpoint("c3", "scaryCheck", state("draft", 1)));
+        }
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, 0)) {
+            assertEquals("c3", saver.get(thread("t1")).orElseThrow().getId());
+            assertEquals(3, saver.list(thread("t1")).size());
+        }
+    }
+
+    @Test
+    void crcMismatchEndsReplay() throws Exception {
+        long firstRecordEnd;
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, 0)) {
+            saver.put(thread("a"), checkpoint("a1", "answer", state("", 0)));
+            firstRecordEnd = saver.stats().fileBytes();
+            saver.put(thread("b"), checkpoint("b1", "answer", state("", 0)));
+        }
+        // Flip a byte inside the second record's body, past its 8-byte header
+        byte[] bytes = Files.readAllBytes(logFile());
+        bytes[(int) firstRecordEnd + 12] ^= 0x5A;
+        Files.write(logFile(), bytes);
+
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, 0)) {
+            assertEquals(Set.of("a"), saver.pendingThreads());
+            assertEquals(firstRecordEnd, Files.size(logFile()));
+        }
+    }
+
+    @Test
+    void replayAfterCompaction() throws Exception {
+        long before;
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, Long.MAX_VALUE)) {
+            for (int i = 0; i < 5; i++) {
+                saver.put(thread("kept"), checkpoint("k" + i, "storyNode", state("draft " + i, i)));
+                saver.put(thread("done"), checkpoint("d" + i, "storyNode", state("other " + i, i)));
+            }
+            saver.release(thread("done"));
+            before = Files.size(logFile());
+            saver.compact();
+            assertTrue(Files.size(logFile()) < before, "compaction should shrink the log");
+            assertEquals(1, saver.list(thread("kept")).size());
+            // Appends after a compaction land in the new file
+            saver.put(thread("kept"), checkpoint("k5", "scaryCheck", state("draft 5", 5)));
+        }
+
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, Long.MAX_VALUE)) {
+            assertEquals(Set.of("kept"), saver.pendingThreads());
+            List<String> ids = saver.list(thread("kept")).stream().map(Checkpoint::getId).toList();
+            assertEquals(List.of("k5", "k4"), ids);
+            Checkpoint latest = saver.get(thread("kept")).orElseThrow();
+            assertEquals("draft 5", latest.getState().get(State.STORY));
+            assertEquals(5, latest.getState().get(State.RETRY_COUNT));
+        }
+    }
+
+    @Test
+    void compactsOnceMostlyDead() throws Exception {
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, 1)) {
+            for (int i = 0; i < 20; i++) {
+                saver.put(thread("t1"), checkpoint("c" + i, "storyNode", state("draft " + i, i)));
+            }
+            assertTrue(saver.stats().compactions() > 0);
+            assertTrue(saver.stats().fileBytes() <= 2 * saver.stats().liveBytes());
+        }
+        try (LogCheckpointSaver saver = LogCheckpointSaver.open(directory, false, 1)) {
+            assertEquals("c19", saver.get(thread("t1")).orElseThrow().getId());
+        }
+    }
+}
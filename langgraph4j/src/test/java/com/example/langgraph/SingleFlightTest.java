@@ -0,0 +1,185 @@
+package com.example.langgraph;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    @AfterEach
+    void restoreExecutor() {
+        NodeExecutor.configure(Configuration.builder().build());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+
+    // Blocks until interrupted, the way a model call in flight does when its run is stopped
+    private static String blockUntilInterrupted() {
+        try {
+            Thread.sleep(Long.MAX_VALUE);
+            return "unreachable";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted");
+        }
+    }
+
+    @Test
+    void identicalCallsFinishOnOneThreadPool() throws Exception {
+        NodeExecutor.use(NodeExecutor.PLATFORM, Executors.newFixedThreadPool(1));
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        Supplier<String> work = () -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "story";
+        };
+
+        CompletableFuture<String> first = NodeExecutor.supplyAsync(() -> flight.execute("prompt", work));
+        CompletableFuture<String> second = NodeExecutor.supplyAsync(() -> flight.execute("prompt", work));
+
+        assertEquals("story", first.get(5, TimeUnit.SECONDS));
+        assertEquals("story", second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.stats().inFlight());
+    }
+
+    @Test
+    void concurrentCallersShareOneCall() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<String> work = () -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "answer";
+        };
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flight.execute("q", work));
+        awaitTrue(() -> calls.get() == 1);
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> flight.execute("q", work));
+        awaitTrue(() -> flight.stats().coalesced() == 1);
+        release.countDown();
+
+        assertEquals("answer", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("answer", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.stats().flights());
+    }
+
+    @Test
+    void waiterLeavingDoesNotStopTheLeader() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<String> work = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "answer";
+        };
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flight.execute("q", work));
+        started.await();
+        CompletableFuture<Throwable> left = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                flight.execute("q", work);
+                left.complete(null);
+            } catch (Throwable t) {
+                left.complete(t);
+            }
+        });
+        waiter.start();
+        awaitTrue(() -> flight.stats().coalesced() == 1);
+        waiter.interrupt();
+
+        assertTrue(left.get(5, TimeUnit.SECONDS) instanceof CancellationException);
+        release.countDown();
+        assertEquals("answer", leader.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.stats().abandoned());
+    }
+
+    @Test
+    void stoppedLeaderWithoutWaitersIsAbandoned() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread leader = new Thread(() -> {
+            try {
+                flight.execute("q", () -> {
+                    started.countDown();
+                    return blockUntilInterrupted();
+                });
+            } catch (CancellationException expected) {
+                // The leader's own caller sees its cancellation
+            }
+        });
+        leader.start();
+        started.await();
+        leader.interrupt();
+        leader.join(5000);
+
+        assertEquals(1, flight.stats().abandoned());
+        assertEquals(0, flight.stats().inFlight());
+        // Nothing of the stopped call is left behind for the next caller
+        assertEquals("fresh", flight.execute("q", () -> "fresh"));
+        assertEquals(2, flight.stats().flights());
+    }
+
+    @Test
+    void waiterTakesOverFromAStoppedLeader() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<String> work = () -> calls.incrementAndGet() == 1 ? blockUntilInterrupted() : "answer";
+
+        CompletableFuture<Throwable> leaderOutcome = new CompletableFuture<>();
+        Thread leader = new Thread(() -> {
+            try {
+                flight.execute("q", work);
+                leaderOutcome.complete(null);
+            } catch (Throwable t) {
+                leaderOutcome.complete(t);
+            }
+        });
+        leader.start();
+        awaitTrue(() -> calls.get() == 1);
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> flight.execute("q", work));
+        awaitTrue(() -> flight.stats().coalesced() == 1);
+        leader.interrupt();
+
+        assertTrue(leaderOutcome.get(5, TimeUnit.SECONDS) instanceof CancellationException);
+        assertEquals("answer", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+        assertEquals(1, flight.stats().abandoned());
+        assertThrows(IllegalStateException.class, () -> flight.execute("other", () -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals(0, flight.stats().inFlight());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.langgraph;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerdictsTest {
+
+    @Test
+    void bareVerdicts() {
+        assertEquals("SCARY", Verdicts.parse("SCARY", Verdicts.SCARY));
+        assertEquals("NOT_SCARY", Verdicts.parse("NOT_SCARY", Verdicts.SCARY));
+        assertEquals("NOT_FUNNY", Verdicts.parse("not funny", Verdicts.FUNNY));
+        assertEquals("NOT_FUNNY", Verdicts.parse("Not-Funny.", Verdicts.FUNNY));
+        assertEquals("", Verdicts.parse("I could not decide.", Verdicts.FUNNY));
+        assertEquals("", Verdicts.parse(null, Verdicts.FUNNY));
+    }
+
+    @Test
+    void explanationDoesNotOverturnTheVerdict() {
+        assertEquals("FUNNY", Verdicts.parse("FUNNY — it's not scary at all, and not boring", Verdicts.FUNNY));
+        assertEquals("FUNNY", Verdicts.parse("FUNNY. A ghost that is not funny in life becomes a comedian.", Verdicts.FUNNY));
+        assertEquals("SCARY", Verdicts.parse("SCARY: the dread builds, and nothing about it is not scary.", Verdicts.SCARY));
+        assertEquals("NOT_FUNNY", Verdicts.parse("Not funny - the joke falls flat, though the ending is funny-ish.", Verdicts.FUNNY));
+        assertTrue(Verdicts.isPass("FUNNY\nIt is not a scary story, and that is fine.", Verdicts.FUNNY));
+    }
+
+    @Test
+    void negatedVerdictWithExplanation() {
+        assertEquals("NOT_SCARY", Verdicts.parse("NOT_SCARY: the story reads as funny, not frightening.", Verdicts.SCARY));
+        assertEquals("NOT_SCARY", Verdicts.parse("The story is funny, though not scary.", Verdicts.SCARY));
+        assertFalse(Verdicts.isPass("NOT_FUNNY because the punchline explains itself; funny stories don't.", Verdicts.FUNNY));
+    }
+
+    @Test
+    void negationEarlierInTheClause() {
+        assertEquals("NOT_FUNNY", Verdicts.parse("The story is not very funny.", Verdicts.FUNNY));
+        assertEquals("NOT_SCARY", Verdicts.parse("This isn't scary.", Verdicts.SCARY));
+        assertEquals("NOT_FUNNY", Verdicts.parse("I would not call it funny; the joke is buried.", Verdicts.FUNNY));
+        assertEquals("NOT_SCARY", Verdicts.parse("I don’t find it scary at all.", Verdicts.SCARY));
+        // A negation in an earlier clause, or too far back, does not reach the verdict
+        assertEquals("SCARY", Verdicts.parse("It isn't gory, but it is scary.", Verdicts.SCARY));
+        assertEquals("FUNNY", Verdicts.parse("Not what I expected from the setup at all, and funny.", Verdicts.FUNNY));
+    }
+
+    @Test
+    void labelsAreSkipped() {
+        assertEquals("NOT_FUNNY", Verdicts.parse("funny: not funny", Verdicts.FUNNY));
+        assertEquals("SCARY", Verdicts.parse("Scary: SCARY. Funny: NOT_FUNNY.", Verdicts.SCARY));
+        assertEquals("NOT_FUNNY", Verdicts.parse("Scary: SCARY. Funny: NOT_FUNNY.", Verdicts.FUNNY));
+    }
+
+    @Test
+    void reasonFollowsTheDecidingVerdict() {
+        assertEquals("the twist is too gentle.", Verdicts.reason("NOT_SCARY - the twist is too gentle.", Verdicts.SCARY));
+        assertEquals("the punchline explains itself.", Verdicts.reason("NOT_FUNNY because the punchline explains itself.", Verdicts.FUNNY));
+        assertEquals("it's not scary at all", Verdicts.reason("FUNNY — it's not scary at all", Verdicts.FUNNY));
+        assertEquals("The ending lands.", Verdicts.reason("Funny: FUNNY. The ending lands.", Verdicts.FUNNY));
+        assertEquals("", Verdicts.reason("SCARY", Verdicts.SCARY));
+        assertEquals("", Verdicts.reason("I could not decide.", Verdicts.SCARY));
+    }
+
+    @Test
+    void combinedJsonAndFallback() {
+        Verdicts.Combined json = Verdicts.parseCombined(
+                "```json\n{\"scary\": \"SCARY\", \"scaryReason\": \"dread builds\", \"funny\": false, \"funnyReason\": \"no joke\"}\n```");
+        assertEquals("SCARY", json.scary());
+        assertEquals("dread builds", json.scaryReason());
+        assertEquals("NOT_FUNNY", json.funny());
+        assertFalse(json.passed());
+
+        Verdicts.Combined text = Verdicts.parseCombined("scary: SCARY, funny: FUNNY");
+        assertTrue(text.passed());
+    }
+}